@@ -2,8 +2,10 @@ package at.ac.tuwien.sepm.assignment.individual;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class SepmIndividualAssignmentApplication {
 
   public static void main(String[] args) {
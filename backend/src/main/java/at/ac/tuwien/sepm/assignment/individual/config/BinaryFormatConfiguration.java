@@ -0,0 +1,33 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Offers the binary encodings CBOR ({@code application/cbor}) and Smile ({@code application/x-jackson-smile})
+ * of all REST resources next to JSON.
+ * <p>
+ * The encoding is chosen by the {@code Accept} header of a request, and by the {@code Content-Type} of a request body.
+ * JSON stays the default, as Spring Boot puts these converters after the JSON one.
+ * Both are built from the object mapper builder of Spring Boot, so they follow the same {@code spring.jackson} settings as JSON,
+ * e.g. dates are written as ISO strings in all three.
+ * </p>
+ */
+@Configuration
+public class BinaryFormatConfiguration {
+
+  @Bean
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+  }
+
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+  }
+}
@@ -0,0 +1,91 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.MDC;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads, that runs one kind of expensive request, so that a burst of them
+ * only delays the requests of the same kind, and not the requests served by other bulkheads or by the request threads.
+ * <p>
+ * Requests beyond the threads wait in a bounded queue. If it is full, further requests are rejected at once
+ * by a {@link RejectedExecutionException}, instead of waiting for a thread for longer than a client would wait for the response.
+ * The logging context of the submitting thread is passed on to the tasks.
+ * The usage of each bulkhead is published as {@code executor.*} metrics and its rejections as {@code bulkhead.rejected},
+ * both tagged by the name of the bulkhead.
+ * Streamed responses run in a bulkhead with its own timeout, see {@link #getStreamTimeout()}.
+ * </p>
+ */
+public class Bulkhead extends TaskExecutorAdapter {
+  private final ThreadPoolExecutor executor;
+  private final Duration streamTimeout;
+
+  public Bulkhead(String name, BulkheadProperties.Pool pool, MeterRegistry meterRegistry) {
+    this(newExecutor(name, pool, Counter.builder("bulkhead.rejected")
+        .description("Requests rejected, because all threads and the queue of the bulkhead were taken")
+        .tag("name", name)
+        .register(meterRegistry)), pool.streamTimeout());
+    new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+  }
+
+  private Bulkhead(ThreadPoolExecutor executor, Duration streamTimeout) {
+    super(executor);
+    this.executor = executor;
+    this.streamTimeout = streamTimeout;
+    setTaskDecorator(Bulkhead::withLogContext);
+  }
+
+  /**
+   * Gets the longest a streamed response of this bulkhead may take, before it is cut off.
+   *
+   * @return the timeout, zero for no limit
+   */
+  public Duration getStreamTimeout() {
+    return streamTimeout;
+  }
+
+  private static ThreadPoolExecutor newExecutor(String name, BulkheadProperties.Pool pool, Counter rejected) {
+    BlockingQueue<Runnable> queue = pool.queueCapacity() == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(pool.queueCapacity());
+    AtomicInteger threadCount = new AtomicInteger();
+    return new ThreadPoolExecutor(pool.threads(), pool.threads(), 0, TimeUnit.MILLISECONDS, queue,
+        runnable -> new Thread(runnable, name + "-" + threadCount.incrementAndGet()),
+        (runnable, executor) -> {
+          rejected.increment();
+          throw new RejectedExecutionException("Bulkhead %s is full".formatted(name));
+        });
+  }
+
+  private static Runnable withLogContext(Runnable task) {
+    Map<String, String> logContext = MDC.getCopyOfContextMap();
+    return () -> {
+      if (logContext != null) {
+        MDC.setContextMap(logContext);
+      }
+      try {
+        task.run();
+      } finally {
+        MDC.clear();
+      }
+    };
+  }
+
+  /**
+   * Stops taking new tasks, and lets the ones taken finish.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
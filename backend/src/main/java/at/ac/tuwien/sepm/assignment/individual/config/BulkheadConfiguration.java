@@ -0,0 +1,28 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The {@link Bulkhead}s the expensive horse endpoints run in, one per kind of request, see {@link BulkheadProperties}.
+ * Cheap requests, like getting a single horse, keep running on the request threads.
+ */
+@Configuration
+public class BulkheadConfiguration {
+
+  @Bean(destroyMethod = "shutdown")
+  public Bulkhead familyTreeBulkhead(BulkheadProperties properties, MeterRegistry meterRegistry) {
+    return new Bulkhead("family-tree", properties.familyTree(), meterRegistry);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public Bulkhead searchBulkhead(BulkheadProperties properties, MeterRegistry meterRegistry) {
+    return new Bulkhead("search", properties.search(), meterRegistry);
+  }
+
+  @Bean(destroyMethod = "shutdown")
+  public Bulkhead exportBulkhead(BulkheadProperties properties, MeterRegistry meterRegistry) {
+    return new Bulkhead("export", properties.export(), meterRegistry);
+  }
+}
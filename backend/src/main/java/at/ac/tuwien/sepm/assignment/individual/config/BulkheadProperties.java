@@ -0,0 +1,52 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the {@link Bulkhead}s the expensive horse endpoints run in.
+ * All properties are bound from the {@code bulkheads} prefix.
+ *
+ * @param familyTree family-trees and descendants of a horse
+ * @param search     searches for horses, as pages and as streams
+ * @param export     exports of all horses
+ */
+@ConfigurationProperties("bulkheads")
+public record BulkheadProperties(
+    @DefaultValue Pool familyTree,
+    @DefaultValue Pool search,
+    @DefaultValue Pool export
+) {
+  /**
+   * Configuration of a single bulkhead.
+   *
+   * @param threads       the number of requests of the bulkhead, that are processed at a time
+   * @param queueCapacity the number of requests, that wait for a thread, before further requests are rejected
+   * @param streamTimeout the longest a streamed response of the bulkhead may take, before it is cut off, 0 for no limit;
+   *                      streams are not limited by {@code spring.mvc.async.request-timeout}, which only applies to the other responses
+   */
+  public record Pool(
+      @DefaultValue("4") int threads,
+      @DefaultValue("50") int queueCapacity,
+      @DefaultValue("0") Duration streamTimeout
+  ) {
+    /**
+     * Validates the configured values.
+     *
+     * @throws IllegalArgumentException if any of the values is out of range
+     */
+    public Pool {
+      if (threads < 1) {
+        throw new IllegalArgumentException("Invalid bulkhead configuration: threads must be positive");
+      }
+      if (queueCapacity < 0) {
+        throw new IllegalArgumentException("Invalid bulkhead configuration: queue capacity must not be negative");
+      }
+      if (streamTimeout.isNegative()) {
+        throw new IllegalArgumentException("Invalid bulkhead configuration: stream timeout must not be negative");
+      }
+    }
+  }
+}
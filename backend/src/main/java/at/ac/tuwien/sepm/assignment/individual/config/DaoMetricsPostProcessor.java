@@ -0,0 +1,75 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Repository;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call of a method of a {@link Repository} bean, as {@code dao.calls} tagged by DAO, method and outcome.
+ * <p>
+ * The timers of a method are looked up once and kept, so a call only costs two {@link System#nanoTime()} and a map lookup.
+ * Methods returning a lazy stream are only timed until the query is started, not while the stream is read.
+ * The registry is looked up on the first call, so it is not created before the other post processors run.
+ * </p>
+ */
+public class DaoMetricsPostProcessor extends AbstractBeanFactoryAwareAdvisingPostProcessor {
+  static final String METRIC_NAME = "dao.calls";
+
+  public DaoMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+    this.advisor = new DefaultPointcutAdvisor(new AnnotationMatchingPointcut(Repository.class, true), new TimingInterceptor(meterRegistry));
+    // the calls are timed including the translation of exceptions
+    setBeforeExistingAdvisors(true);
+  }
+
+  private static final class TimingInterceptor implements MethodInterceptor {
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final Map<Method, Timers> timers = new ConcurrentHashMap<>();
+
+    private TimingInterceptor(ObjectProvider<MeterRegistry> meterRegistry) {
+      this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+      Timers methodTimers = timers.computeIfAbsent(invocation.getMethod(), this::register);
+      long start = System.nanoTime();
+      boolean failed = true;
+      try {
+        Object result = invocation.proceed();
+        failed = false;
+        return result;
+      } finally {
+        (failed ? methodTimers.error() : methodTimers.success()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private Timers register(Method method) {
+      MeterRegistry registry = meterRegistry.getObject();
+      String dao = method.getDeclaringClass().getSimpleName();
+      return new Timers(timer(registry, dao, method.getName(), "SUCCESS"), timer(registry, dao, method.getName(), "ERROR"));
+    }
+
+    private static Timer timer(MeterRegistry registry, String dao, String method, String outcome) {
+      return Timer.builder(METRIC_NAME)
+          .description("Calls of DAO methods")
+          .tag("dao", dao)
+          .tag("method", method)
+          .tag("outcome", outcome)
+          .register(registry);
+    }
+  }
+
+  private record Timers(Timer success, Timer error) {
+  }
+}
@@ -11,8 +11,8 @@ import org.springframework.web.filter.OncePerRequestFilter;
 public class LogConfiguration {
 
   @Bean
-  public FilterRegistrationBean<OncePerRequestFilter> logFilter() {
-    var reg = new FilterRegistrationBean<OncePerRequestFilter>(new LogFilter());
+  public FilterRegistrationBean<OncePerRequestFilter> logFilter(RequestLogProperties properties) {
+    var reg = new FilterRegistrationBean<OncePerRequestFilter>(new LogFilter(properties));
     reg.addUrlPatterns("/*");
     reg.setName("logFilter");
     reg.setOrder(Ordered.LOWEST_PRECEDENCE);
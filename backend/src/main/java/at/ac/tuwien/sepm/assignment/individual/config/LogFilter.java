@@ -1,6 +1,8 @@
 package at.ac.tuwien.sepm.assignment.individual.config;
 
 import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -8,80 +10,143 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Locale;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
 
 /**
  * ServletFilter to log every request.
+ * <p>
+ * Requests are logged when they are done, with their status and runtime. Only a configured share of the successful requests
+ * of a route is logged ({@link RequestLogProperties}), requests with status 400 or above and failed requests always are.
+ * The start of a request is only logged at TRACE level.
+ * Requests, that a handler has put into asynchronous mode, are logged when their asynchronous processing is complete,
+ * as the filter chain returns before their status is set, and asynchronous dispatches are not filtered again.
+ * Messages are formatted by the logger only if they are logged, and the MDC only holds the request ID and the client IP.
+ * </p>
  */
 public class LogFilter extends OncePerRequestFilter {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final DecimalFormat REQUEST_RUNTIME_FORMAT = new DecimalFormat("#.###", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-  private static final Long NANOSECONDS_PER_MS = 1000_000L;
-  private static final List<String> MUTED_PATHS = Arrays.asList(
-      "/swagger-ui/",
-      "/swagger.yaml"
-  );
+  private static final long NANOSECONDS_PER_MICROSECOND = 1000L;
+  private static final long MICROSECONDS_PER_MS = 1000L;
+  // as long as the last group of a UUID, which was used before
+  private static final long REQUEST_ID_MASK = 0xFFFF_FFFF_FFFFL;
 
+  private final RequestLogProperties properties;
+
+  public LogFilter(RequestLogProperties properties) {
+    this.properties = properties;
+  }
 
   @Override
   public void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) {
-    var runtime = -1L;
     var shouldLog = shouldLog(request);
     if (shouldLog) {
       populateMDC(request);
-      beforeRequest(request);
+      if (LOG.isTraceEnabled()) {
+        LOG.trace(">>> {} {}{} UA={}", request.getMethod(), request.getRequestURI(), query(request), request.getHeader("User-Agent"));
+      }
     }
+    var failed = true;
+    var start = System.nanoTime();
     try {
-      //keep timestamp
-      runtime = System.nanoTime();
-      //do the work
       filterChain.doFilter(request, response);
+      failed = false;
     } catch (ServletException | IOException e) {
       throw new FatalException(e);
     } finally {
-      //runtime = end - start
-      runtime = System.nanoTime() - runtime;
-      if (shouldLog) {
-        afterRequest(request, response, runtime);
+      if (shouldLog && !failed && request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new AsyncRequestListener(request, response, start, MDC.getCopyOfContextMap()));
+      } else if (shouldLog) {
+        afterRequest(request, response, System.nanoTime() - start, failed);
       }
       MDC.clear();
     }
   }
 
-  private void beforeRequest(HttpServletRequest request) {
-    var b = getUrlString(">>> ", request);
-    var agent = request.getHeader("User-Agent");
-    if (agent != null) {
-      b.append(" UA=").append(agent);
+  private void afterRequest(HttpServletRequest request, HttpServletResponse response, long runtime, boolean failed) {
+    var status = failed || response == null ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+    if (status < 400 && !sampled(request)) {
+      return;
+    }
+    var micros = runtime / NANOSECONDS_PER_MICROSECOND;
+    var time = millis(micros);
+    switch (status / 100) {
+      case 2, 3 -> LOG.info("<<< {} {}{} status={} time={}ms", request.getMethod(), request.getRequestURI(), query(request), status, time);
+      case 1, 4 -> LOG.warn("<<< {} {}{} status={} time={}ms", request.getMethod(), request.getRequestURI(), query(request), status, time);
+      default -> LOG.error("<<< {} {}{} status={} time={}ms", request.getMethod(), request.getRequestURI(), query(request), status, time);
     }
-    logWithRightCategory(200, b.toString());
   }
 
-  private void afterRequest(HttpServletRequest request, HttpServletResponse response, Long runtime) {
-    var b = getUrlString("<<< ", request);
-    var logStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-    if (response != null) {
-      logStatus = response.getStatus();
-      MDC.put("status", "" + logStatus);
-      b.append(" status=").append(logStatus);
-    } else {
-      b.append(" NO RESPONSE");
+  /**
+   * Logs an asynchronous request once it is complete, in the MDC of the request, on the thread completing it.
+   * Errors and timeouts are always followed by the completion, so only errors have to be noted.
+   */
+  private final class AsyncRequestListener implements AsyncListener {
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final long start;
+    private final Map<String, String> mdc;
+    private volatile boolean failed;
+
+    private AsyncRequestListener(HttpServletRequest request, HttpServletResponse response, long start, Map<String, String> mdc) {
+      this.request = request;
+      this.response = response;
+      this.start = start;
+      this.mdc = mdc;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      if (mdc != null) {
+        MDC.setContextMap(mdc);
+      }
+      try {
+        afterRequest(request, response, System.nanoTime() - start, failed);
+      } finally {
+        MDC.clear();
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      // the status of the timeout is set by then
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      failed = true;
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // only the first asynchronous cycle is started by the filter chain
     }
-    var time = REQUEST_RUNTIME_FORMAT.format(runtime / NANOSECONDS_PER_MS);
-    MDC.put("duration", time);
-    b.append(" time=").append(time).append("ms");
-    logWithRightCategory(logStatus, b.toString());
+  }
+
+  // the route template is known once the request has been dispatched to a handler
+  private boolean sampled(HttpServletRequest request) {
+    var route = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    var rate = properties.sampleRate(route);
+    return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+  }
+
+  // e.g. 12.345, without a shared, not thread-safe DecimalFormat
+  private static String millis(long micros) {
+    var fraction = micros % MICROSECONDS_PER_MS;
+    var digits = fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".";
+    return (micros / MICROSECONDS_PER_MS) + digits + fraction;
+  }
+
+  private static String query(HttpServletRequest request) {
+    var qs = request.getQueryString();
+    return qs == null ? "" : "?" + qs;
   }
 
   private void populateMDC(HttpServletRequest request) {
@@ -92,28 +157,10 @@ public class LogFilter extends OncePerRequestFilter {
     if (MDC.get("r") == null) {
       MDC.put("r", generateRequestId());
     }
-    MDC.put("http_request_method", request.getMethod());
-    MDC.put("http_request_url", request.getRequestURI());
-    MDC.put("http_request_query", request.getQueryString());
-    MDC.put("http_request_ua", request.getHeader("User-Agent"));
   }
 
   private String generateRequestId() {
-    var uuid = UUID.randomUUID().toString();
-    uuid = uuid.substring(uuid.lastIndexOf("-") + 1);
-    return uuid;
-  }
-
-  private StringBuilder getUrlString(String prefix, HttpServletRequest request) {
-    var b = new StringBuilder(prefix)
-        .append(request.getMethod())
-        .append(" ")
-        .append(request.getRequestURI());
-    var qs = request.getQueryString();
-    if (qs != null) {
-      b.append("?").append(qs);
-    }
-    return b;
+    return Long.toHexString(ThreadLocalRandom.current().nextLong() & REQUEST_ID_MASK);
   }
 
   private boolean shouldLog(HttpServletRequest request) {
@@ -124,16 +171,11 @@ public class LogFilter extends OncePerRequestFilter {
 
     //is the url muted?
     var url = request.getRequestURI();
-    return MUTED_PATHS.stream().noneMatch(url::startsWith);
-  }
-
-  private void logWithRightCategory(int status, String logMsg) {
-    var x = status / 100;
-    switch (x) {
-      case 2, 3 -> LOG.info(logMsg);
-      case 1, 4 -> LOG.warn(logMsg);
-      default -> LOG.error(logMsg);
+    for (String mutedPath : properties.mutedPaths()) {
+      if (url.startsWith(mutedPath)) {
+        return false;
+      }
     }
+    return true;
   }
-
 }
@@ -0,0 +1,24 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics beyond the ones Spring Boot records on its own.
+ * <p>
+ * Request latencies by route template ({@code http.server.requests}), the connection pool ({@code hikaricp.connections.*})
+ * and the JVM ({@code jvm.gc.*}, {@code jvm.memory.*}) are bound by Spring Boot.
+ * This adds a timer for the calls of every DAO method ({@code dao.calls}).
+ * All of them are published in the Prometheus text format, see {@code management} in {@code application.yml}.
+ * </p>
+ */
+@Configuration
+public class MetricsConfiguration {
+
+  @Bean
+  public static DaoMetricsPostProcessor daoMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+    return new DaoMetricsPostProcessor(meterRegistry);
+  }
+}
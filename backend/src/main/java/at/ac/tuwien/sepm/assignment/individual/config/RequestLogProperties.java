@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of the {@link LogFilter}.
+ * All properties are bound from the {@code request-log} prefix.
+ *
+ * @param sampleRate  share of successful requests, that are logged, from 0 (none) to 1 (all)
+ * @param routes      share of successful requests logged per route template, e.g. {@code /horses/{id}}, instead of {@code sampleRate}
+ * @param mutedPaths  prefixes of paths, whose requests are not logged at all, unless the log level is TRACE
+ */
+@ConfigurationProperties("request-log")
+public record RequestLogProperties(
+    @DefaultValue("1.0") double sampleRate,
+    @DefaultValue Map<String, Double> routes,
+    @DefaultValue({"/swagger-ui/", "/swagger.yaml"}) List<String> mutedPaths
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if a sample rate is not between 0 and 1
+   */
+  public RequestLogProperties {
+    if (!isRate(sampleRate) || !routes.values().stream().allMatch(RequestLogProperties::isRate)) {
+      throw new IllegalArgumentException("Invalid request log configuration: sample rates must be between 0 and 1");
+    }
+  }
+
+  private static boolean isRate(Double rate) {
+    return rate != null && rate >= 0 && rate <= 1;
+  }
+
+  /**
+   * Gets the share of successful requests of a route, that are logged.
+   *
+   * @param route the route template of the request, null if it matched none
+   * @return the sample rate of the route
+   */
+  public double sampleRate(String route) {
+    if (route == null) {
+      return sampleRate;
+    }
+    return routes.getOrDefault(route, sampleRate);
+  }
+}
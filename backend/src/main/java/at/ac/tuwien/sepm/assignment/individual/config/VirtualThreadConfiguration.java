@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves requests on virtual threads, if {@link VirtualThreadProperties#enabled()} is set.
+ * <p>
+ * Tomcat starts a new virtual thread for every request instead of taking one of its pool,
+ * so requests blocked in JDBC calls no longer limit how many requests are served at a time.
+ * {@code JdbcTemplate} calls run on the thread of their request, so they are made on virtual threads, too,
+ * just like the work Spring MVC hands to the {@code applicationTaskExecutor}, e.g. streamed responses.
+ * The database is still only used by as many requests at a time as the connection pool has connections;
+ * the others wait for a connection up to {@code spring.datasource.hikari.connection-timeout}.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "virtual-threads", name = "enabled")
+public class VirtualThreadConfiguration {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+    LOG.info("Serving requests on virtual threads");
+    ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory());
+    return protocolHandler -> protocolHandler.setExecutor(executor);
+  }
+
+  @Bean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+  public AsyncTaskExecutor applicationTaskExecutor() {
+    return new TaskExecutorAdapter(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("task-virtual-", 0).factory()));
+  }
+
+  @Bean(destroyMethod = "close")
+  public VirtualThreadPinningMonitor virtualThreadPinningMonitor(VirtualThreadProperties properties, MeterRegistry meterRegistry) {
+    return new VirtualThreadPinningMonitor(properties.pinnedThreshold(), meterRegistry);
+  }
+}
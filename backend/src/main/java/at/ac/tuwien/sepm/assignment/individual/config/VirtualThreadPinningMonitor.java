@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.time.Duration;
+
+/**
+ * Reports virtual threads, that are pinned to their carrier thread while they block,
+ * e.g. in a {@code synchronized} block of the JDBC driver or the connection pool.
+ * A pinned virtual thread blocks its carrier thread, so it is as costly as a blocked platform thread.
+ * <p>
+ * The {@code jdk.VirtualThreadPinned} events of the JDK flight recorder, that last longer than the threshold,
+ * are timed as {@code jvm.threads.virtual.pinned} and logged with the frame they were pinned in.
+ * This is the in-process counterpart of starting the JVM with {@code -Djdk.tracePinnedThreads=short}.
+ * </p>
+ */
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String EVENT_NAME = "jdk.VirtualThreadPinned";
+  private final RecordingStream stream;
+
+  public VirtualThreadPinningMonitor(Duration threshold, MeterRegistry meterRegistry) {
+    Timer pinned = Timer.builder("jvm.threads.virtual.pinned")
+        .description("Time virtual threads were pinned to their carrier thread while blocked")
+        .register(meterRegistry);
+    stream = new RecordingStream();
+    stream.enable(EVENT_NAME).withThreshold(threshold).withStackTrace();
+    stream.onEvent(EVENT_NAME, event -> {
+      pinned.record(event.getDuration());
+      LOG.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), pinnedAt(event));
+    });
+    stream.startAsync();
+  }
+
+  private static String pinnedAt(RecordedEvent event) {
+    RecordedStackTrace stackTrace = event.getStackTrace();
+    if (stackTrace == null) {
+      return "unknown frame";
+    }
+    // the topmost frames are those of the JDK parking the thread
+    return stackTrace.getFrames().stream()
+        .filter(RecordedFrame::isJavaFrame)
+        .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+        .filter(method -> !method.startsWith("java.") && !method.startsWith("jdk."))
+        .findFirst()
+        .orElse("unknown frame");
+  }
+
+  @Override
+  public void close() {
+    stream.close();
+  }
+}
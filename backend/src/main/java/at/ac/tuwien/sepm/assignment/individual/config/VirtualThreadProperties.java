@@ -0,0 +1,31 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the {@link VirtualThreadConfiguration}.
+ * All properties are bound from the {@code virtual-threads} prefix.
+ *
+ * @param enabled         whether requests are served on virtual threads instead of the pool of Tomcat
+ * @param pinnedThreshold how long a virtual thread has to be pinned to its carrier thread, e.g. by a {@code synchronized} block
+ *                        around blocking I/O, to be counted and logged by the {@link VirtualThreadPinningMonitor}
+ */
+@ConfigurationProperties("virtual-threads")
+public record VirtualThreadProperties(
+    @DefaultValue("false") boolean enabled,
+    @DefaultValue("20ms") Duration pinnedThreshold
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if any of the values is out of range
+   */
+  public VirtualThreadProperties {
+    if (pinnedThreshold.isNegative()) {
+      throw new IllegalArgumentException("Invalid virtual thread configuration: pinned threshold must not be negative");
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in a sorted search result, after which the next page starts.
+ * Search results are sorted by one or more string columns and the ID as tie-breaker,
+ * so the last element of a page is identified by the values of these columns ({@code key}) and its {@code id}.
+ * <p>
+ * Clients get the token as an opaque string ({@link #encode()}) and pass it back unchanged.
+ * Spring converts request parameters to tokens via {@link #valueOf(String)}.
+ * </p>
+ *
+ * @param key the values of the sort columns of the last element, in sort order
+ * @param id  the ID of the last element
+ */
+public record ContinuationToken(
+    List<String> key,
+    long id
+) {
+  public ContinuationToken {
+    key = List.copyOf(key);
+  }
+
+  /**
+   * Creates the token pointing behind the element with the given sort values.
+   *
+   * @param id  the ID of the element
+   * @param key the values of the sort columns of the element, in sort order
+   * @return the token
+   */
+  public static ContinuationToken after(long id, String... key) {
+    return new ContinuationToken(List.of(key), id);
+  }
+
+  /**
+   * Decodes a token, that was previously returned by {@link #encode()}.
+   *
+   * @param token the encoded token
+   * @return the decoded token
+   * @throws IllegalArgumentException if {@code token} is not a valid token
+   */
+  public static ContinuationToken valueOf(String token) {
+    try (var in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+      long id = in.readLong();
+      int keys = in.readUnsignedByte();
+      List<String> key = new ArrayList<>(keys);
+      for (int i = 0; i < keys; i++) {
+        key.add(in.readUTF());
+      }
+      if (in.available() > 0) {
+        throw new IllegalArgumentException("Continuation token has trailing data");
+      }
+      return new ContinuationToken(key, id);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Continuation token is malformed", e);
+    }
+  }
+
+  /**
+   * Encodes this token as an URL-safe string.
+   *
+   * @return the encoded token
+   */
+  public String encode() {
+    var bytes = new ByteArrayOutputStream();
+    try (var out = new DataOutputStream(bytes)) {
+      out.writeLong(id);
+      out.writeByte(key.size());
+      for (String value : key) {
+        out.writeUTF(value);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+  }
+}
@@ -0,0 +1,19 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * DTO to encapsulate one horse of a batch of horses to create.
+ * A parent can either be a stored horse, given by {@code horse.mother} or {@code horse.father},
+ * or another horse of the same batch, given by its {@code ref} in {@code motherRef} or {@code fatherRef}.
+ *
+ * @param ref       Reference of this horse, unique within the batch, can be null if no other horse of the batch refers to it
+ * @param horse     Data of the horse
+ * @param motherRef Reference of the mother within the batch
+ * @param fatherRef Reference of the father within the batch
+ */
+public record HorseBatchItemDto(
+    String ref,
+    HorseCreateDto horse,
+    String motherRef,
+    String fatherRef
+) {
+}
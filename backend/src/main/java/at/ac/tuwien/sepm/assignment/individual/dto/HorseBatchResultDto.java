@@ -0,0 +1,13 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * DTO to encapsulate the result of creating one horse of a batch.
+ *
+ * @param ref   Reference of the horse within the batch, as given in {@link HorseBatchItemDto#ref()}
+ * @param horse The newly created horse
+ */
+public record HorseBatchResultDto(
+    String ref,
+    HorseDetailDto horse
+) {
+}
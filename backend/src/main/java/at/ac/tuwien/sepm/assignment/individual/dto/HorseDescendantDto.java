@@ -0,0 +1,28 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+
+import java.time.LocalDate;
+
+/**
+ * DTO of a descendant of a horse.
+ * Descendants are listed flat, the tree is given by the parent IDs.
+ *
+ * @param id          id of the horse
+ * @param name        Name of the horse
+ * @param dateOfBirth Date of birth of the horse
+ * @param sex         Sex of the horse
+ * @param motherId    id of the mother, null if unknown
+ * @param fatherId    id of the father, null if unknown
+ * @param generation  1 for children, 2 for grandchildren, etc.
+ */
+public record HorseDescendantDto(
+    long id,
+    String name,
+    LocalDate dateOfBirth,
+    Sex sex,
+    Long motherId,
+    Long fatherId,
+    int generation
+) {
+}
@@ -0,0 +1,14 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * DTO of the last line of a stream of descendants, that has been cut off.
+ * It marks the list as incomplete, and is only written if further descendants exist.
+ *
+ * @param truncated      always true
+ * @param maxDescendants the most descendants returned for one request
+ */
+public record HorseDescendantsTruncatedDto(
+    boolean truncated,
+    int maxDescendants
+) {
+}
@@ -19,6 +19,8 @@ import java.time.LocalDate;
  * @param owner       Owner of the horse
  * @param mother      Mother of the horse
  * @param father      father of the horse
+ * @param version     version of the horse; an update is only applied, if the horse still has it,
+ *                    null to apply it regardless of concurrent changes
  */
 public record HorseDetailDto(
     Long id,
@@ -29,8 +31,14 @@ public record HorseDetailDto(
     Sex sex,
     OwnerDto owner,
     HorseDetailDto mother,
-    HorseDetailDto father
+    HorseDetailDto father,
+    Long version
 ) {
+  public HorseDetailDto(Long id, String name, String description, LocalDate dateOfBirth, Sex sex, OwnerDto owner,
+                        HorseDetailDto mother, HorseDetailDto father) {
+    this(id, name, description, dateOfBirth, sex, owner, mother, father, null);
+  }
+
   public HorseDetailDto withId(long newId) {
     return new HorseDetailDto(
         newId,
@@ -40,7 +48,8 @@ public record HorseDetailDto(
         sex,
         owner,
         mother,
-        father);
+        father,
+        version);
   }
 
   public Long ownerId() {
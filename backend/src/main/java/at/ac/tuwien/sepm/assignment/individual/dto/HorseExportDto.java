@@ -0,0 +1,30 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+
+import java.time.LocalDate;
+
+/**
+ * DTO of a horse in an export of the registry.
+ * Parents are only given by their ID, the owner is included in full.
+ *
+ * @param id          id of the horse
+ * @param name        Name of the horse
+ * @param description Description of the horse
+ * @param dateOfBirth Date of birth of the Horse
+ * @param sex         Sex of the Horse (Male, Female)
+ * @param owner       Owner of the horse, null if it has none
+ * @param motherId    id of the mother, null if unknown
+ * @param fatherId    id of the father, null if unknown
+ */
+public record HorseExportDto(
+    long id,
+    String name,
+    String description,
+    LocalDate dateOfBirth,
+    Sex sex,
+    OwnerDto owner,
+    Long motherId,
+    Long fatherId
+) {
+}
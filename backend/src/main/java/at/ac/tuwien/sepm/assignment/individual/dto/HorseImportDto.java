@@ -0,0 +1,46 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * DTO to encapsulate the progress of an import of horses.
+ * Only the first errors are kept, {@code errorCount} counts all of them.
+ *
+ * @param id             id of the import
+ * @param state          State of the import
+ * @param startedAt      Time the import started
+ * @param finishedAt     Time the import finished, null while it is running
+ * @param linesRead      Number of lines read from the file so far
+ * @param horsesImported Number of horses created so far
+ * @param linesRejected  Number of lines, that were not imported, because they are invalid
+ * @param linksRejected  Number of imported horses, whose parents given by reference could not be set
+ * @param errorCount     Number of errors so far
+ * @param errors         The first errors, prefixed by their line
+ */
+public record HorseImportDto(
+    long id,
+    State state,
+    Instant startedAt,
+    Instant finishedAt,
+    long linesRead,
+    long horsesImported,
+    long linesRejected,
+    long linksRejected,
+    long errorCount,
+    List<String> errors
+) {
+  /**
+   * State of an import.
+   */
+  public enum State {
+    /** the file is read and the horses are created */
+    LOADING,
+    /** the file is read completely, parents given by reference are set */
+    LINKING,
+    /** the import is finished */
+    COMPLETED,
+    /** the import was aborted, the horses created so far are kept */
+    FAILED
+  }
+}
@@ -15,6 +15,7 @@ import java.time.LocalDate;
  * @param sex         sex of the horse
  * @param ownerName   substring of the owner's name
  * @param limit       the maximum number of horses to return, even if there are more matches
+ * @param after       position in the result (sorted by name and ID), after which to continue
  */
 public record HorseSearchDto(
     String name,
@@ -23,6 +24,7 @@ public record HorseSearchDto(
     LocalDate bornBefore,
     Sex sex,
     String ownerName,
-    Integer limit
+    Integer limit,
+    ContinuationToken after
 ) {
 }
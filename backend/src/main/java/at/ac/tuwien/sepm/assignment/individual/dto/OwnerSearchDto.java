@@ -6,9 +6,11 @@ package at.ac.tuwien.sepm.assignment.individual.dto;
  *
  * @param name      substring of the owner's name
  * @param maxAmount the maximum number of owners to return, even if there are more matches
+ * @param after     position in the result (sorted by last name, first name and ID), after which to continue
  */
 public record OwnerSearchDto(
     String name,
-    Integer maxAmount // needs to be present always
+    Integer maxAmount, // needs to be present always
+    ContinuationToken after
 ) {
 }
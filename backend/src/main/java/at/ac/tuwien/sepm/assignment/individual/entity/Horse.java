@@ -17,7 +17,7 @@ public class Horse {
   private Long ownerId;
   private Long motherId;
   private Long fatherId;
-
+  private Long version;
 
   public Long getId() {
     return id;
@@ -92,6 +92,15 @@ public class Horse {
     return this;
   }
 
+  public Long getVersion() {
+    return version;
+  }
+
+  public Horse setVersion(Long version) {
+    this.version = version;
+    return this;
+  }
+
   @Override
   public String toString() {
     return "Horse{"
@@ -103,6 +112,7 @@ public class Horse {
         + ", ownerId=" + ownerId
         + ", motherId=" + motherId
         + ", fatherId=" + fatherId
+        + ", version=" + version
         + '}';
   }
 
@@ -117,11 +127,11 @@ public class Horse {
     Horse horse = (Horse) o;
     return id.equals(horse.id) && name.equals(horse.name) && Objects.equals(description, horse.description) && dateOfBirth.equals(horse.dateOfBirth)
         && sex == horse.sex && Objects.equals(ownerId, horse.ownerId) && Objects.equals(motherId, horse.motherId)
-        && Objects.equals(fatherId, horse.fatherId);
+        && Objects.equals(fatherId, horse.fatherId) && Objects.equals(version, horse.version);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id, name, description, dateOfBirth, sex, ownerId, motherId, fatherId);
+    return Objects.hash(id, name, description, dateOfBirth, sex, ownerId, motherId, fatherId, version);
   }
 }
@@ -69,7 +69,8 @@ public class HorseMapper {
         horse.getSex(),
         getOwner(horse, owners),
         getParent(horse.getMotherId(), parents),
-        getParent(horse.getFatherId(), parents)
+        getParent(horse.getFatherId(), parents),
+        horse.getVersion()
     );
   }
 
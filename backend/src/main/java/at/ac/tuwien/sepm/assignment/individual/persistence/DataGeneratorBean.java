@@ -10,24 +10,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.init.ScriptUtils;
 import org.springframework.stereotype.Component;
 
 /**
  * This component is only created, if the profile {@code datagen} is active
  * You can activate this profile by adding {@code -Dspring.profiles.active=datagen} to your maven command line
+ * <p>
+ * Besides the fixed test data, a synthetic pedigree can be generated by setting {@code datagen.horses},
+ * e.g. {@code -Ddatagen.horses=1000000 -Ddatagen.seed=7}. See {@link DataGeneratorProperties} for all options.
+ * </p>
  */
 @Component
 @Profile("datagen")
 public class DataGeneratorBean {
   private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private final DataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final DataGeneratorProperties properties;
 
   /**
    * Executed once when the component is instantiated. Inserts some dummy data.
    */
-  public DataGeneratorBean(DataSource dataSource) {
+  public DataGeneratorBean(DataSource dataSource, JdbcTemplate jdbcTemplate, DataGeneratorProperties properties) {
     this.dataSource = dataSource;
+    this.jdbcTemplate = jdbcTemplate;
+    this.properties = properties;
   }
 
   @PostConstruct
@@ -35,7 +44,10 @@ public class DataGeneratorBean {
     LOGGER.info("Generating data…");
     try (var connection = dataSource.getConnection()) {
       ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql/insertData.sql"));
-      LOGGER.info("Finished generating data without error.");
     }
+    if (properties.horses() > 0) {
+      new PedigreeGenerator(jdbcTemplate, properties).generate();
+    }
+    LOGGER.info("Finished generating data without error.");
   }
 }
@@ -0,0 +1,62 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Configuration of the synthetic pedigree generated by {@link DataGeneratorBean}.
+ * All properties are bound from the {@code datagen} prefix.
+ * With the default of {@code horses = 0} only the fixed test data from {@code sql/insertData.sql} is inserted.
+ *
+ * @param horses            number of synthetic horses to generate
+ * @param owners            number of synthetic owners the horses are distributed over
+ * @param seed              seed of the generator, the same seed always produces the same data
+ * @param generations       depth of the pedigree, i.e. the number of generations the horses are spread over
+ * @param branching         growth factor of each generation compared to the previous one
+ * @param inbreedingRate    probability, that a foal is sired by the father of its own mother
+ * @param ownerSkew         skew of the owner distribution, 1 is uniform, larger values concentrate horses on few owners
+ * @param ownerlessRate     probability, that a horse has no owner at all
+ * @param descriptionLength length of the generated descriptions, 0 generates no description
+ * @param batchSize         number of rows per JDBC batch
+ * @param threads           number of threads generating and inserting batches in parallel
+ * @param referenceDate     date the pedigree is generated relative to, no horse is born after it;
+ *                          fixed instead of the current day, so the same seed produces the same data on every day
+ */
+@ConfigurationProperties("datagen")
+public record DataGeneratorProperties(
+    @DefaultValue("0") int horses,
+    @DefaultValue("1000") int owners,
+    @DefaultValue("42") long seed,
+    @DefaultValue("8") int generations,
+    @DefaultValue("1.5") double branching,
+    @DefaultValue("0.05") double inbreedingRate,
+    @DefaultValue("1.0") double ownerSkew,
+    @DefaultValue("0.1") double ownerlessRate,
+    @DefaultValue("64") int descriptionLength,
+    @DefaultValue("5000") int batchSize,
+    @DefaultValue("4") int threads,
+    @DefaultValue("2023-01-01") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate referenceDate
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if any of the values is out of range
+   */
+  public DataGeneratorProperties {
+    if (horses < 0 || owners < 0 || generations < 1 || branching <= 0 || batchSize < 1 || threads < 1) {
+      throw new IllegalArgumentException("Invalid data generator configuration: sizes must be positive");
+    }
+    if (inbreedingRate < 0 || inbreedingRate > 1 || ownerlessRate < 0 || ownerlessRate > 1) {
+      throw new IllegalArgumentException("Invalid data generator configuration: rates must be between 0 and 1");
+    }
+    if (referenceDate == null) {
+      throw new IllegalArgumentException("Invalid data generator configuration: reference date is missing");
+    }
+    if (ownerSkew < 1 || descriptionLength < 0 || descriptionLength > 4095) {
+      throw new IllegalArgumentException("Invalid data generator configuration: owner skew or description length out of range");
+    }
+  }
+}
@@ -2,13 +2,19 @@ package at.ac.tuwien.sepm.assignment.individual.persistence;
 
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.springframework.dao.OptimisticLockingFailureException;
 
+import java.time.LocalDate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for horses.
@@ -29,6 +35,8 @@ public interface HorseDao {
    * the entity {@link Horse}. The query is additive, meaning that all attributes are linked with an AND operator.
    * The returned stream of horses never contains more than {@code searchParameters.limit} elements,
    * even if there would be more matches in the persistent data store.
+   * Horses are sorted by name and ID. If {@code searchParameters.after} is given,
+   * only horses sorted after this position are returned.
    * </p>
    *
    * @param searchParameters object containing the search parameters to match
@@ -36,6 +44,33 @@ public interface HorseDao {
    */
   Collection<Horse> search(HorseSearchDto searchParameters);
 
+  /**
+   * Search for horses matching the criteria in {@code searchParameters}, like {@link #search(HorseSearchDto)},
+   * but read the matches lazily through a forward-only cursor, instead of loading them all at once.
+   * <p>
+   * The first matches are only read before the last ones are found, if the database executes queries lazily,
+   * as H2 does with {@code LAZY_QUERY_EXECUTION=TRUE} in the URL of the data source.
+   * The returned stream holds a database connection until it is closed,
+   * so it has to be closed after use, e.g. by a try-with-resources statement.
+   * </p>
+   *
+   * @param searchParameters object containing the search parameters to match
+   * @return a lazy stream of the horses matching the criteria in {@code searchParameters}
+   */
+  Stream<Horse> streamSearch(HorseSearchDto searchParameters);
+
+  /**
+   * Read all horses, together with their owners, ordered by ID through a forward-only cursor.
+   * <p>
+   * Like {@link #streamSearch(HorseSearchDto)}, this relies on lazy query execution to start before the whole registry is read.
+   * The returned stream holds a database connection until it is closed,
+   * so it has to be closed after use, e.g. by a try-with-resources statement.
+   * </p>
+   *
+   * @return a lazy stream of all horses in the persistent data store
+   */
+  Stream<HorseExportDto> streamExport();
+
   /**
    * Get a horse by its ID from the persistent data store.
    *
@@ -45,25 +80,88 @@ public interface HorseDao {
    */
   Horse getById(long id) throws NotFoundException;
 
+  /**
+   * Get a horse and its parents by the ID of the horse from the persistent data store, in one query.
+   *
+   * @param id the ID of the horse to get
+   * @return a map of the horse and its parents by their ID
+   * @throws NotFoundException if the Horse with the given ID does not exist in the persistent data store
+   */
+  Map<Long, Horse> getByIdWithParents(long id) throws NotFoundException;
+
+  /**
+   * Get all horses with an ID in {@code ids} from the persistent data store.
+   * IDs, that do not belong to any horse, are ignored.
+   *
+   * @param ids the IDs of the horses to get
+   * @return the horses found
+   */
+  Collection<Horse> getAllById(Collection<Long> ids);
+
   /**
    * Create a new horse in the persistent data store.
+   * The parents of the horse are claimed in the same transaction, see {@link #claimParents(Collection)}.
    *
    * @param newHorse the data to create the new horse from
    * @return the newly created horse
+   * @throws OptimisticLockingFailureException if a parent does not have the sex or date of birth, the horse was validated against, any more
    */
   Horse create(HorseCreateDto newHorse);
 
+  /**
+   * Claims stored parents for the children, that are linked to them, in the transaction that links the children.
+   * A parent is only claimed, if it still has the sex its role requires and is not born after its child,
+   * so children validated against a parent, that changed since, are not linked.
+   * The claim increases the children version of the parent, but not its version,
+   * so the parent stays as it is for its readers, while a concurrent change of its sex or date of birth,
+   * that was validated without these children, fails, see {@link #update(HorseDetailDto, ValidationSnapshot)}.
+   * The parents are locked in the order of their IDs.
+   *
+   * @param claims the parents to claim, a parent may be claimed for several children
+   * @throws OptimisticLockingFailureException if one of the parents does not exist, or does not fit its children any more
+   */
+  void claimParents(Collection<ParentClaim> claims);
+
+  /**
+   * Create new horses in the persistent data store, sending all inserts in one JDBC batch.
+   * The parents of the horses are claimed in the same transaction, see {@link #claimParents(Collection)}.
+   *
+   * @param newHorses the data to create the new horses from
+   * @return the newly created horses, in the same order as {@code newHorses}
+   * @throws OptimisticLockingFailureException if a parent does not have the sex or date of birth, the horses were validated against, any more
+   */
+  List<Horse> createAll(List<HorseCreateDto> newHorses);
+
   /**
    * Update the horse with the ID given in {@code horse}
    * with the data given in {@code horse}
    * in the persistent data store.
+   * If {@code horse} has a version, the horse is only updated, if it still has this version.
+   * Every update increases the version of the horse.
    *
    * @param horse the horse to update
-   * @return the updated horse
-   * @throws NotFoundException if the Horse with the given ID does not exist in the persistent data store
+   * @return the updated horse, with its new version
+   * @throws NotFoundException                 if the Horse with the given ID does not exist in the persistent data store
+   * @throws OptimisticLockingFailureException if the horse does not have the version of {@code horse} any more
    */
   Horse update(HorseDetailDto horse) throws NotFoundException;
 
+  /**
+   * Update the horse with the ID given in {@code horse} with the data given in {@code horse}, like {@link #update(HorseDetailDto)},
+   * but only if the horse still has the version, it had in the {@code snapshot} it was validated against.
+   * If its sex or date of birth changes, it must also still have the same children, so its children version is checked as well.
+   * The versions are checked by the update statement itself, so no lock has to be held between validation and update.
+   * Parents, that are new to the horse, or all parents, if its date of birth changes, are claimed in the same transaction,
+   * see {@link #claimParents(Collection)}.
+   *
+   * @param horse    the horse to update
+   * @param snapshot the stored data the horse was validated against, see {@link #getValidationSnapshot(Long, Long, Long, Long)}
+   * @return the updated horse, with its new version
+   * @throws NotFoundException                 if the Horse with the given ID does not exist in the persistent data store
+   * @throws OptimisticLockingFailureException if the horse has changed since the snapshot was read, or a parent does not fit it any more
+   */
+  Horse update(HorseDetailDto horse, ValidationSnapshot snapshot) throws NotFoundException;
+
   /**
    * Deletes the horse, with the given ID, from the persistent data store.
    *
@@ -83,6 +181,27 @@ public interface HorseDao {
    */
   Map<Long, Horse> getGenerationsAsTree(long id, long limit) throws NotFoundException;
 
+  /**
+   * Gets a stamp of the versions of the horse, its parents and its owner, in one query.
+   * The stamp changes whenever any of them is updated or removed, so it identifies the state of the horse's details.
+   *
+   * @param id the ID of the horse to get the stamp of
+   * @return the version stamp
+   * @throws NotFoundException if the Horse with the given ID does not exist in the persistent data store
+   */
+  String getVersionStamp(long id) throws NotFoundException;
+
+  /**
+   * Gets a stamp of the versions of all horses in the family tree, that {@link #getGenerationsAsTree(long, long)}
+   * returns for the same arguments, aggregated in one query without reading the horses themselves.
+   *
+   * @param id    the ID of the horse to get the stamp of the family-tree of
+   * @param limit The numbers of generations the stamp should cover
+   * @return the version stamp
+   * @throws NotFoundException if the Horse with the given ID does not exist in the persistent data store
+   */
+  String getGenerationsVersionStamp(long id, long limit) throws NotFoundException;
+
   /**
    * Gets all the children of the horse, with the specified id
    *
@@ -90,4 +209,127 @@ public interface HorseDao {
    * @return a stream containing children from the horse with the specified {@code id}
    */
   Collection<Horse> getChildren(long id);
+
+  /**
+   * Gets all the children of any of the given horses, in one query.
+   * A child of two of the given horses is contained twice.
+   *
+   * @param parentIds the IDs of the parents
+   * @return the children of the horses with the given IDs
+   */
+  Collection<Horse> getChildren(Collection<Long> parentIds);
+
+  /**
+   * Reads everything needed to validate a new or changed horse from the persistent data store, in one query.
+   * Each ID may be null, in which case the corresponding parts of the snapshot are empty.
+   *
+   * @param id       the ID of the horse to update, null for a new horse
+   * @param ownerId  the ID of the owner the horse should have
+   * @param motherId the ID of the mother the horse should have
+   * @param fatherId the ID of the father the horse should have
+   * @return the snapshot of the referenced data
+   */
+  ValidationSnapshot getValidationSnapshot(Long id, Long ownerId, Long motherId, Long fatherId);
+
+  /**
+   * Looks up the owners and horses, that a batch of new horses refers to, in one query.
+   * IDs, that do not belong to any owner or horse, are ignored.
+   *
+   * @param ownerIds the IDs of the referenced owners
+   * @param horseIds the IDs of the referenced horses
+   * @return the existing owner IDs and the existing horses by their ID
+   */
+  BatchReferences getBatchReferences(Collection<Long> ownerIds, Collection<Long> horseIds);
+
+  /**
+   * Reads the parents of all horses in the persistent data store and passes them to {@code handler},
+   * one horse at a time, without loading the horses themselves.
+   *
+   * @param handler receives the ID, parent IDs and version of every horse
+   */
+  void forEachParentage(ParentageHandler handler);
+
+  /**
+   * The stored data a horse is validated against, see {@link #getValidationSnapshot(Long, Long, Long, Long)}.
+   * Sex, date of birth, parents and versions of a horse, that does not exist, are null.
+   *
+   * @param ownerExists            whether the owner exists
+   * @param motherSex              sex of the mother
+   * @param motherDateOfBirth      date of birth of the mother
+   * @param fatherSex              sex of the father
+   * @param fatherDateOfBirth      date of birth of the father
+   * @param sex                    currently stored sex of the horse
+   * @param dateOfBirth            currently stored date of birth of the horse
+   * @param motherId               currently stored mother of the horse
+   * @param fatherId               currently stored father of the horse
+   * @param version                currently stored version of the horse
+   * @param childrenVersion        currently stored children version of the horse, see {@link #claimParents(Collection)}
+   * @param oldestChildName        name of the oldest child of the horse, null if it has no children
+   * @param oldestChildDateOfBirth date of birth of the oldest child of the horse, null if it has no children
+   */
+  record ValidationSnapshot(
+      boolean ownerExists,
+      Sex motherSex,
+      LocalDate motherDateOfBirth,
+      Sex fatherSex,
+      LocalDate fatherDateOfBirth,
+      Sex sex,
+      LocalDate dateOfBirth,
+      Long motherId,
+      Long fatherId,
+      Long version,
+      Long childrenVersion,
+      String oldestChildName,
+      LocalDate oldestChildDateOfBirth
+  ) {
+    public boolean exists() {
+      return sex != null;
+    }
+
+    public boolean hasChildren() {
+      return oldestChildDateOfBirth != null;
+    }
+  }
+
+  /**
+   * The stored data a batch of new horses refers to, see {@link #getBatchReferences(Collection, Collection)}.
+   *
+   * @param ownerIds the IDs of the referenced owners, that exist
+   * @param horses   the referenced horses, that exist, by their ID
+   */
+  record BatchReferences(
+      Set<Long> ownerIds,
+      Map<Long, Horse> horses
+  ) {
+  }
+
+  /**
+   * A stored parent, that a child is linked to, see {@link #claimParents(Collection)}.
+   *
+   * @param parentId         the ID of the parent
+   * @param sex              the sex the parent must have, female for a mother and male for a father
+   * @param childDateOfBirth the date of birth of the child, the parent must not be born after it
+   */
+  record ParentClaim(
+      long parentId,
+      Sex sex,
+      LocalDate childDateOfBirth
+  ) {
+  }
+
+  /**
+   * Receives the parents of a horse.
+   */
+  @FunctionalInterface
+  interface ParentageHandler {
+    /**
+     * Handles the parents of one horse.
+     *
+     * @param id       the ID of the horse
+     * @param motherId the ID of its mother, null if unknown
+     * @param fatherId the ID of its father, null if unknown
+     * @param version  the version of the horse
+     */
+    void accept(long id, Long motherId, Long fatherId, long version);
+  }
 }
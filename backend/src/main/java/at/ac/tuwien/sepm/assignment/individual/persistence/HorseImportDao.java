@@ -0,0 +1,120 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data Access Object for the state of horse imports.
+ * Horses of an import, that refer to other horses of the same import by reference, are kept in a staging table,
+ * until the whole import is read and their parents can be linked.
+ */
+public interface HorseImportDao {
+  /**
+   * Reserves a new, unique ID for an import.
+   *
+   * @return the ID
+   */
+  long nextImportId();
+
+  /**
+   * Stores the references of imported horses in the persistent data store, in one JDBC batch.
+   *
+   * @param importId the ID of the import
+   * @param rows     the references of the imported horses
+   */
+  void insertRows(long importId, List<ImportRow> rows);
+
+  /**
+   * Gets the horses of an import, that refer to parents by reference, with the parents resolved.
+   * A reference resolves to the first horse of the import with it.
+   * The horses are sorted by their line, so the next chunk continues after the last line of the previous one.
+   *
+   * @param importId  the ID of the import
+   * @param afterLine only horses after this line are returned
+   * @param limit     the maximum number of horses to return
+   * @return the horses with their parents
+   */
+  List<ParentLink> getParentLinks(long importId, long afterLine, int limit);
+
+  /**
+   * Sets the parents of horses in the persistent data store, in one JDBC batch.
+   * Has to be called in a transaction, so the versions returned are the ones written by this call.
+   *
+   * @param links the horses with their parents, only {@link Parent#id()} of each parent is used
+   * @return the new version of each horse by its ID
+   */
+  Map<Long, Long> setParents(List<ParentLink> links);
+
+  /**
+   * Gets the horses of an import, that use a reference already used by an earlier horse of the import.
+   *
+   * @param importId the ID of the import
+   * @param limit    the maximum number of horses to return
+   * @return the horses with the duplicate references, sorted by line
+   */
+  List<ImportRow> getDuplicateRefs(long importId, int limit);
+
+  /**
+   * Removes everything stored about an import from the staging table.
+   *
+   * @param importId the ID of the import
+   */
+  void deleteRows(long importId);
+
+  /**
+   * The references of an imported horse.
+   *
+   * @param line      line of the horse in the imported file
+   * @param ref       reference of the horse, may be null
+   * @param horseId   ID of the created horse
+   * @param motherRef reference of the mother, may be null
+   * @param fatherRef reference of the father, may be null
+   */
+  record ImportRow(
+      long line,
+      String ref,
+      long horseId,
+      String motherRef,
+      String fatherRef
+  ) {
+  }
+
+  /**
+   * An imported horse, that refers to at least one parent by reference, see {@link #getParentLinks(long, long, int)}.
+   *
+   * @param line        line of the horse in the imported file
+   * @param horseId     ID of the horse
+   * @param dateOfBirth date of birth of the horse
+   * @param mother      the mother of the horse
+   * @param father      the father of the horse
+   */
+  record ParentLink(
+      long line,
+      long horseId,
+      LocalDate dateOfBirth,
+      Parent mother,
+      Parent father
+  ) {
+  }
+
+  /**
+   * A parent of an imported horse.
+   * If the parent is given by reference, {@code id}, {@code sex} and {@code dateOfBirth} are those of the horse referred to,
+   * or null if there is none. Otherwise, {@code id} is the already stored parent, or null if there is none.
+   *
+   * @param ref         reference of the parent, may be null
+   * @param id          ID of the parent
+   * @param sex         sex of the parent referred to
+   * @param dateOfBirth date of birth of the parent referred to
+   */
+  record Parent(
+      String ref,
+      Long id,
+      Sex sex,
+      LocalDate dateOfBirth
+  ) {
+  }
+}
@@ -0,0 +1,274 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates a synthetic pedigree of horses and owners, shaped by {@link DataGeneratorProperties}.
+ * <p>
+ * Every row is a pure function of the seed and its index, so the generated data is the same
+ * for the same configuration, no matter how many threads insert it.
+ * Horses are spread over {@code generations} generations, parents are always taken from
+ * earlier generations and are always older than their foals.
+ * All generated IDs are negative (starting below {@link #ID_OFFSET}), like the fixed test data,
+ * so they do not interfere with user-entered data and are removed again by {@code sql/insertData.sql}.
+ * </p>
+ */
+public class PedigreeGenerator {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Offset of the generated IDs, to keep them apart from the fixed test data.
+   */
+  public static final long ID_OFFSET = 1000;
+
+  private static final String SQL_INSERT_OWNER = "INSERT INTO owner (id, first_name, last_name, email) VALUES (?, ?, ?, ?)";
+  private static final String SQL_INSERT_HORSE =
+      "INSERT INTO horse (id, name, description, date_of_birth, sex, owner_id, mother_id, father_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final int YEARS_PER_GENERATION = 4;
+  private static final int BIRTH_WINDOW_DAYS = 730;
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private static final String[] SYLLABLES = {
+      "ka", "ri", "mo", "sun", "dai", "la", "thun", "der", "bel", "ro", "meo", "spi", "rit", "lu", "na", "sy", "ap", "pol", "mis", "ty"};
+  private static final String[] FIRST_NAMES = {
+      "Bob", "Alice", "Tom", "Maggie", "Jim", "Emily", "Joshua", "Sarah", "Jack", "Karen", "Wendy", "Peter", "Anna", "Lukas", "Lena"};
+  private static final String[] LAST_NAMES = {
+      "Jones", "Lee", "Smith", "Nguyen", "Brown", "Kim", "Wong", "Chen", "Huber", "Gruber", "Wagner", "Bauer", "Maier", "Hofer", "Berger"};
+  private static final String[] WORDS = {
+      "gentle", "elegant", "playful", "powerful", "shy", "curious", "mare", "stallion", "colt", "filly", "with", "a", "black", "bay",
+      "chestnut", "grey", "palomino", "coat", "white", "blaze", "star", "socks", "long", "mane", "muscular", "build", "and"};
+
+  private final JdbcTemplate jdbcTemplate;
+  private final DataGeneratorProperties properties;
+  private final long[] generationStart;
+
+  /**
+   * Creates a generator for the given configuration.
+   *
+   * @param jdbcTemplate the template used to insert the generated rows
+   * @param properties   the shape of the pedigree to generate, including the date it is generated relative to
+   */
+  public PedigreeGenerator(JdbcTemplate jdbcTemplate, DataGeneratorProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.properties = properties;
+    this.generationStart = generationStarts(properties);
+  }
+
+  /**
+   * Returns the ID of the {@code index}-th generated horse (or owner).
+   *
+   * @param index index of the horse, between 0 and {@code horses - 1}
+   * @return the ID the horse is stored with
+   */
+  public static long idOf(long index) {
+    return -(ID_OFFSET + 1 + index);
+  }
+
+  /**
+   * Generates all owners and horses and inserts them in batches, using {@code threads} threads.
+   * Generations are inserted one after the other, so parents always exist when their foals are inserted.
+   */
+  public void generate() {
+    LOG.info("Generating {} horses in {} generations and {} owners (seed {})…",
+        properties.horses(), generationStart.length - 1, properties.owners(), properties.seed());
+    long start = System.nanoTime();
+
+    ExecutorService executor = Executors.newFixedThreadPool(properties.threads());
+    try {
+      insertChunks(executor, 0, properties.owners(), this::insertOwners);
+      for (int generation = 0; generation < generationStart.length - 1; generation++) {
+        insertChunks(executor, generationStart[generation], generationStart[generation + 1], this::insertHorses);
+        LOG.debug("Generated generation {}", generation);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    LOG.info("Generated {} horses in {} ms", properties.horses(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private void insertChunks(ExecutorService executor, long from, long to, ChunkInserter inserter) {
+    List<Future<?>> chunks = new ArrayList<>();
+    for (long chunkStart = from; chunkStart < to; chunkStart += properties.batchSize()) {
+      long chunkFrom = chunkStart;
+      long chunkTo = Math.min(to, chunkStart + properties.batchSize());
+      chunks.add(executor.submit(() -> inserter.insert(chunkFrom, chunkTo)));
+    }
+
+    try {
+      for (Future<?> chunk : chunks) {
+        chunk.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FatalException("Data generation was interrupted", e);
+    } catch (ExecutionException e) {
+      throw new FatalException("Could not insert generated data", e.getCause());
+    }
+  }
+
+  private void insertOwners(long from, long to) {
+    List<Object[]> batch = new ArrayList<>((int) (to - from));
+    for (long index = from; index < to; index++) {
+      SplittableRandom random = randomFor(~index);
+      batch.add(new Object[] {
+          idOf(index),
+          FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+          LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+          "synthetic.owner%d@example.com".formatted(index)
+      });
+    }
+    jdbcTemplate.batchUpdate(SQL_INSERT_OWNER, batch);
+  }
+
+  private void insertHorses(long from, long to) {
+    List<Object[]> batch = new ArrayList<>((int) (to - from));
+    for (long index = from; index < to; index++) {
+      GeneratedHorse horse = horse(index);
+      batch.add(new Object[] {
+          horse.id(),
+          horse.name(),
+          horse.description(),
+          Date.valueOf(horse.dateOfBirth()),
+          horse.sex().toString(),
+          horse.ownerId(),
+          horse.motherId(),
+          horse.fatherId()
+      });
+    }
+    jdbcTemplate.batchUpdate(SQL_INSERT_HORSE, batch);
+  }
+
+  /**
+   * Computes the {@code index}-th horse of the pedigree.
+   * The result only depends on the configuration and {@code index}.
+   *
+   * @param index index of the horse, between 0 and {@code horses - 1}
+   * @return the generated horse
+   */
+  GeneratedHorse horse(long index) {
+    int generation = generationOf(index);
+    long localIndex = index - generationStart[generation];
+    SplittableRandom random = randomFor(index);
+
+    // the order of the draws must never change, otherwise the same seed produces different data
+    Sex sex = localIndex % 2 == 0 ? Sex.FEMALE : Sex.MALE;
+    int generationsFromToday = generationStart.length - 1 - generation;
+    LocalDate dateOfBirth = properties.referenceDate()
+        .minusYears((long) generationsFromToday * YEARS_PER_GENERATION)
+        .plusDays(random.nextInt(BIRTH_WINDOW_DAYS));
+    String name = name(random);
+    String description = description(random);
+    Long ownerId = owner(random);
+
+    Long motherId = null;
+    Long fatherId = null;
+    if (generation > 0) {
+      long previousStart = generationStart[generation - 1];
+      long previousSize = generationStart[generation] - previousStart;
+      long motherIndex = previousStart + 2 * random.nextLong((previousSize + 1) / 2);
+      long fatherIndex = previousStart + 2 * random.nextLong(previousSize / 2) + 1;
+      boolean inbred = random.nextDouble() < properties.inbreedingRate();
+
+      motherId = idOf(motherIndex);
+      fatherId = idOf(fatherIndex);
+      if (inbred && generation > 1) {
+        fatherId = horse(motherIndex).fatherId();
+      }
+    }
+
+    return new GeneratedHorse(idOf(index), name, description, dateOfBirth, sex, ownerId, motherId, fatherId);
+  }
+
+  private SplittableRandom randomFor(long index) {
+    return new SplittableRandom(properties.seed() * GOLDEN_GAMMA + index);
+  }
+
+  private int generationOf(long index) {
+    int generation = 0;
+    while (generationStart[generation + 1] <= index) {
+      generation++;
+    }
+    return generation;
+  }
+
+  private String name(SplittableRandom random) {
+    var name = new StringBuilder();
+    int syllables = random.nextInt(2, 5);
+    for (int i = 0; i < syllables; i++) {
+      name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+    }
+    name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+    return name.toString();
+  }
+
+  private String description(SplittableRandom random) {
+    int length = properties.descriptionLength();
+    if (length == 0) {
+      return null;
+    }
+
+    var description = new StringBuilder(length + 16);
+    while (description.length() < length) {
+      description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    description.setLength(length);
+    description.setCharAt(0, Character.toUpperCase(description.charAt(0)));
+    description.setCharAt(length - 1, '.');
+    return description.toString();
+  }
+
+  private Long owner(SplittableRandom random) {
+    boolean ownerless = random.nextDouble() < properties.ownerlessRate();
+    double position = Math.pow(random.nextDouble(), properties.ownerSkew());
+    if (ownerless || properties.owners() == 0) {
+      return null;
+    }
+    return idOf((long) (position * properties.owners()));
+  }
+
+  private static long[] generationStarts(DataGeneratorProperties properties) {
+    // every generation needs at least one mare and one stallion
+    int generations = (int) Math.max(1, Math.min(properties.generations(), properties.horses() / 2));
+    double[] weights = new double[generations];
+    double totalWeight = 0;
+    for (int generation = 0; generation < generations; generation++) {
+      weights[generation] = Math.pow(properties.branching(), generation);
+      totalWeight += weights[generation];
+    }
+
+    long[] starts = new long[generations + 1];
+    for (int generation = 0; generation < generations; generation++) {
+      long size = Math.max(2, Math.round(properties.horses() * weights[generation] / totalWeight));
+      starts[generation + 1] = Math.min(properties.horses(), starts[generation] + size);
+    }
+    starts[generations] = properties.horses();
+    return starts;
+  }
+
+  /**
+   * A horse of the synthetic pedigree, as it is inserted into the persistent data store.
+   */
+  record GeneratedHorse(long id, String name, String description, LocalDate dateOfBirth, Sex sex, Long ownerId, Long motherId, Long fatherId) {
+  }
+
+  @FunctionalInterface
+  private interface ChunkInserter {
+    void insert(long from, long to);
+  }
+}
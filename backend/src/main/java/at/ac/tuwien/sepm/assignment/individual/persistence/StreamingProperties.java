@@ -0,0 +1,27 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of results, that are streamed from the persistent data store instead of being loaded at once.
+ * All properties are bound from the {@code streaming} prefix.
+ *
+ * @param fetchSize number of rows the JDBC cursor fetches at a time,
+ *                  which is also the number of rows mapped together (e.g. to look up their owners)
+ */
+@ConfigurationProperties("streaming")
+public record StreamingProperties(
+    @DefaultValue("500") int fetchSize
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if any of the values is out of range
+   */
+  public StreamingProperties {
+    if (fetchSize < 1) {
+      throw new IllegalArgumentException("Invalid streaming configuration: fetch size must be positive");
+    }
+  }
+}
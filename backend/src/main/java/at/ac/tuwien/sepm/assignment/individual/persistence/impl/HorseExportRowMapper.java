@@ -0,0 +1,56 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Maps the rows of {@link HorseJdbcDao#SQL_SELECT_EXPORT}, horses joined with their owners, to {@link HorseExportDto}s.
+ */
+final class HorseExportRowMapper extends IndexedRowMapper<HorseExportDto> {
+  private int id;
+  private int name;
+  private int description;
+  private int dateOfBirth;
+  private int sex;
+  private int ownerId;
+  private int ownerFirstName;
+  private int ownerLastName;
+  private int ownerEmail;
+  private int motherId;
+  private int fatherId;
+
+  @Override
+  protected void resolveColumns(ResultSet result) throws SQLException {
+    id = result.findColumn("id");
+    name = result.findColumn("name");
+    description = result.findColumn("description");
+    dateOfBirth = result.findColumn("date_of_birth");
+    sex = result.findColumn("sex");
+    ownerId = result.findColumn("owner_id");
+    ownerFirstName = result.findColumn("owner_first_name");
+    ownerLastName = result.findColumn("owner_last_name");
+    ownerEmail = result.findColumn("owner_email");
+    motherId = result.findColumn("mother_id");
+    fatherId = result.findColumn("father_id");
+  }
+
+  @Override
+  protected HorseExportDto map(ResultSet result) throws SQLException {
+    Long owner = getLongOrNull(result, ownerId);
+    return new HorseExportDto(
+        result.getLong(id),
+        result.getString(name),
+        result.getString(description),
+        result.getObject(dateOfBirth, LocalDate.class),
+        toSex(result.getString(sex)),
+        owner == null
+            ? null
+            : new OwnerDto(owner, result.getString(ownerFirstName), result.getString(ownerLastName), result.getString(ownerEmail)),
+        getLongOrNull(result, motherId),
+        getLongOrNull(result, fatherId));
+  }
+}
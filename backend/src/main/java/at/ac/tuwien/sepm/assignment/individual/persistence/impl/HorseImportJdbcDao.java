@@ -0,0 +1,121 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class HorseImportJdbcDao implements HorseImportDao {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String TABLE_NAME = "horse_import_row";
+  private static final String TABLE_NAME_HORSE = "horse";
+  private static final String SQL_NEXT_IMPORT_ID = "SELECT NEXT VALUE FOR horse_import_seq";
+  private static final String SQL_INSERT_ROW =
+      "INSERT INTO " + TABLE_NAME + " (import_id, line, ref, horse_id, mother_ref, father_ref) VALUES (?, ?, ?, ?, ?, ?)";
+  // the first row of the import with the reference, found at the start of the (import_id, ref, line) index
+  private static final String SQL_FIRST_WITH_REF = "(SELECT MIN(x.line) FROM " + TABLE_NAME + " x"
+      + " WHERE x.import_id = s.import_id AND x.ref = %s)";
+  static final String SQL_SELECT_PARENT_LINKS = "SELECT s.line, s.horse_id, h.date_of_birth,"
+      + " s.mother_ref, COALESCE(mr.horse_id, CASE WHEN s.mother_ref IS NULL THEN h.mother_id END) AS mother_id,"
+      + " m.sex AS mother_sex, m.date_of_birth AS mother_date_of_birth,"
+      + " s.father_ref, COALESCE(fr.horse_id, CASE WHEN s.father_ref IS NULL THEN h.father_id END) AS father_id,"
+      + " f.sex AS father_sex, f.date_of_birth AS father_date_of_birth"
+      + " FROM " + TABLE_NAME + " s"
+      + " JOIN " + TABLE_NAME_HORSE + " h ON h.id = s.horse_id"
+      + " LEFT JOIN " + TABLE_NAME + " mr ON mr.import_id = s.import_id AND mr.line = " + SQL_FIRST_WITH_REF.formatted("s.mother_ref")
+      + " LEFT JOIN " + TABLE_NAME_HORSE + " m ON m.id = mr.horse_id"
+      + " LEFT JOIN " + TABLE_NAME + " fr ON fr.import_id = s.import_id AND fr.line = " + SQL_FIRST_WITH_REF.formatted("s.father_ref")
+      + " LEFT JOIN " + TABLE_NAME_HORSE + " f ON f.id = fr.horse_id"
+      + " WHERE s.import_id = ? AND s.line > ? AND (s.mother_ref IS NOT NULL OR s.father_ref IS NOT NULL)"
+      + " ORDER BY s.line LIMIT ?";
+  static final String SQL_UPDATE_PARENTS = "UPDATE " + TABLE_NAME_HORSE + " SET mother_id = ?, father_id = ?, version = version + 1 WHERE id = ?";
+  static final String SQL_SELECT_DUPLICATE_REFS = "SELECT s.line, s.ref, s.horse_id FROM " + TABLE_NAME + " s"
+      + " WHERE s.import_id = ? AND s.ref IS NOT NULL AND s.line > " + SQL_FIRST_WITH_REF.formatted("s.ref")
+      + " ORDER BY s.line LIMIT ?";
+  // read in the transaction of the update, which still locks the rows, so these are the versions it wrote
+  private static final String SQL_SELECT_VERSIONS = "SELECT id, version FROM " + TABLE_NAME_HORSE + " WHERE id IN (:ids)";
+  static final String SQL_DELETE_ROWS = "DELETE FROM " + TABLE_NAME + " WHERE import_id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final NamedParameterJdbcTemplate jdbcNamed;
+
+  public HorseImportJdbcDao(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate jdbcNamed) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.jdbcNamed = jdbcNamed;
+  }
+
+  @Override
+  public long nextImportId() {
+    LOG.trace("nextImportId()");
+
+    return jdbcTemplate.queryForObject(SQL_NEXT_IMPORT_ID, Long.class);
+  }
+
+  @Override
+  public void insertRows(long importId, List<ImportRow> rows) {
+    LOG.trace("insertRows({}, {} rows)", importId, rows.size());
+
+    jdbcTemplate.batchUpdate(SQL_INSERT_ROW, rows, rows.size(), (stmt, row) -> {
+      stmt.setLong(1, importId);
+      stmt.setLong(2, row.line());
+      stmt.setString(3, row.ref());
+      stmt.setLong(4, row.horseId());
+      stmt.setString(5, row.motherRef());
+      stmt.setString(6, row.fatherRef());
+    });
+  }
+
+  @Override
+  public List<ParentLink> getParentLinks(long importId, long afterLine, int limit) {
+    LOG.trace("getParentLinks({}, {}, {})", importId, afterLine, limit);
+
+    return jdbcTemplate.query(SQL_SELECT_PARENT_LINKS, new ParentLinkRowMapper(), importId, afterLine, limit);
+  }
+
+  @Override
+  public Map<Long, Long> setParents(List<ParentLink> links) {
+    LOG.trace("setParents({} horses)", links.size());
+
+    jdbcTemplate.batchUpdate(SQL_UPDATE_PARENTS, links, links.size(), (stmt, link) -> {
+      stmt.setObject(1, link.mother().id(), Types.BIGINT);
+      stmt.setObject(2, link.father().id(), Types.BIGINT);
+      stmt.setLong(3, link.horseId());
+    });
+
+    Map<Long, Long> versions = new HashMap<>();
+    jdbcNamed.query(SQL_SELECT_VERSIONS, new MapSqlParameterSource("ids", links.stream().map(ParentLink::horseId).toList()),
+        (ResultSet rs) -> {
+          versions.put(rs.getLong(1), rs.getLong(2));
+        });
+    return versions;
+  }
+
+  @Override
+  public List<ImportRow> getDuplicateRefs(long importId, int limit) {
+    LOG.trace("getDuplicateRefs({}, {})", importId, limit);
+
+    // the fixed columns line, ref and horse_id are read by position
+    return jdbcTemplate.query(SQL_SELECT_DUPLICATE_REFS,
+        (rs, rowNum) -> new ImportRow(rs.getLong(1), rs.getString(2), rs.getLong(3), null, null),
+        importId, limit);
+  }
+
+  @Override
+  public void deleteRows(long importId) {
+    LOG.trace("deleteRows({})", importId);
+
+    jdbcTemplate.update(SQL_DELETE_ROWS, importId);
+  }
+}
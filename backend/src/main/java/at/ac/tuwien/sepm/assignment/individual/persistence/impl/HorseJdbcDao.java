@@ -2,31 +2,48 @@ package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
 
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.StreamingProperties;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 public class HorseJdbcDao implements HorseDao {
@@ -34,47 +51,127 @@ public class HorseJdbcDao implements HorseDao {
 
   private static final String TABLE_NAME = "horse";
   private static final String TABLE_NAME_OWNER = "owner";
-  private static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
-  private static final String SQL_SELECT_ALL_CHILDREN = "SELECT * FROM " + TABLE_NAME + " WHERE mother_id = ? OR father_id = ?";
-  private static final String SQL_SELECT_SEARCH = "SELECT h.* FROM " + TABLE_NAME + " h"
-      + " LEFT JOIN " + TABLE_NAME_OWNER + " o ON o.id = h.owner_id"
-      + " WHERE (? IS NULL OR UPPER(h.name) like UPPER('%'||COALESCE(?, '')||'%'))"
-      + " AND (? IS NULL OR UPPER(h.description) like UPPER('%'||COALESCE(?, '')||'%'))"
-      + " AND (? IS NULL OR h.date_of_birth < ?)"
-      + " AND (? IS NULL OR h.sex = ?)"
-      + " AND (? IS NULL OR UPPER(o.first_name ||' '|| o.last_name) like UPPER('%'||COALESCE(?, '')||'%'))";
+  private static final String TABLE_NAME_TRIGRAM = "horse_trigram";
+  static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
+  // two separate lookups instead of "mother_id = ? OR father_id = ?", so both parent indexes can be used
+  static final String SQL_SELECT_ALL_CHILDREN = "SELECT * FROM " + TABLE_NAME + " WHERE mother_id = ?"
+      + " UNION ALL SELECT * FROM " + TABLE_NAME + " WHERE father_id = ?";
+  static final String SQL_SELECT_ALL_CHILDREN_OF = "SELECT * FROM " + TABLE_NAME + " WHERE mother_id IN (:ids)"
+      + " UNION ALL SELECT * FROM " + TABLE_NAME + " WHERE father_id IN (:ids)";
+  private static final String SQL_SELECT_SEARCH = "SELECT h.* FROM " + TABLE_NAME + " h WHERE TRUE";
+  // substring searches start from the horses containing one trigram of the term, and check the others by the index
+  private static final String SQL_SELECT_SEARCH_BY_TRIGRAM = "SELECT h.* FROM " + TABLE_NAME_TRIGRAM + " t0"
+      + " JOIN " + TABLE_NAME + " h ON h.id = t0.horse_id WHERE t0.field = ? AND t0.trigram = ?";
+  private static final String SQL_SELECT_SEARCH_TRIGRAM_CLAUSE = " AND EXISTS (SELECT 1 FROM " + TABLE_NAME_TRIGRAM + " t"
+      + " WHERE t.field = ? AND t.trigram = ? AND t.horse_id = h.id)";
+  private static final String SQL_SELECT_SEARCH_NAME_CLAUSE = " AND UPPER(h.name) like UPPER('%'||?||'%')";
+  private static final String SQL_SELECT_SEARCH_DESCRIPTION_CLAUSE = " AND UPPER(h.description) like UPPER('%'||?||'%')";
+  private static final String SQL_SELECT_SEARCH_BORN_BEFORE_CLAUSE = " AND h.date_of_birth < ?";
+  private static final String SQL_SELECT_SEARCH_SEX_CLAUSE = " AND h.sex = ?";
+  // matching owners are looked up first, the horses of them are then found by the owner_id index
+  private static final String SQL_SELECT_SEARCH_OWNER_CLAUSE = " AND h.owner_id IN (SELECT o.id FROM " + TABLE_NAME_OWNER + " o"
+      + " WHERE UPPER(o.first_name ||' '|| o.last_name) like UPPER('%'||?||'%'))";
+  // the first condition is the start of the range on the (name, id) index, the second skips the already returned horses
+  private static final String SQL_SELECT_SEARCH_AFTER_CLAUSE = " AND h.name >= ? AND (h.name > ? OR h.id > ?)";
+  private static final String SQL_SELECT_SEARCH_ORDER_CLAUSE = " ORDER BY h.name, h.id";
   private static final String SQL_SELECT_SEARCH_LIMIT_CLAUSE = " LIMIT ?";
-  private static final String SQL_SELECT_GENERATION =
-      "WITH RECURSIVE ancestor(id, name, description, date_of_birth, sex, owner_id, mother_id, father_id, generation) AS ("
-          + " SELECT *, 1 as generation FROM horse where Id = ? UNION SELECT horse.*, (ancestor.generation + 1) FROM horse, ancestor"
-          + " WHERE (ancestor.mother_id = horse.id OR ancestor.father_id = horse.id) AND ancestor.generation < ?)"
+  // more trigrams narrow down the candidates only marginally, the LIKE checks the rest
+  private static final int SEARCH_MAX_TRIGRAMS_PER_TERM = 8;
+  static final String SQL_SELECT_GENERATION =
+      "WITH RECURSIVE ancestor(id, name, description, date_of_birth, sex, owner_id, mother_id, father_id, version, generation) AS ("
+          + " SELECT id, name, description, date_of_birth, sex, owner_id, mother_id, father_id, version, 1 as generation FROM horse where Id = ?"
+          + " UNION SELECT horse.id, horse.name, horse.description, horse.date_of_birth, horse.sex, horse.owner_id, horse.mother_id,"
+          + " horse.father_id, horse.version, (ancestor.generation + 1) FROM ancestor"
+          + " JOIN horse ON horse.id IN (ancestor.mother_id, ancestor.father_id) WHERE ancestor.generation < ?)"
           + " SELECT * FROM ancestor";
-
-  private static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
+  // the same walk as SQL_SELECT_GENERATION, but only the IDs and versions of the horses are read and aggregated into one value
+  static final String SQL_SELECT_GENERATION_VERSION =
+      "WITH RECURSIVE ancestor(id, mother_id, father_id, version, generation) AS ("
+          + " SELECT id, mother_id, father_id, version, 1 FROM horse WHERE id = ?"
+          + " UNION SELECT horse.id, horse.mother_id, horse.father_id, horse.version, (ancestor.generation + 1) FROM ancestor"
+          + " JOIN horse ON horse.id IN (ancestor.mother_id, ancestor.father_id) WHERE ancestor.generation < ?)"
+          + " SELECT LISTAGG(DISTINCT id || ':' || version, ',') WITHIN GROUP (ORDER BY id || ':' || version) FROM ancestor";
+  // missing parents and owners are part of the stamp too, so removing one changes it
+  static final String SQL_SELECT_DETAIL_VERSION = "SELECT h.id || ':' || h.version"
+      + " || ',' || COALESCE(o.id || ':' || o.version, '-')"
+      + " || ',' || COALESCE(m.id || ':' || m.version, '-')"
+      + " || ',' || COALESCE(f.id || ':' || f.version, '-')"
+      + " FROM " + TABLE_NAME + " h"
+      + " LEFT JOIN " + TABLE_NAME_OWNER + " o ON o.id = h.owner_id"
+      + " LEFT JOIN " + TABLE_NAME + " m ON m.id = h.mother_id"
+      + " LEFT JOIN " + TABLE_NAME + " f ON f.id = h.father_id"
+      + " WHERE h.id = ?";
+
+  static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
+  static final String SQL_SELECT_BY_ID_WITH_PARENTS = "SELECT p.* FROM " + TABLE_NAME + " h"
+      + " JOIN " + TABLE_NAME + " p ON p.id IN (h.id, h.mother_id, h.father_id) WHERE h.id = ?";
+  static final String SQL_SELECT_ALL_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
+  // one row, with the oldest child by either parent side looked up at the start of the (parent, date_of_birth) indexes
+  static final String SQL_SELECT_VALIDATION_SNAPSHOT = "SELECT"
+      + " EXISTS (SELECT 1 FROM " + TABLE_NAME_OWNER + " o WHERE o.id = :ownerId) AS owner_exists,"
+      + " m.sex AS mother_sex, m.date_of_birth AS mother_date_of_birth,"
+      + " f.sex AS father_sex, f.date_of_birth AS father_date_of_birth,"
+      + " h.sex, h.date_of_birth, h.mother_id, h.father_id, h.version, h.children_version,"
+      + " cm.name AS child_by_mother_name, cm.date_of_birth AS child_by_mother_date_of_birth,"
+      + " cf.name AS child_by_father_name, cf.date_of_birth AS child_by_father_date_of_birth"
+      + " FROM (VALUES (1)) snapshot(id)"
+      + " LEFT JOIN " + TABLE_NAME + " h ON h.id = :id"
+      + " LEFT JOIN " + TABLE_NAME + " m ON m.id = :motherId"
+      + " LEFT JOIN " + TABLE_NAME + " f ON f.id = :fatherId"
+      + " LEFT JOIN " + TABLE_NAME + " cm ON cm.id = (SELECT c.id FROM " + TABLE_NAME + " c"
+      + "   WHERE c.mother_id = :id ORDER BY c.date_of_birth LIMIT 1)"
+      + " LEFT JOIN " + TABLE_NAME + " cf ON cf.id = (SELECT c.id FROM " + TABLE_NAME + " c"
+      + "   WHERE c.father_id = :id ORDER BY c.date_of_birth LIMIT 1)";
+  // owners and horses in one result, told apart by the is_owner column
+  static final String SQL_SELECT_BATCH_REFERENCES = "SELECT h.id, h.name, h.description, h.date_of_birth, h.sex, FALSE AS is_owner"
+      + " FROM " + TABLE_NAME + " h WHERE h.id IN (:horseIds)"
+      + " UNION ALL SELECT o.id, NULL, NULL, NULL, NULL, TRUE FROM " + TABLE_NAME_OWNER + " o WHERE o.id IN (:ownerIds)";
+  // owners are joined in the same pass, so an export needs no lookups per horse or chunk
+  static final String SQL_SELECT_EXPORT = "SELECT h.id, h.name, h.description, h.date_of_birth, h.sex, h.mother_id, h.father_id,"
+      + " o.id AS owner_id, o.first_name AS owner_first_name, o.last_name AS owner_last_name, o.email AS owner_email"
+      + " FROM " + TABLE_NAME + " h LEFT JOIN " + TABLE_NAME_OWNER + " o ON o.id = h.owner_id ORDER BY h.id";
+  static final String SQL_SELECT_ALL_PARENTAGES = "SELECT id, mother_id, father_id, version FROM " + TABLE_NAME;
   private static final String SQL_CREATE =
       "INSERT INTO " + TABLE_NAME + " (name, description, date_of_birth, sex, owner_id, mother_id, father_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
-  private static final String SQL_UPDATE =
-      "UPDATE " + TABLE_NAME + " SET name = ? , description = ?, date_of_birth = ?, sex = ?, owner_id = ?, mother_id = ?"
-          + "  , father_id = ? WHERE id = ?";
-  private static final String SQL_DELETE = "DELETE FROM " + TABLE_NAME + " WHERE id = ?";
+  static final String SQL_UPDATE = "UPDATE " + TABLE_NAME + " SET name = ? , description = ?, date_of_birth = ?, sex = ?, owner_id = ?"
+      + "  , mother_id = ?, father_id = ?, version = version + 1 WHERE id = ?";
+  static final String SQL_UPDATE_VERSION_CLAUSE = " AND version = ?";
+  static final String SQL_UPDATE_CHILDREN_VERSION_CLAUSE = " AND children_version = ?";
+  // the new version is read from the updated row, no row is returned, if a version check failed
+  private static final String SQL_UPDATE_RETURNING_VERSION = "SELECT version FROM FINAL TABLE (%s)";
+  // the parent is checked against its child in the write, its version stays, as the parent itself does not change;
+  // the check is a CASE, so the parent is looked up by its primary key instead of the (sex, date_of_birth) index
+  static final String SQL_CLAIM_PARENT = "UPDATE " + TABLE_NAME + " SET children_version = children_version + 1"
+      + " WHERE id = ? AND CASE WHEN sex = ? THEN date_of_birth <= ? ELSE FALSE END";
+  static final String SQL_EXISTS = "SELECT EXISTS (SELECT 1 FROM " + TABLE_NAME + " WHERE id = ?)";
+  // the default of the version column
+  private static final long INITIAL_VERSION = 1;
+  static final String SQL_DELETE = "DELETE FROM " + TABLE_NAME + " WHERE id = ?";
   private final JdbcTemplate jdbcTemplate;
+  private final NamedParameterJdbcTemplate jdbcNamed;
+  private final TransactionTemplate transactionTemplate;
+  private final StreamingProperties streamingProperties;
 
-  public HorseJdbcDao(JdbcTemplate jdbcTemplate) {
+  public HorseJdbcDao(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate jdbcNamed, TransactionTemplate transactionTemplate,
+                      StreamingProperties streamingProperties) {
     this.jdbcTemplate = jdbcTemplate;
+    this.jdbcNamed = jdbcNamed;
+    this.transactionTemplate = transactionTemplate;
+    this.streamingProperties = streamingProperties;
   }
 
   @Override
   public List<Horse> getAll() {
     LOG.trace("getAll()");
 
-    return jdbcTemplate.query(SQL_SELECT_ALL, this::mapRow);
+    return jdbcTemplate.query(SQL_SELECT_ALL, new HorseRowMapper());
   }
 
   @Override
   public Horse getById(long id) throws NotFoundException {
     LOG.trace("getById({})", id);
 
-    List<Horse> horses = jdbcTemplate.query(SQL_SELECT_BY_ID, this::mapRow, id);
+    List<Horse> horses = jdbcTemplate.query(SQL_SELECT_BY_ID, new HorseRowMapper(), id);
 
     if (horses.isEmpty()) {
       throw new NotFoundException("No horse with ID %d found".formatted(id));
@@ -88,10 +185,63 @@ public class HorseJdbcDao implements HorseDao {
     return horses.get(0);
   }
 
+  @Override
+  public Map<Long, Horse> getByIdWithParents(long id) throws NotFoundException {
+    LOG.trace("getByIdWithParents({})", id);
+
+    Map<Long, Horse> horses = jdbcTemplate.query(SQL_SELECT_BY_ID_WITH_PARENTS, new HorseRowMapper(), id)
+        .stream()
+        .collect(Collectors.toMap(Horse::getId, Function.identity()));
+
+    if (!horses.containsKey(id)) {
+      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    }
+    return horses;
+  }
+
+  @Override
+  public Collection<Horse> getAllById(Collection<Long> ids) {
+    LOG.trace("getAllById({})", ids);
+
+    if (ids.isEmpty()) {
+      return List.of();
+    }
+    var statementParams = Collections.singletonMap("ids", ids);
+    return jdbcNamed.query(SQL_SELECT_ALL_BY_ID, statementParams, new HorseRowMapper());
+  }
+
   @Override
   public Horse update(HorseDetailDto horse) throws NotFoundException {
     LOG.trace("update({})", horse);
-    int updated = jdbcTemplate.update(SQL_UPDATE,
+
+    return update(horse, horse.version(), null, List.of());
+  }
+
+  @Override
+  public Horse update(HorseDetailDto horse, ValidationSnapshot snapshot) throws NotFoundException {
+    LOG.trace("update({}, {})", horse, snapshot);
+
+    // only a new sex or date of birth may no longer fit the children, the horse was validated with
+    boolean dateOfBirthChanged = !horse.dateOfBirth().equals(snapshot.dateOfBirth());
+    Long childrenVersion = dateOfBirthChanged || horse.sex() != snapshot.sex() ? snapshot.childrenVersion() : null;
+    // and only new parents, or a new date of birth, may no longer fit the parents
+    List<ParentClaim> claims = new ArrayList<>(2);
+    if (horse.motherId() != null && (dateOfBirthChanged || !horse.motherId().equals(snapshot.motherId()))) {
+      claims.add(new ParentClaim(horse.motherId(), Sex.FEMALE, horse.dateOfBirth()));
+    }
+    if (horse.fatherId() != null && (dateOfBirthChanged || !horse.fatherId().equals(snapshot.fatherId()))) {
+      claims.add(new ParentClaim(horse.fatherId(), Sex.MALE, horse.dateOfBirth()));
+    }
+    return update(horse, snapshot.version(), childrenVersion, claims);
+  }
+
+  /**
+   * Updates the horse, if it has the given version and children version, and claims the given parents.
+   * A null version is not checked.
+   */
+  private Horse update(HorseDetailDto horse, Long version, Long childrenVersion, List<ParentClaim> claims) throws NotFoundException {
+    var query = new StringBuilder(SQL_UPDATE);
+    var params = new ArrayList<>(Arrays.asList(
         horse.name(),
         horse.description(),
         horse.dateOfBirth(),
@@ -99,9 +249,30 @@ public class HorseJdbcDao implements HorseDao {
         horse.ownerId(),
         horse.motherId(),
         horse.fatherId(),
-        horse.id());
+        horse.id()));
+    if (version != null) {
+      query.append(SQL_UPDATE_VERSION_CLAUSE);
+      params.add(version);
+    }
+    if (childrenVersion != null) {
+      query.append(SQL_UPDATE_CHILDREN_VERSION_CLAUSE);
+      params.add(childrenVersion);
+    }
 
-    if (updated == 0) {
+    // the parents are locked before the horse, as they are before a new child
+    List<Long> versions = transactionTemplate.execute(status -> {
+      claimParents(claims);
+      List<Long> written = jdbcTemplate.queryForList(SQL_UPDATE_RETURNING_VERSION.formatted(query), Long.class, params.toArray());
+      if (written.isEmpty()) {
+        // no claims for a horse, that was not written
+        status.setRollbackOnly();
+      }
+      return written;
+    });
+    if (versions.isEmpty()) {
+      if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(SQL_EXISTS, Boolean.class, horse.id()))) {
+        throw new OptimisticLockingFailureException("Horse with ID %d or its children changed since version %d".formatted(horse.id(), version));
+      }
       throw new NotFoundException("Could not update horse with ID %d, because it does not exist".formatted(horse.id()));
     }
 
@@ -113,7 +284,8 @@ public class HorseJdbcDao implements HorseDao {
         .setSex(horse.sex())
         .setOwnerId(horse.ownerId())
         .setMotherId(horse.motherId())
-        .setFatherId(horse.fatherId());
+        .setFatherId(horse.fatherId())
+        .setVersion(versions.get(0));
   }
 
   @Override
@@ -121,49 +293,162 @@ public class HorseJdbcDao implements HorseDao {
     LOG.trace("create({})", newHorse);
     GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
 
-    jdbcTemplate.update(con -> {
-      PreparedStatement stmt = con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS);
-      stmt.setString(1, newHorse.name());
-      stmt.setString(2, newHorse.description());
-      stmt.setDate(3, Date.valueOf(newHorse.dateOfBirth()));
-      stmt.setString(4, newHorse.sex().toString());
+    transactionTemplate.executeWithoutResult(status -> {
+      claimParents(parentClaims(List.of(newHorse)));
+      jdbcTemplate.update(con -> {
+        PreparedStatement stmt = con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS);
+        setCreateParameters(stmt, newHorse);
+        return stmt;
+      }, keyHolder);
+    });
 
-      if (newHorse.ownerId() != null) {
-        stmt.setLong(5, newHorse.ownerId());
-      } else {
-        stmt.setNull(5, Types.BIGINT);
+    Number key = keyHolder.getKey();
+    if (key == null) {
+      // This should never happen. If it does, something is wrong with the DB or the way the prepared statement is set up.
+      throw new FatalException("Could not extract key for newly created horse. There is probably a programming error…");
+    }
+
+    return createdHorse(key.longValue(), newHorse);
+  }
+
+  @Override
+  public void claimParents(Collection<ParentClaim> claims) {
+    LOG.trace("claimParents({})", claims);
+
+    if (claims.isEmpty()) {
+      return;
+    }
+    // one claim per parent and sex, checked against the oldest child,
+    // in the order of the IDs, so that concurrent claims lock shared parents in the same order
+    List<ParentClaim> parents = claims.stream()
+        .collect(Collectors.toMap(claim -> List.of(claim.parentId(), claim.sex()), Function.identity(),
+            (claim, other) -> other.childDateOfBirth().isBefore(claim.childDateOfBirth()) ? other : claim))
+        .values().stream()
+        .sorted(Comparator.comparingLong(ParentClaim::parentId))
+        .toList();
+    int[][] counts = jdbcTemplate.batchUpdate(SQL_CLAIM_PARENT, parents, parents.size(), (stmt, parent) -> {
+      stmt.setLong(1, parent.parentId());
+      stmt.setString(2, parent.sex().toString());
+      stmt.setDate(3, Date.valueOf(parent.childDateOfBirth()));
+    });
+    for (int count : counts[0]) {
+      if (count == 0) {
+        throw new OptimisticLockingFailureException("Parents %s changed since their children were validated"
+            .formatted(parents.stream().map(ParentClaim::parentId).toList()));
       }
+    }
+  }
 
+  // the parents of new horses, that are already stored when the horses are inserted
+  private static List<ParentClaim> parentClaims(List<HorseCreateDto> newHorses) {
+    List<ParentClaim> claims = new ArrayList<>();
+    for (HorseCreateDto newHorse : newHorses) {
       if (newHorse.motherId() != null) {
-        stmt.setLong(6, newHorse.motherId());
-      } else {
-        stmt.setNull(6, Types.BIGINT);
+        claims.add(new ParentClaim(newHorse.motherId(), Sex.FEMALE, newHorse.dateOfBirth()));
       }
-
       if (newHorse.fatherId() != null) {
-        stmt.setLong(7, newHorse.fatherId());
-      } else {
-        stmt.setNull(7, Types.BIGINT);
+        claims.add(new ParentClaim(newHorse.fatherId(), Sex.MALE, newHorse.dateOfBirth()));
+      }
+    }
+    return claims;
+  }
+
+  @Override
+  public List<Horse> createAll(List<HorseCreateDto> newHorses) {
+    LOG.trace("createAll({} horses)", newHorses.size());
+
+    if (newHorses.isEmpty()) {
+      return List.of();
+    }
+    return transactionTemplate.execute(status -> {
+      claimParents(parentClaims(newHorses));
+      return insertAll(newHorses);
+    });
+  }
+
+  private List<Horse> insertAll(List<HorseCreateDto> newHorses) {
+    return jdbcTemplate.execute((Connection con) -> con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS), (PreparedStatement stmt) -> {
+      for (HorseCreateDto newHorse : newHorses) {
+        setCreateParameters(stmt, newHorse);
+        stmt.addBatch();
       }
+      stmt.executeBatch();
+
+      // the keys are returned in the order of the batch
+      List<Horse> created = new ArrayList<>(newHorses.size());
+      try (ResultSet keys = stmt.getGeneratedKeys()) {
+        for (HorseCreateDto newHorse : newHorses) {
+          if (!keys.next()) {
+            throw new FatalException("Could not extract keys for all newly created horses. There is probably a programming error…");
+          }
+          created.add(createdHorse(keys.getLong(1), newHorse));
+        }
+      }
+      return created;
+    });
+  }
 
-      return stmt;
-    }, keyHolder);
+  private static void setCreateParameters(PreparedStatement stmt, HorseCreateDto newHorse) throws SQLException {
+    stmt.setString(1, newHorse.name());
+    stmt.setString(2, newHorse.description());
+    stmt.setDate(3, Date.valueOf(newHorse.dateOfBirth()));
+    stmt.setString(4, newHorse.sex().toString());
 
-    Number key = keyHolder.getKey();
-    if (key == null) {
-      // This should never happen. If it does, something is wrong with the DB or the way the prepared statement is set up.
-      throw new FatalException("Could not extract key for newly created horse. There is probably a programming error…");
+    if (newHorse.ownerId() != null) {
+      stmt.setLong(5, newHorse.ownerId());
+    } else {
+      stmt.setNull(5, Types.BIGINT);
     }
 
+    if (newHorse.motherId() != null) {
+      stmt.setLong(6, newHorse.motherId());
+    } else {
+      stmt.setNull(6, Types.BIGINT);
+    }
+
+    if (newHorse.fatherId() != null) {
+      stmt.setLong(7, newHorse.fatherId());
+    } else {
+      stmt.setNull(7, Types.BIGINT);
+    }
+  }
+
+  private static Horse createdHorse(long id, HorseCreateDto newHorse) {
     return new Horse()
-        .setId(key.longValue())
+        .setId(id)
         .setName(newHorse.name())
         .setDescription(newHorse.description())
         .setDateOfBirth(newHorse.dateOfBirth())
         .setSex(newHorse.sex())
         .setOwnerId(newHorse.ownerId())
         .setMotherId(newHorse.motherId())
-        .setFatherId(newHorse.fatherId());
+        .setFatherId(newHorse.fatherId())
+        .setVersion(INITIAL_VERSION);
+  }
+
+  @Override
+  public BatchReferences getBatchReferences(Collection<Long> ownerIds, Collection<Long> horseIds) {
+    LOG.trace("getBatchReferences({}, {})", ownerIds, horseIds);
+
+    // "IN ()" is not valid SQL, "IN (NULL)" matches nothing
+    var params = new MapSqlParameterSource()
+        .addValue("ownerIds", ownerIds.isEmpty() ? Collections.singletonList(null) : ownerIds)
+        .addValue("horseIds", horseIds.isEmpty() ? Collections.singletonList(null) : horseIds);
+    Set<Long> owners = new HashSet<>();
+    Map<Long, Horse> horses = new HashMap<>();
+    jdbcNamed.query(SQL_SELECT_BATCH_REFERENCES, params, (ResultSet rs) -> {
+      if (rs.getBoolean("is_owner")) {
+        owners.add(rs.getLong("id"));
+      } else {
+        horses.put(rs.getLong("id"), new Horse()
+            .setId(rs.getLong("id"))
+            .setName(rs.getString("name"))
+            .setDescription(rs.getString("description"))
+            .setDateOfBirth(rs.getObject("date_of_birth", LocalDate.class))
+            .setSex(IndexedRowMapper.toSex(rs.getString("sex"))));
+      }
+    });
+    return new BatchReferences(owners, horses);
   }
 
   @Override
@@ -181,34 +466,116 @@ public class HorseJdbcDao implements HorseDao {
   public Collection<Horse> search(HorseSearchDto searchParameters) {
     LOG.trace("search({})", searchParameters);
 
-    var query = SQL_SELECT_SEARCH;
     var params = new ArrayList<>();
-    params.add(searchParameters.name());
-    params.add(searchParameters.name());
-    params.add(searchParameters.description());
-    params.add(searchParameters.description());
-    params.add(searchParameters.bornBefore());
-    params.add(searchParameters.bornBefore());
-    params.add(searchParameters.sex());
-    params.add(searchParameters.sex() == null ? null : searchParameters.sex().toString());
-    params.add(searchParameters.ownerName());
-    params.add(searchParameters.ownerName());
+    var query = searchQuery(searchParameters, params);
+    return jdbcTemplate.query(query, new HorseRowMapper(), params.toArray());
+  }
+
+  @Override
+  public Stream<Horse> streamSearch(HorseSearchDto searchParameters) {
+    LOG.trace("streamSearch({})", searchParameters);
+
+    var params = new ArrayList<>();
+    var query = searchQuery(searchParameters, params);
+    var setter = new ArgumentPreparedStatementSetter(params.toArray());
+    return jdbcTemplate.queryForStream(con -> {
+      PreparedStatement stmt = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(streamingProperties.fetchSize());
+      setter.setValues(stmt);
+      return stmt;
+    }, new HorseRowMapper());
+  }
+
+  @Override
+  public Stream<HorseExportDto> streamExport() {
+    LOG.trace("streamExport()");
+
+    return jdbcTemplate.queryForStream(con -> {
+      PreparedStatement stmt = con.prepareStatement(SQL_SELECT_EXPORT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(streamingProperties.fetchSize());
+      return stmt;
+    }, new HorseExportRowMapper());
+  }
+
+  /**
+   * Builds the search query for {@code searchParameters}.
+   * Only the criteria, that are actually given, end up in the query,
+   * so the optimizer can pick an index for them.
+   * Name and description terms of at least three characters are looked up in the trigram index
+   * ({@link HorseTrigramTrigger}) first, the {@code LIKE} then removes candidates, that contain all trigrams
+   * but not the term itself. So the result is the same as of a plain substring match.
+   * The result is sorted by name and ID, so pages can continue after the last horse of the previous one.
+   *
+   * @param searchParameters the search parameters to build the query for
+   * @param params           the list, the statement parameters are added to
+   * @return the query
+   */
+  static String searchQuery(HorseSearchDto searchParameters, List<Object> params) {
+    var trigrams = new ArrayList<Object[]>();
+    addSearchTrigrams(trigrams, HorseTrigramTrigger.FIELD_NAME, searchParameters.name());
+    addSearchTrigrams(trigrams, HorseTrigramTrigger.FIELD_DESCRIPTION, searchParameters.description());
+
+    StringBuilder query;
+    if (trigrams.isEmpty()) {
+      query = new StringBuilder(SQL_SELECT_SEARCH);
+    } else {
+      query = new StringBuilder(SQL_SELECT_SEARCH_BY_TRIGRAM);
+      params.addAll(Arrays.asList(trigrams.get(0)));
+      for (Object[] trigram : trigrams.subList(1, trigrams.size())) {
+        query.append(SQL_SELECT_SEARCH_TRIGRAM_CLAUSE);
+        params.addAll(Arrays.asList(trigram));
+      }
+    }
+
+    if (searchParameters.name() != null) {
+      query.append(SQL_SELECT_SEARCH_NAME_CLAUSE);
+      params.add(searchParameters.name());
+    }
+    if (searchParameters.description() != null) {
+      query.append(SQL_SELECT_SEARCH_DESCRIPTION_CLAUSE);
+      params.add(searchParameters.description());
+    }
+    if (searchParameters.bornBefore() != null) {
+      query.append(SQL_SELECT_SEARCH_BORN_BEFORE_CLAUSE);
+      params.add(searchParameters.bornBefore());
+    }
+    if (searchParameters.sex() != null) {
+      query.append(SQL_SELECT_SEARCH_SEX_CLAUSE);
+      params.add(searchParameters.sex().toString());
+    }
+    if (searchParameters.ownerName() != null) {
+      query.append(SQL_SELECT_SEARCH_OWNER_CLAUSE);
+      params.add(searchParameters.ownerName());
+    }
+    if (searchParameters.after() != null) {
+      var name = searchParameters.after().key().get(0);
+      query.append(SQL_SELECT_SEARCH_AFTER_CLAUSE);
+      params.addAll(List.of(name, name, searchParameters.after().id()));
+    }
+    query.append(SQL_SELECT_SEARCH_ORDER_CLAUSE);
 
     // limit
     var maxAmount = searchParameters.limit();
     if (maxAmount != null) {
-      query += SQL_SELECT_SEARCH_LIMIT_CLAUSE;
+      query.append(SQL_SELECT_SEARCH_LIMIT_CLAUSE);
       params.add(maxAmount);
     }
+    return query.toString();
+  }
 
-    return jdbcTemplate.query(query, this::mapRow, params.toArray());
+  private static void addSearchTrigrams(List<Object[]> trigrams, int field, String term) {
+    var termTrigrams = new ArrayList<>(HorseTrigramTrigger.trigrams(term));
+    int step = Math.max(1, termTrigrams.size() / SEARCH_MAX_TRIGRAMS_PER_TERM);
+    for (int i = 0; i < termTrigrams.size() && i / step < SEARCH_MAX_TRIGRAMS_PER_TERM; i += step) {
+      trigrams.add(new Object[] {field, termTrigrams.get(i)});
+    }
   }
 
   @Override
   public Map<Long, Horse> getGenerationsAsTree(long id, long limit) throws NotFoundException {
     LOG.trace("getGenerationsAsTree({}, {})", id, limit);
 
-    List<Horse> horses = jdbcTemplate.query(SQL_SELECT_GENERATION, this::mapRow, id, limit);
+    List<Horse> horses = jdbcTemplate.query(SQL_SELECT_GENERATION, new HorseRowMapper(), id, limit);
     if (horses.isEmpty()) {
       throw new NotFoundException("Could not return family-tree for horse with ID %d, because it does not exist".formatted(id));
     }
@@ -216,24 +583,90 @@ public class HorseJdbcDao implements HorseDao {
     return horses.stream().distinct().collect(Collectors.toMap(Horse::getId, Function.identity()));
   }
 
+  @Override
+  public String getVersionStamp(long id) throws NotFoundException {
+    LOG.trace("getVersionStamp({})", id);
+
+    List<String> stamps = jdbcTemplate.queryForList(SQL_SELECT_DETAIL_VERSION, String.class, id);
+    if (stamps.isEmpty()) {
+      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    }
+    return stamps.get(0);
+  }
+
+  @Override
+  public String getGenerationsVersionStamp(long id, long limit) throws NotFoundException {
+    LOG.trace("getGenerationsVersionStamp({}, {})", id, limit);
+
+    // the aggregate is null, if the walk found no horse at all
+    String stamp = jdbcTemplate.queryForObject(SQL_SELECT_GENERATION_VERSION, String.class, id, limit);
+    if (stamp == null) {
+      throw new NotFoundException("Could not return family-tree for horse with ID %d, because it does not exist".formatted(id));
+    }
+    return stamp;
+  }
+
   @Override
   public Collection<Horse> getChildren(long id) {
     LOG.trace("getChildren({})", id);
 
-    return jdbcTemplate.query(SQL_SELECT_ALL_CHILDREN, this::mapRow, id, id);
+    return jdbcTemplate.query(SQL_SELECT_ALL_CHILDREN, new HorseRowMapper(), id, id);
   }
 
-  private Horse mapRow(ResultSet result, int rownum) throws SQLException {
-    LOG.trace("mapRow({}, {})", result, rownum);
+  @Override
+  public Collection<Horse> getChildren(Collection<Long> parentIds) {
+    LOG.trace("getChildren({})", parentIds);
 
-    return new Horse()
-        .setId(result.getLong("id"))
-        .setName(result.getString("name"))
-        .setDescription(result.getString("description"))
-        .setDateOfBirth(result.getDate("date_of_birth").toLocalDate())
-        .setSex(Sex.valueOf(result.getString("sex")))
-        .setOwnerId(result.getObject("owner_id", Long.class))
-        .setMotherId(result.getObject("mother_id", Long.class))
-        .setFatherId(result.getObject("father_id", Long.class));
+    if (parentIds.isEmpty()) {
+      return List.of();
+    }
+    return jdbcNamed.query(SQL_SELECT_ALL_CHILDREN_OF, new MapSqlParameterSource("ids", parentIds), new HorseRowMapper());
+  }
+
+  @Override
+  public ValidationSnapshot getValidationSnapshot(Long id, Long ownerId, Long motherId, Long fatherId) {
+    LOG.trace("getValidationSnapshot({}, {}, {}, {})", id, ownerId, motherId, fatherId);
+
+    var statementParams = new MapSqlParameterSource()
+        .addValue("id", id, Types.BIGINT)
+        .addValue("ownerId", ownerId, Types.BIGINT)
+        .addValue("motherId", motherId, Types.BIGINT)
+        .addValue("fatherId", fatherId, Types.BIGINT);
+    return jdbcNamed.queryForObject(SQL_SELECT_VALIDATION_SNAPSHOT, statementParams, (result, rownum) -> {
+      String oldestChildName = result.getString("child_by_mother_name");
+      LocalDate oldestChildDateOfBirth = result.getObject("child_by_mother_date_of_birth", LocalDate.class);
+      LocalDate childByFatherDateOfBirth = result.getObject("child_by_father_date_of_birth", LocalDate.class);
+      if (childByFatherDateOfBirth != null && (oldestChildDateOfBirth == null || childByFatherDateOfBirth.isBefore(oldestChildDateOfBirth))) {
+        oldestChildName = result.getString("child_by_father_name");
+        oldestChildDateOfBirth = childByFatherDateOfBirth;
+      }
+
+      return new ValidationSnapshot(
+          result.getBoolean("owner_exists"),
+          IndexedRowMapper.toSex(result.getString("mother_sex")),
+          result.getObject("mother_date_of_birth", LocalDate.class),
+          IndexedRowMapper.toSex(result.getString("father_sex")),
+          result.getObject("father_date_of_birth", LocalDate.class),
+          IndexedRowMapper.toSex(result.getString("sex")),
+          result.getObject("date_of_birth", LocalDate.class),
+          result.getObject("mother_id", Long.class),
+          result.getObject("father_id", Long.class),
+          result.getObject("version", Long.class),
+          result.getObject("children_version", Long.class),
+          oldestChildName,
+          oldestChildDateOfBirth);
+    });
+  }
+
+  @Override
+  public void forEachParentage(ParentageHandler handler) {
+    LOG.trace("forEachParentage({})", handler);
+
+    jdbcTemplate.query(con -> {
+      PreparedStatement stmt = con.prepareStatement(SQL_SELECT_ALL_PARENTAGES, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(streamingProperties.fetchSize());
+      return stmt;
+    }, (RowCallbackHandler) result -> // columns in the order of SQL_SELECT_ALL_PARENTAGES
+        handler.accept(result.getLong(1), IndexedRowMapper.getLongOrNull(result, 2), IndexedRowMapper.getLongOrNull(result, 3), result.getLong(4)));
   }
 }
@@ -0,0 +1,49 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Maps rows with all columns of the horse table to {@link Horse} entities.
+ */
+public final class HorseRowMapper extends IndexedRowMapper<Horse> {
+  private int id;
+  private int name;
+  private int description;
+  private int dateOfBirth;
+  private int sex;
+  private int ownerId;
+  private int motherId;
+  private int fatherId;
+  private int version;
+
+  @Override
+  protected void resolveColumns(ResultSet result) throws SQLException {
+    id = result.findColumn("id");
+    name = result.findColumn("name");
+    description = result.findColumn("description");
+    dateOfBirth = result.findColumn("date_of_birth");
+    sex = result.findColumn("sex");
+    ownerId = result.findColumn("owner_id");
+    motherId = result.findColumn("mother_id");
+    fatherId = result.findColumn("father_id");
+    version = result.findColumn("version");
+  }
+
+  @Override
+  protected Horse map(ResultSet result) throws SQLException {
+    return new Horse()
+        .setId(result.getLong(id))
+        .setName(result.getString(name))
+        .setDescription(result.getString(description))
+        .setDateOfBirth(result.getObject(dateOfBirth, LocalDate.class))
+        .setSex(toSex(result.getString(sex)))
+        .setOwnerId(getLongOrNull(result, ownerId))
+        .setMotherId(getLongOrNull(result, motherId))
+        .setFatherId(getLongOrNull(result, fatherId))
+        .setVersion(result.getLong(version));
+  }
+}
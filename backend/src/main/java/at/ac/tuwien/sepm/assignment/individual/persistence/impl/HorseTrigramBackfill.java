@@ -0,0 +1,96 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Fills the trigram index ({@code horse_trigram}) for horses, that were stored before the index existed.
+ * New and updated horses are indexed by {@link HorseTrigramTrigger}, so this only does something
+ * on the first start with an existing database.
+ * <p>
+ * Every horse, that lacks the trigrams of its name or description, is indexed, not only when the whole index is empty.
+ * The horses are indexed in chunks of one transaction each, so a backfill, that is stopped halfway,
+ * leaves every horse either indexed completely or not at all, and the next start continues with the rest.
+ * </p>
+ */
+@Component
+public class HorseTrigramBackfill {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int CHUNK_SIZE = 1000;
+  private static final String SQL_MISSING_FIELD = "(LENGTH(h.%s) >= " + HorseTrigramTrigger.TRIGRAM_LENGTH
+      + " AND NOT EXISTS (SELECT 1 FROM horse_trigram t WHERE t.horse_id = h.id AND t.field = %d))";
+  private static final String SQL_NAME_MISSING = SQL_MISSING_FIELD.formatted("name", HorseTrigramTrigger.FIELD_NAME);
+  private static final String SQL_DESCRIPTION_MISSING = SQL_MISSING_FIELD.formatted("description", HorseTrigramTrigger.FIELD_DESCRIPTION);
+  // the next chunk of horses after the given ID, that lack the trigrams of one of their fields
+  private static final String SQL_SELECT_UNINDEXED = "SELECT h.id, h.name, h.description,"
+      + " " + SQL_NAME_MISSING + " AS name_missing, " + SQL_DESCRIPTION_MISSING + " AS description_missing"
+      + " FROM horse h WHERE h.id > ? AND (" + SQL_NAME_MISSING + " OR " + SQL_DESCRIPTION_MISSING + ")"
+      + " ORDER BY h.id LIMIT ?";
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+
+  public HorseTrigramBackfill(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+  }
+
+  @PostConstruct
+  public void backfill() {
+    LOG.trace("backfill()");
+
+    long indexed = 0;
+    long lastId = Long.MIN_VALUE;
+    while (true) {
+      final long after = lastId;
+      Chunk chunk = transactionTemplate.execute(status -> indexChunk(after));
+      if (chunk == null || chunk.horses() == 0) {
+        break;
+      }
+      if (indexed == 0) {
+        LOG.info("Building trigram index for horses without one…");
+      }
+      indexed += chunk.horses();
+      lastId = chunk.lastId();
+    }
+    if (indexed > 0) {
+      LOG.info("Built trigram index for {} horses", indexed);
+    }
+  }
+
+  private Chunk indexChunk(long afterId) {
+    return jdbcTemplate.execute((ConnectionCallback<Chunk>) connection -> {
+      int horses = 0;
+      long lastId = afterId;
+      try (PreparedStatement select = connection.prepareStatement(SQL_SELECT_UNINDEXED)) {
+        select.setLong(1, afterId);
+        select.setInt(2, CHUNK_SIZE);
+        try (ResultSet result = select.executeQuery()) {
+          while (result.next()) {
+            lastId = result.getLong("id");
+            horses++;
+            if (result.getBoolean("name_missing")) {
+              HorseTrigramTrigger.insert(connection, lastId, HorseTrigramTrigger.FIELD_NAME, result.getString("name"));
+            }
+            if (result.getBoolean("description_missing")) {
+              HorseTrigramTrigger.insert(connection, lastId, HorseTrigramTrigger.FIELD_DESCRIPTION, result.getString("description"));
+            }
+          }
+        }
+      }
+      return new Chunk(horses, lastId);
+    });
+  }
+
+  private record Chunk(int horses, long lastId) {
+  }
+}
@@ -0,0 +1,109 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * H2 trigger, that keeps the trigram index of horse names and descriptions ({@code horse_trigram}) up to date.
+ * <p>
+ * Every (upper case) substring of length 3 of a name or description is stored together with the ID of the horse.
+ * A horse can only contain a search term as substring, if it contains all trigrams of the term,
+ * so the index narrows down the candidates of a substring search without scanning the whole table.
+ * Rows of deleted horses are removed by the foreign key ({@code ON DELETE CASCADE}).
+ * </p>
+ */
+public class HorseTrigramTrigger implements Trigger {
+  static final int FIELD_NAME = 0;
+  static final int FIELD_DESCRIPTION = 1;
+  static final int TRIGRAM_LENGTH = 3;
+
+  // column positions in the horse table
+  private static final int COLUMN_ID = 0;
+  private static final int COLUMN_NAME = 1;
+  private static final int COLUMN_DESCRIPTION = 2;
+
+  private static final String SQL_DELETE = "DELETE FROM horse_trigram WHERE horse_id = ? AND field = ?";
+  private static final String SQL_INSERT = "INSERT INTO horse_trigram (field, trigram, horse_id) VALUES (?, ?, ?)";
+
+  /**
+   * Splits {@code text} into its distinct trigrams.
+   * The text is upper-cased the same way as H2's {@code UPPER} function does,
+   * so the trigrams match the case-insensitive {@code LIKE} of the search.
+   *
+   * @param text the text to split, may be null
+   * @return the distinct trigrams of {@code text}, in order of their first occurrence
+   */
+  public static Set<String> trigrams(String text) {
+    Set<String> trigrams = new LinkedHashSet<>();
+    if (text == null) {
+      return trigrams;
+    }
+
+    String upper = text.toUpperCase(Locale.ENGLISH);
+    for (int i = 0; i + TRIGRAM_LENGTH <= upper.length(); i++) {
+      trigrams.add(upper.substring(i, i + TRIGRAM_LENGTH));
+    }
+    return trigrams;
+  }
+
+  @Override
+  public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+    if (newRow == null) {
+      return;
+    }
+
+    long id = ((Number) newRow[COLUMN_ID]).longValue();
+    boolean update = oldRow != null;
+    reindex(conn, id, FIELD_NAME, update, oldRow == null ? null : oldRow[COLUMN_NAME], newRow[COLUMN_NAME]);
+    reindex(conn, id, FIELD_DESCRIPTION, update, oldRow == null ? null : oldRow[COLUMN_DESCRIPTION], newRow[COLUMN_DESCRIPTION]);
+  }
+
+  private void reindex(Connection conn, long id, int field, boolean update, Object oldValue, Object newValue) throws SQLException {
+    if (update && Objects.equals(oldValue, newValue)) {
+      return;
+    }
+
+    if (update) {
+      try (PreparedStatement delete = conn.prepareStatement(SQL_DELETE)) {
+        delete.setLong(1, id);
+        delete.setInt(2, field);
+        delete.executeUpdate();
+      }
+    }
+
+    insert(conn, id, field, (String) newValue);
+  }
+
+  /**
+   * Inserts the trigrams of {@code text} for the given horse and field.
+   *
+   * @param conn  the connection to insert with
+   * @param id    the ID of the horse
+   * @param field the field the text belongs to ({@link #FIELD_NAME} or {@link #FIELD_DESCRIPTION})
+   * @param text  the text to index, may be null
+   * @throws SQLException if the insert fails
+   */
+  static void insert(Connection conn, long id, int field, String text) throws SQLException {
+    Set<String> trigrams = trigrams(text);
+    if (trigrams.isEmpty()) {
+      return;
+    }
+
+    try (PreparedStatement insert = conn.prepareStatement(SQL_INSERT)) {
+      for (String trigram : trigrams) {
+        insert.setInt(1, field);
+        insert.setString(2, trigram);
+        insert.setLong(3, id);
+        insert.addBatch();
+      }
+      insert.executeBatch();
+    }
+  }
+}
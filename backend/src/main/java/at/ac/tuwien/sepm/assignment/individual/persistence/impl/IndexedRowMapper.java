@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A row mapper, that reads columns by their index instead of by their name.
+ * <p>
+ * The indexes are looked up by name once, on the first row of a result set, and reused for all following rows of it.
+ * The mapper holds these indexes, so a new one has to be used for each query, and it must not be shared between threads.
+ * </p>
+ *
+ * @param <T> the type of the mapped rows
+ */
+public abstract class IndexedRowMapper<T> implements RowMapper<T> {
+  private ResultSet resolvedFor;
+
+  @Override
+  public final T mapRow(ResultSet result, int rownum) throws SQLException {
+    if (result != resolvedFor) {
+      resolveColumns(result);
+      resolvedFor = result;
+    }
+    return map(result);
+  }
+
+  /**
+   * Looks up the indexes of the columns read by {@link #map(ResultSet)}, e.g. by {@link ResultSet#findColumn(String)}.
+   */
+  protected abstract void resolveColumns(ResultSet result) throws SQLException;
+
+  /**
+   * Maps the current row of {@code result}.
+   */
+  protected abstract T map(ResultSet result) throws SQLException;
+
+  /**
+   * Reads a nullable BIGINT column without converting it through {@link ResultSet#getObject(int, Class)}.
+   */
+  static Long getLongOrNull(ResultSet result, int column) throws SQLException {
+    long value = result.getLong(column);
+    return result.wasNull() ? null : value;
+  }
+
+  /**
+   * Converts the value of a sex column, without the lookup by name of {@link Sex#valueOf(String)}.
+   */
+  static Sex toSex(String value) {
+    if (value == null) {
+      return null;
+    }
+    return switch (value) {
+      case "MALE" -> Sex.MALE;
+      case "FEMALE" -> Sex.FEMALE;
+      default -> Sex.valueOf(value);
+    };
+  }
+}
@@ -15,8 +15,6 @@ import org.springframework.stereotype.Repository;
 
 import java.lang.invoke.MethodHandles;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -27,11 +25,16 @@ import java.util.List;
 public class OwnerJdbcDao implements OwnerDao {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private static final String TABLE_NAME = "owner";
-  private static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
-  private static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
-  private static final String SQL_SELECT_SEARCH = "SELECT * FROM " + TABLE_NAME
+  static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
+  static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
+  static final String SQL_SELECT_SEARCH = "SELECT * FROM " + TABLE_NAME
       + " WHERE UPPER(first_name||' '||last_name) like UPPER('%'||COALESCE(?, '')||'%')";
-  private static final String SQL_SELECT_SEARCH_LIMIT_CLAUSE = " LIMIT ?";
+  // the first condition is the start of the range on the (last_name, first_name, id) index,
+  // the second skips the already returned owners
+  static final String SQL_SELECT_SEARCH_AFTER_CLAUSE = " AND last_name >= ?"
+      + " AND (last_name > ? OR first_name > ? OR (first_name = ? AND id > ?))";
+  static final String SQL_SELECT_SEARCH_ORDER_CLAUSE = " ORDER BY last_name, first_name, id";
+  static final String SQL_SELECT_SEARCH_LIMIT_CLAUSE = " LIMIT ?";
   private static final String SQL_CREATE = "INSERT INTO " + TABLE_NAME + " (first_name, last_name, email) VALUES (?, ?, ?)";
 
   private final JdbcTemplate jdbcTemplate;
@@ -46,7 +49,7 @@ public class OwnerJdbcDao implements OwnerDao {
   public Owner getById(long id) throws NotFoundException {
     LOG.trace("getById({})", id);
 
-    List<Owner> owners = jdbcTemplate.query(SQL_SELECT_BY_ID, this::mapRow, id);
+    List<Owner> owners = jdbcTemplate.query(SQL_SELECT_BY_ID, new OwnerRowMapper(), id);
 
     if (owners.isEmpty()) {
       throw new NotFoundException("Owner with ID %d not found".formatted(id));
@@ -90,7 +93,7 @@ public class OwnerJdbcDao implements OwnerDao {
     LOG.trace("getAllById({})", ids);
 
     var statementParams = Collections.singletonMap("ids", ids);
-    return jdbcNamed.query(SQL_SELECT_ALL, statementParams, this::mapRow);
+    return jdbcNamed.query(SQL_SELECT_ALL, statementParams, new OwnerRowMapper());
   }
 
   @Override
@@ -101,22 +104,21 @@ public class OwnerJdbcDao implements OwnerDao {
     var params = new ArrayList<>();
     params.add(searchParameters.name());
 
+    var after = searchParameters.after();
+    if (after != null) {
+      var lastName = after.key().get(0);
+      var firstName = after.key().get(1);
+      query += SQL_SELECT_SEARCH_AFTER_CLAUSE;
+      params.addAll(List.of(lastName, lastName, firstName, firstName, after.id()));
+    }
+    query += SQL_SELECT_SEARCH_ORDER_CLAUSE;
+
     var maxAmount = searchParameters.maxAmount();
     if (maxAmount != null) {
       query += SQL_SELECT_SEARCH_LIMIT_CLAUSE;
       params.add(maxAmount);
     }
 
-    return jdbcTemplate.query(query, this::mapRow, params.toArray());
-  }
-
-  private Owner mapRow(ResultSet resultSet, int i) throws SQLException {
-    LOG.trace("mapRow({}, {})", resultSet, i);
-
-    return new Owner()
-        .setId(resultSet.getLong("id"))
-        .setFirstName(resultSet.getString("first_name"))
-        .setLastName(resultSet.getString("last_name"))
-        .setEmail(resultSet.getString("email"));
+    return jdbcTemplate.query(query, new OwnerRowMapper(), params.toArray());
   }
 }
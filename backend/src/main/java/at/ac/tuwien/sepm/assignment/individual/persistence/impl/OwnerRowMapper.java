@@ -0,0 +1,33 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps rows with all columns of the owner table to {@link Owner} entities.
+ */
+public final class OwnerRowMapper extends IndexedRowMapper<Owner> {
+  private int id;
+  private int firstName;
+  private int lastName;
+  private int email;
+
+  @Override
+  protected void resolveColumns(ResultSet result) throws SQLException {
+    id = result.findColumn("id");
+    firstName = result.findColumn("first_name");
+    lastName = result.findColumn("last_name");
+    email = result.findColumn("email");
+  }
+
+  @Override
+  protected Owner map(ResultSet result) throws SQLException {
+    return new Owner()
+        .setId(result.getLong(id))
+        .setFirstName(result.getString(firstName))
+        .setLastName(result.getString(lastName))
+        .setEmail(result.getString(email));
+  }
+}
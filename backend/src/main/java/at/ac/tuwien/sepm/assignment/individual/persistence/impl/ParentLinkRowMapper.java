@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.Parent;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.ParentLink;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Maps the rows of {@link HorseImportJdbcDao#SQL_SELECT_PARENT_LINKS}, imported horses with their parents, to {@link ParentLink}s.
+ */
+final class ParentLinkRowMapper extends IndexedRowMapper<ParentLink> {
+  private int line;
+  private int horseId;
+  private int dateOfBirth;
+  private final ParentColumns mother = new ParentColumns();
+  private final ParentColumns father = new ParentColumns();
+
+  @Override
+  protected void resolveColumns(ResultSet result) throws SQLException {
+    line = result.findColumn("line");
+    horseId = result.findColumn("horse_id");
+    dateOfBirth = result.findColumn("date_of_birth");
+    mother.resolve(result, "mother");
+    father.resolve(result, "father");
+  }
+
+  @Override
+  protected ParentLink map(ResultSet result) throws SQLException {
+    return new ParentLink(
+        result.getLong(line),
+        result.getLong(horseId),
+        result.getObject(dateOfBirth, LocalDate.class),
+        mother.map(result),
+        father.map(result));
+  }
+
+  // the columns of one parent, named by the prefix of the parent
+  private static final class ParentColumns {
+    private int ref;
+    private int id;
+    private int sex;
+    private int dateOfBirth;
+
+    private void resolve(ResultSet result, String prefix) throws SQLException {
+      ref = result.findColumn(prefix + "_ref");
+      id = result.findColumn(prefix + "_id");
+      sex = result.findColumn(prefix + "_sex");
+      dateOfBirth = result.findColumn(prefix + "_date_of_birth");
+    }
+
+    private Parent map(ResultSet result) throws SQLException {
+      return new Parent(
+          result.getString(ref),
+          getLongOrNull(result, id),
+          toSex(result.getString(sex)),
+          result.getObject(dateOfBirth, LocalDate.class));
+    }
+  }
+}
@@ -4,31 +4,49 @@ import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseBody;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Reports validation errors and conflicts as JSON.
+ * The content type is set explicitly, so the errors also reach clients of streaming endpoints,
+ * which only accept e.g. newline delimited JSON.
+ * Requests rejected by a full {@link at.ac.tuwien.sepm.assignment.individual.config.Bulkhead} are answered with 503,
+ * so clients retry them later.
+ */
 @RestControllerAdvice
 public class ApplicationExceptionHandler {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String RETRY_AFTER_SECONDS = "1";
 
   @ExceptionHandler
-  @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
-  @ResponseBody
-  public ValidationOrConflictErrorRestDto handleValidationException(ValidationException e) {
+  public ResponseEntity<ValidationOrConflictErrorRestDto> handleValidationException(ValidationException e) {
     LOG.warn("Terminating request processing with status 422 due to {}: {}", e.getClass().getSimpleName(), e.getMessage());
-    return new ValidationOrConflictErrorRestDto(e.summary(), e.errors());
+    return errorResponse(HttpStatus.UNPROCESSABLE_ENTITY, new ValidationOrConflictErrorRestDto(e.summary(), e.errors()));
   }
 
   @ExceptionHandler
-  @ResponseStatus(HttpStatus.CONFLICT)
-  @ResponseBody
-  public ValidationOrConflictErrorRestDto handleConflictException(ConflictException e) {
+  public ResponseEntity<ValidationOrConflictErrorRestDto> handleConflictException(ConflictException e) {
     LOG.warn("Terminating request processing with status 409 due to {}: {}", e.getClass().getSimpleName(), e.getMessage());
-    return new ValidationOrConflictErrorRestDto(e.summary(), e.errors());
+    return errorResponse(HttpStatus.CONFLICT, new ValidationOrConflictErrorRestDto(e.summary(), e.errors()));
+  }
+
+  @ExceptionHandler
+  public ResponseEntity<Void> handleRejectedExecutionException(RejectedExecutionException e) {
+    LOG.warn("Terminating request processing with status 503 due to {}: {}", e.getClass().getSimpleName(), e.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+        .build();
+  }
+
+  private static ResponseEntity<ValidationOrConflictErrorRestDto> errorResponse(HttpStatus status, ValidationOrConflictErrorRestDto body) {
+    return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
   }
 }
@@ -0,0 +1,82 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Helpers for conditional requests on resources, whose state is identified by a version stamp of the service.
+ * The ETag of a resource is a hash of its stamp, so a client, that sends it back in {@code If-None-Match},
+ * is answered with {@code 304 Not Modified} after the cheap version lookup, without building the resource at all.
+ * <p>
+ * As JSON, CBOR and Smile representations of a resource differ, the {@code Accept} header of the request is part of the hash.
+ * The ETag is strong, unless the client accepts gzip: Tomcat does not compress responses with strong ETags,
+ * as the compressed bytes would then carry the ETag of the uncompressed ones.
+ * </p>
+ */
+public final class ETags {
+  private static final String ANY = "*";
+  private static final String WEAK_PREFIX = "W/";
+  private static final String GZIP = "gzip";
+
+  private ETags() {
+  }
+
+  /**
+   * Creates the ETag for a version stamp, in the representation requested.
+   *
+   * @param versionStamp   the version stamp of the resource
+   * @param requestHeaders the headers of the request
+   * @return the quoted ETag, weak if the response may be compressed
+   */
+  static String of(String versionStamp, HttpHeaders requestHeaders) {
+    String representation = versionStamp + '|' + String.join(",", requestHeaders.getOrEmpty(HttpHeaders.ACCEPT));
+    String etag = '"' + DigestUtils.md5DigestAsHex(representation.getBytes(StandardCharsets.UTF_8)) + '"';
+    return acceptsGzip(requestHeaders) ? WEAK_PREFIX + etag : etag;
+  }
+
+  /**
+   * Answers a GET request conditionally.
+   * The body is only built, if none of the ETags in the {@code If-None-Match} header of the request matches the current one.
+   * As defined for {@code If-None-Match}, the ETags are compared weakly.
+   *
+   * @param requestHeaders the headers of the request
+   * @param versionStamp   the current version stamp of the resource
+   * @param body           builds the body of the resource
+   * @return {@code 304} without a body, if the client has the current version already, otherwise {@code 200} with the body
+   * @throws E the exception thrown by {@code body}
+   */
+  static <T, E extends Exception> ResponseEntity<T> conditional(HttpHeaders requestHeaders, String versionStamp, Body<T, E> body) throws E {
+    String etag = of(versionStamp, requestHeaders);
+    for (String candidate : requestHeaders.getIfNoneMatch()) {
+      if (candidate.equals(ANY) || stripWeak(candidate).equals(stripWeak(etag))) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).varyBy(HttpHeaders.ACCEPT).build();
+      }
+    }
+    return ResponseEntity.ok().eTag(etag).varyBy(HttpHeaders.ACCEPT).body(body.build());
+  }
+
+  private static String stripWeak(String etag) {
+    return etag.startsWith(WEAK_PREFIX) ? etag.substring(WEAK_PREFIX.length()) : etag;
+  }
+
+  private static boolean acceptsGzip(HttpHeaders requestHeaders) {
+    return requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING).stream()
+        .anyMatch(encoding -> encoding.toLowerCase(Locale.ROOT).contains(GZIP));
+  }
+
+  /**
+   * Builds the body of a resource.
+   *
+   * @param <T> the type of the body
+   * @param <E> the exception thrown, if the body cannot be built
+   */
+  @FunctionalInterface
+  interface Body<T, E extends Exception> {
+    T build() throws E;
+  }
+}
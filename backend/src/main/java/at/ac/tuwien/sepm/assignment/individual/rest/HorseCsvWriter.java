@@ -0,0 +1,67 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes exported horses as RFC 4180 CSV, one record per horse.
+ * Fields are written straight to the underlying writer, so no line is built in memory.
+ */
+final class HorseCsvWriter {
+  static final String HEADER = "id,name,description,date_of_birth,sex,owner_id,owner_first_name,owner_last_name,owner_email,mother_id,father_id";
+
+  private final Writer out;
+
+  HorseCsvWriter(Writer out) {
+    this.out = out;
+  }
+
+  void writeHeader() throws IOException {
+    out.write(HEADER);
+    out.write("\r\n");
+  }
+
+  void write(HorseExportDto horse) throws IOException {
+    out.write(Long.toString(horse.id()));
+    field(horse.name());
+    field(horse.description());
+    field(horse.dateOfBirth() == null ? null : horse.dateOfBirth().toString());
+    field(horse.sex() == null ? null : horse.sex().name());
+    var owner = horse.owner();
+    field(owner == null ? null : Long.toString(owner.id()));
+    field(owner == null ? null : owner.firstName());
+    field(owner == null ? null : owner.lastName());
+    field(owner == null ? null : owner.email());
+    field(horse.motherId() == null ? null : horse.motherId().toString());
+    field(horse.fatherId() == null ? null : horse.fatherId().toString());
+    out.write("\r\n");
+  }
+
+  // null is written as an empty field, fields with separators, quotes or line breaks are quoted
+  private void field(String value) throws IOException {
+    out.write(',');
+    if (value == null) {
+      return;
+    }
+    boolean quote = false;
+    for (int i = 0; i < value.length() && !quote; i++) {
+      char c = value.charAt(i);
+      quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        out.write('"');
+      }
+      out.write(c);
+    }
+    out.write('"');
+  }
+}
@@ -1,7 +1,14 @@
 package at.ac.tuwien.sepm.assignment.individual.rest;
 
+import at.ac.tuwien.sepm.assignment.individual.config.Bulkhead;
+import at.ac.tuwien.sepm.assignment.individual.dto.ContinuationToken;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchResultDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantsTruncatedDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
@@ -10,48 +17,154 @@ import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping(path = HorseEndpoint.BASE_PATH)
 public class HorseEndpoint {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   static final String BASE_PATH = "/horses";
+  private static final MediaType TEXT_CSV = MediaType.parseMediaType(HorseImportEndpoint.TEXT_CSV_VALUE);
+  private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+  // an asynchronous request without a timeout, by the servlet specification
+  private static final long NO_TIMEOUT = -1L;
   private final HorseService service;
+  private final ObjectMapper objectMapper;
+  private final Bulkhead familyTreeBulkhead;
+  private final Bulkhead searchBulkhead;
+  private final Bulkhead exportBulkhead;
 
-  public HorseEndpoint(HorseService service) {
+  public HorseEndpoint(HorseService service, ObjectMapper objectMapper,
+                       @Qualifier("familyTreeBulkhead") Bulkhead familyTreeBulkhead,
+                       @Qualifier("searchBulkhead") Bulkhead searchBulkhead,
+                       @Qualifier("exportBulkhead") Bulkhead exportBulkhead) {
     this.service = service;
+    this.objectMapper = objectMapper;
+    this.familyTreeBulkhead = familyTreeBulkhead;
+    this.searchBulkhead = searchBulkhead;
+    this.exportBulkhead = exportBulkhead;
   }
 
+  /**
+   * Searches for horses in the search bulkhead, see {@link Bulkhead}.
+   */
   @GetMapping
-  public Stream<HorseListDto> searchHorses(HorseSearchDto searchParameters) {
+  public CompletableFuture<ResponseEntity<List<HorseListDto>>> searchHorses(HorseSearchDto searchParameters) {
     LOG.info("GET " + BASE_PATH);
     LOG.debug("request parameters: {}", searchParameters);
 
-    return service.search(searchParameters);
+    Paging.checkToken(searchParameters.after(), 1);
+    return searchBulkhead.submitCompletable(() -> Paging.page(service.search(searchParameters).toList(), searchParameters.limit(),
+        horse -> ContinuationToken.after(horse.id(), horse.name())));
   }
 
+  /**
+   * Streams all matching horses as newline delimited JSON, one horse per line, in the search bulkhead.
+   * Horses are read through a database cursor and written as soon as they are mapped,
+   * so the memory needed does not grow with the number of matches.
+   */
+  @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public WebAsyncTask<Void> streamHorses(HorseSearchDto searchParameters, HttpServletResponse response) {
+    LOG.info("GET " + BASE_PATH + " as " + MediaType.APPLICATION_NDJSON_VALUE);
+    LOG.debug("request parameters: {}", searchParameters);
+
+    Paging.checkToken(searchParameters.after(), 1);
+    // flushing is left to the generator, which writes whenever its buffer is full
+    var writer = objectMapper.writerFor(HorseListDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    return stream(searchBulkhead, response, out -> {
+      try (var horses = service.streamSearch(searchParameters);
+           var generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+        var iterator = horses.iterator();
+        while (iterator.hasNext()) {
+          writer.writeValue(generator, iterator.next());
+          generator.writeRaw('\n');
+        }
+      }
+    });
+  }
+
+  /**
+   * Exports all horses with their owners, as CSV or, if the client accepts it rather, as newline delimited JSON, in the export bulkhead.
+   * Horses are written straight from a database cursor to the response, so the memory needed does not grow with the registry.
+   * The response is compressed by gzip, if the client accepts it or asks for it by {@code gzip=true}.
+   */
+  @GetMapping(path = "export", produces = {HorseImportEndpoint.TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public WebAsyncTask<Void> export(@RequestHeader HttpHeaders headers, @RequestParam(defaultValue = "false") boolean gzip,
+                                   HttpServletResponse response) {
+    LOG.info("GET " + BASE_PATH + "/export");
+
+    boolean ndjson = prefersNdjson(headers.getAccept());
+    final boolean compress = gzip || acceptsGzip(headers.get(HttpHeaders.ACCEPT_ENCODING));
+    response.setContentType(ndjson ? MediaType.APPLICATION_NDJSON_VALUE : HorseImportEndpoint.TEXT_CSV_VALUE);
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(ndjson ? "horses.ndjson" : "horses.csv").build().toString());
+    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (compress) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    return stream(exportBulkhead, response, out -> {
+      OutputStream target = compress ? new GZIPOutputStream(out, EXPORT_BUFFER_SIZE) : out;
+      try (var horses = service.streamExport()) {
+        if (ndjson) {
+          writeNdjson(horses, HorseExportDto.class, target);
+        } else {
+          writeCsv(horses, target);
+        }
+      }
+      if (target instanceof GZIPOutputStream compressed) {
+        compressed.finish();
+      }
+    });
+  }
+
+  /**
+   * Gets the details of a horse, with an ETag, see {@link ETags}.
+   * If the client passes the current ETag in {@code If-None-Match}, only the version is looked up and {@code 304} returned.
+   */
   @GetMapping("{id}")
-  public HorseDetailDto getById(@PathVariable long id) {
+  public ResponseEntity<HorseDetailDto> getById(@PathVariable long id, @RequestHeader HttpHeaders headers) {
     LOG.info("GET " + BASE_PATH + "/{}", id);
 
     try {
-      return service.getById(id);
+      return ETags.conditional(headers, service.getVersion(id), () -> service.getById(id));
     } catch (NotFoundException e) {
       HttpStatus status = HttpStatus.NOT_FOUND;
       logClientError(status, "Horse to get details of not found", e);
@@ -59,23 +172,60 @@ public class HorseEndpoint {
     }
   }
 
+  /**
+   * Gets the family-tree of a horse in the family-tree bulkhead, see {@link Bulkhead}, with an ETag, see {@link ETags}.
+   * If the client passes the current ETag in {@code If-None-Match}, only the versions of the horses in the tree are aggregated
+   * and {@code 304} returned, instead of building the tree.
+   */
   @GetMapping("{id}/familytree")
-  public HorseTreeDto getFamilyTree(@PathVariable long id, HorseTreeParamsDto searchDto) throws ValidationException {
+  public CompletableFuture<ResponseEntity<HorseTreeDto>> getFamilyTree(@PathVariable long id, HorseTreeParamsDto searchDto,
+                                                                      @RequestHeader HttpHeaders headers) {
     LOG.info("GET " + BASE_PATH + "/{}/generations", id);
     LOG.debug("query-params: {}", searchDto);
 
-    int numberOfGenerations = 3;  // default number of generations
-    if (searchDto.numberOfGenerations() != null) {
-      numberOfGenerations = searchDto.numberOfGenerations();
-    }
+    // 3 generations by default
+    int numberOfGenerations = searchDto.numberOfGenerations() != null ? searchDto.numberOfGenerations() : 3;
+    return familyTreeBulkhead.submitCompletable(() -> {
+      try {
+        return ETags.conditional(headers, service.getGenerationsAsTreeVersion(id, numberOfGenerations),
+            () -> service.getGenerationsAsTree(id, numberOfGenerations));
+      } catch (NotFoundException e) {
+        HttpStatus status = HttpStatus.NOT_FOUND;
+        logClientError(status, "Horse to get family-tree of not found", e);
+        throw new ResponseStatusException(status, e.getMessage(), e);
+      }
+    });
+  }
 
+  /**
+   * Streams the descendants of a horse as newline delimited JSON, generation by generation, in the family-tree bulkhead.
+   * Each descendant carries the IDs of its parents, so clients can build the tree from the flat list.
+   * If the descendants are cut off after the configured maximum, a last line of a {@link HorseDescendantsTruncatedDto} follows them,
+   * as the status and headers are sent long before the cut off is known.
+   */
+  @GetMapping(path = "{id}/descendants", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public WebAsyncTask<Void> getDescendants(@PathVariable long id, @RequestParam(defaultValue = "3") int generations,
+                                           HttpServletResponse response) throws ValidationException {
+    LOG.info("GET " + BASE_PATH + "/{}/descendants", id);
+    LOG.debug("generations: {}", generations);
+
+    var truncation = new AtomicReference<HorseDescendantsTruncatedDto>();
+    Stream<HorseDescendantDto> descendants;
     try {
-      return service.getGenerationsAsTree(id, numberOfGenerations);
+      descendants = service.streamDescendants(id, generations, max -> truncation.set(new HorseDescendantsTruncatedDto(true, max)));
     } catch (NotFoundException e) {
       HttpStatus status = HttpStatus.NOT_FOUND;
-      logClientError(status, "Horse to get family-tree of not found", e);
+      logClientError(status, "Horse to get descendants of not found", e);
       throw new ResponseStatusException(status, e.getMessage(), e);
     }
+    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    return stream(familyTreeBulkhead, response, out -> {
+      writeNdjson(descendants, HorseDescendantDto.class, out);
+      if (truncation.get() != null) {
+        LOG.debug("descendants of {} cut off after {}", id, truncation.get().maxDescendants());
+        writeNdjson(Stream.of(truncation.get()), HorseDescendantsTruncatedDto.class, out);
+      }
+    });
   }
 
   @PutMapping("{id}")
@@ -101,6 +251,15 @@ public class HorseEndpoint {
     return service.create(toCreate);
   }
 
+  @PostMapping("batch")
+  @ResponseStatus(HttpStatus.CREATED)
+  public List<HorseBatchResultDto> createBatch(@RequestBody List<HorseBatchItemDto> toCreate) throws ValidationException, ConflictException {
+    LOG.info("POST " + BASE_PATH + "/batch");
+    LOG.debug("Body of request: {} horses", toCreate.size());
+
+    return service.createBatch(toCreate);
+  }
+
   @DeleteMapping("{id}")
   @ResponseStatus(code = HttpStatus.NO_CONTENT, reason = "NO_CONTENT")
   public void delete(@PathVariable long id) {
@@ -115,6 +274,77 @@ public class HorseEndpoint {
     }
   }
 
+  /**
+   * Writes {@code body} to {@code response} in {@code bulkhead}.
+   * The body is written to the response directly, so it is not handed over to the executor of Spring MVC,
+   * and only started after the request has been put into asynchronous mode.
+   * The stream gets the timeout of the bulkhead, instead of the one of the asynchronous requests, which is made for JSON responses,
+   * and would cut off long exports and streams halfway.
+   */
+  private static WebAsyncTask<Void> stream(Bulkhead bulkhead, HttpServletResponse response, StreamingResponseBody body) {
+    long timeout = bulkhead.getStreamTimeout().isZero() ? NO_TIMEOUT : bulkhead.getStreamTimeout().toMillis();
+    return new WebAsyncTask<>(timeout, bulkhead, () -> {
+      body.writeTo(response.getOutputStream());
+      response.flushBuffer();
+      return null;
+    });
+  }
+
+  // the first acceptable type decides, wildcards fall back to CSV
+  private static boolean prefersNdjson(List<MediaType> accepted) {
+    for (MediaType type : accepted) {
+      if (type.getQualityValue() == 0) {
+        continue;
+      }
+      if (type.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON)) {
+        return true;
+      }
+      if (type.includes(TEXT_CSV)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private static boolean acceptsGzip(List<String> acceptEncodings) {
+    if (acceptEncodings == null) {
+      return false;
+    }
+    for (String header : acceptEncodings) {
+      for (String coding : header.split(",")) {
+        String[] parts = coding.split(";");
+        String name = parts[0].trim();
+        boolean refused = parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+        if (!refused && (name.equalsIgnoreCase("gzip") || name.equals("*"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void writeCsv(Stream<HorseExportDto> horses, OutputStream out) throws IOException {
+    var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+    var csv = new HorseCsvWriter(writer);
+    csv.writeHeader();
+    var iterator = horses.iterator();
+    while (iterator.hasNext()) {
+      csv.write(iterator.next());
+    }
+    writer.flush();
+  }
+
+  private <T> void writeNdjson(Stream<T> items, Class<T> type, OutputStream out) throws IOException {
+    var writer = objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    try (var generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      var iterator = items.iterator();
+      while (iterator.hasNext()) {
+        writer.writeValue(generator, iterator.next());
+        generator.writeRaw('\n');
+      }
+    }
+  }
+
   private void logClientError(HttpStatus status, String message, Exception e) {
     LOG.warn("{} {}: {}: {}", status.value(), message, e.getClass().getSimpleName(), e.getMessage());
   }
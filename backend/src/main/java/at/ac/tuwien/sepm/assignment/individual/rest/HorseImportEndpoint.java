@@ -0,0 +1,89 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.service.HorseImportService;
+import at.ac.tuwien.sepm.assignment.individual.type.ImportFormat;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.List;
+
+@RestController
+@RequestMapping(path = HorseImportEndpoint.BASE_PATH)
+public class HorseImportEndpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String BASE_PATH = "/horses/imports";
+  static final String TEXT_CSV_VALUE = "text/csv";
+  private final HorseImportService service;
+
+  public HorseImportEndpoint(HorseImportService service) {
+    this.service = service;
+  }
+
+  /**
+   * Imports the horses of a CSV file.
+   * The body is read while it is uploaded, so the file is never held in memory as a whole.
+   * Running imports can be followed with {@link #getAll()}.
+   */
+  @PostMapping(consumes = TEXT_CSV_VALUE)
+  public ResponseEntity<HorseImportDto> importCsv(HttpServletRequest request) throws ValidationException, IOException {
+    LOG.info("POST " + BASE_PATH + " as " + TEXT_CSV_VALUE);
+
+    return created(service.importHorses(request.getReader(), ImportFormat.CSV));
+  }
+
+  /**
+   * Imports the horses of a newline delimited JSON file, one horse like in {@code POST /horses/batch} per line.
+   * The body is read while it is uploaded, so the file is never held in memory as a whole.
+   * Running imports can be followed with {@link #getAll()}.
+   */
+  @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<HorseImportDto> importNdjson(HttpServletRequest request) throws ValidationException, IOException {
+    LOG.info("POST " + BASE_PATH + " as " + MediaType.APPLICATION_NDJSON_VALUE);
+
+    return created(service.importHorses(request.getReader(), ImportFormat.NDJSON));
+  }
+
+  @GetMapping
+  public List<HorseImportDto> getAll() {
+    LOG.info("GET " + BASE_PATH);
+
+    return service.getAll();
+  }
+
+  @GetMapping("{id}")
+  public HorseImportDto getById(@PathVariable long id) {
+    LOG.info("GET " + BASE_PATH + "/{}", id);
+
+    try {
+      return service.getById(id);
+    } catch (NotFoundException e) {
+      HttpStatus status = HttpStatus.NOT_FOUND;
+      logClientError(status, "Import to get not found", e);
+      throw new ResponseStatusException(status, e.getMessage(), e);
+    }
+  }
+
+  private ResponseEntity<HorseImportDto> created(HorseImportDto result) {
+    return ResponseEntity.created(URI.create(BASE_PATH + "/" + result.id())).body(result);
+  }
+
+  private void logClientError(HttpStatus status, String message, Exception e) {
+    LOG.warn("{} {}: {}: {}", status.value(), message, e.getClass().getSimpleName(), e.getMessage());
+  }
+}
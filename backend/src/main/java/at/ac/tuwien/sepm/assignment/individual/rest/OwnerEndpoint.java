@@ -1,5 +1,6 @@
 package at.ac.tuwien.sepm.assignment.individual.rest;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.ContinuationToken;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
@@ -8,6 +9,7 @@ import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.service.OwnerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -15,7 +17,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.lang.invoke.MethodHandles;
-import java.util.stream.Stream;
+import java.util.List;
 
 @RestController
 @RequestMapping(OwnerEndpoint.BASE_PATH)
@@ -29,11 +31,13 @@ public class OwnerEndpoint {
   }
 
   @GetMapping
-  public Stream<OwnerDto> search(OwnerSearchDto searchParameters) {
+  public ResponseEntity<List<OwnerDto>> search(OwnerSearchDto searchParameters) {
     LOG.info("GET " + BASE_PATH);
     LOG.debug("query parameters: {}", searchParameters);
 
-    return service.search(searchParameters);
+    Paging.checkToken(searchParameters.after(), 2);
+    return Paging.page(service.search(searchParameters).toList(), searchParameters.maxAmount(),
+        owner -> ContinuationToken.after(owner.id(), owner.lastName(), owner.firstName()));
   }
 
   @PostMapping
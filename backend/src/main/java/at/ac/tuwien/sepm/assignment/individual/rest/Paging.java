@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.ContinuationToken;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Helpers for the keyset pagination of search endpoints.
+ * The body of a page is the plain list of results, the token to fetch the next page is returned
+ * in the {@value #CONTINUATION_TOKEN_HEADER} header and passed back as {@code after} request parameter.
+ */
+public final class Paging {
+  public static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+
+  private Paging() {
+  }
+
+  /**
+   * Rejects tokens, that were not issued for a search with {@code keys} sort columns (e.g. an owner token for a horse search).
+   *
+   * @param after the token passed by the client, may be null
+   * @param keys  the number of sort columns of the search
+   */
+  static void checkToken(ContinuationToken after, int keys) {
+    if (after != null && after.key().size() != keys) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Continuation token does not belong to this search");
+    }
+  }
+
+  /**
+   * Wraps a page of results.
+   * A continuation token is only added, if the page is full, as otherwise there is nothing more to fetch.
+   *
+   * @param page    the results of the page, in sort order
+   * @param limit   the requested page size, null if all results were requested
+   * @param tokenOf creates the token pointing behind a result
+   * @return the response for the page
+   */
+  static <T> ResponseEntity<List<T>> page(List<T> page, Integer limit, Function<T, ContinuationToken> tokenOf) {
+    var response = ResponseEntity.ok();
+    if (limit != null && !page.isEmpty() && page.size() >= limit) {
+      response.header(CONTINUATION_TOKEN_HEADER, tokenOf.apply(page.get(page.size() - 1)).encode());
+    }
+    return response.body(page);
+  }
+}
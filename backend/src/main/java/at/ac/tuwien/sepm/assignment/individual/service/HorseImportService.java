@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.service;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.type.ImportFormat;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Service for importing large files of horses.
+ */
+public interface HorseImportService {
+
+  /**
+   * Imports the horses in {@code file} into the persistent data store.
+   * <p>
+   * The file is read as a stream and the horses are validated and created in batches, so it can be of any size.
+   * Each line (or CSV record) is one horse, in the format of a {@link at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto}.
+   * Parents can be stored horses or other horses of the file, given by reference, in any order.
+   * Invalid lines are skipped and reported, the others are imported. The progress can be queried by {@link #getAll()}
+   * and {@link #getById(long)} while the import is running.
+   * </p>
+   *
+   * @param file   the file to import
+   * @param format the format of the file
+   * @return the final state of the import
+   * @throws ValidationException if the file cannot be imported at all, e.g. because of an unknown CSV column
+   * @throws IOException         if reading the file fails
+   */
+  HorseImportDto importHorses(Reader file, ImportFormat format) throws ValidationException, IOException;
+
+  /**
+   * Gets the running and the most recent finished imports.
+   *
+   * @return the imports, the most recent first
+   */
+  List<HorseImportDto> getAll();
+
+  /**
+   * Gets the current state of a running or recently finished import.
+   *
+   * @param id the ID of the import
+   * @return the state of the import
+   * @throws NotFoundException if there is no such import, or it was finished a long time ago
+   */
+  HorseImportDto getById(long id) throws NotFoundException;
+}
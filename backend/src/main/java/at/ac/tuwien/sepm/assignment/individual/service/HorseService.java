@@ -1,7 +1,11 @@
 package at.ac.tuwien.sepm.assignment.individual.service;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchResultDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
@@ -9,6 +13,9 @@ import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
 import java.util.stream.Stream;
 
 /**
@@ -22,6 +29,8 @@ public interface HorseService {
    * A horses is considered matched, if any properties match properties from {@code searchParameters}
    * The returned stream of horses never contains more than {@code searchParameters.limit} elements,
    * even if there would be more matches in the persistent data store.
+   * Horses are sorted by name and ID. If {@code searchParameters.after} is given,
+   * only horses sorted after this position are returned.
    * </p>
    *
    * @param searchParameters object containing the search parameters to match
@@ -29,6 +38,31 @@ public interface HorseService {
    */
   Stream<HorseListDto> search(HorseSearchDto searchParameters);
 
+  /**
+   * Search for horses matching the criteria in {@code searchParameters}, like {@link #search(HorseSearchDto)},
+   * but read and map the matches lazily, so only a small part of the result is held in memory at any time.
+   * <p>
+   * The returned stream holds a database connection until it is closed,
+   * so it has to be closed after use, e.g. by a try-with-resources statement.
+   * </p>
+   *
+   * @param searchParameters object containing the search parameters to match
+   * @return a lazy stream of the horses matching the criteria in {@code searchParameters}
+   */
+  Stream<HorseListDto> streamSearch(HorseSearchDto searchParameters);
+
+  /**
+   * Read all horses with their owners, ordered by ID, for an export of the whole registry.
+   * Horses are read lazily, so the memory needed does not depend on the number of horses.
+   * <p>
+   * The returned stream holds a database connection until it is closed,
+   * so it has to be closed after use, e.g. by a try-with-resources statement.
+   * </p>
+   *
+   * @return a lazy stream of all horses
+   */
+  Stream<HorseExportDto> streamExport();
+
   /**
    * Get the horse with given ID, with more detail information.
    * This includes the owner of the horse, and its parents.
@@ -40,15 +74,29 @@ public interface HorseService {
    */
   HorseDetailDto getById(long id) throws NotFoundException;
 
+  /**
+   * Gets the current version of the details {@link #getById(long)} returns for the horse with the given ID,
+   * without loading them.
+   * The version changes whenever the horse, its parents or its owner change.
+   *
+   * @param id the ID of the horse to get the version of
+   * @return an opaque version of the horse's details
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   */
+  String getVersion(long id) throws NotFoundException;
+
   /**
    * Updates the horse with the ID given in {@code horse}
    * with the data given in {@code horse} in the persistent data store.
+   * If {@code horse} has a version, the update is only applied, if the horse still has this version.
+   * Concurrent changes between validation and update are detected without locking, the update is then validated again.
    *
    * @param horse the horse to update
    * @return the updated horse
    * @throws NotFoundException   if the horse with given ID does not exist in the persistent data store
    * @throws ValidationException if the update data given for the horse is in itself incorrect (description too long, no name, …)
-   * @throws ConflictException   if the update data given for the horse is in conflict the data currently in the system (owner does not exist, …)
+   * @throws ConflictException   if the update data given for the horse is in conflict the data currently in the system (owner does not exist, …),
+   *                             or the horse was changed since the version given in {@code horse}
    */
   HorseDetailDto update(HorseDetailDto horse) throws NotFoundException, ValidationException, ConflictException;
 
@@ -62,6 +110,17 @@ public interface HorseService {
    */
   HorseDetailDto create(HorseCreateDto newHorse) throws ValidationException, ConflictException;
 
+  /**
+   * Create a batch of new horses in the persistent data store, all or none of them.
+   * The batch is validated as a whole, parents can also be other horses of the batch.
+   *
+   * @param items the data for the new horses
+   * @return the results of the horses, that were just newly created, in the same order as {@code items}
+   * @throws ValidationException if the data given for any new horse is in itself incorrect (no name, unknown reference, …)
+   * @throws ConflictException   if the data given for any new horse is in conflict with the data currently in the system or the batch
+   */
+  List<HorseBatchResultDto> createBatch(List<HorseBatchItemDto> items) throws ValidationException, ConflictException;
+
   /**
    * Deletes the horse with given {@code id}.
    *
@@ -81,4 +140,40 @@ public interface HorseService {
    * @throws ValidationException if the numberOfGenerations is invalid (therefore below 1)
    */
   HorseTreeDto getGenerationsAsTree(long id, int numberOfGenerations) throws NotFoundException, ValidationException;
+
+  /**
+   * Gets the current version of the family tree {@link #getGenerationsAsTree(long, int)} returns for the same arguments,
+   * without building it.
+   * The version changes whenever any horse in the tree changes, or a horse is added to or removed from it.
+   *
+   * @param id                  the ID of the horse to get the version of the family-tree of
+   * @param numberOfGenerations the number of generations of the family-tree
+   * @return an opaque version of the family-tree
+   * @throws NotFoundException   if the horse with the given ID does not exist in the persistent data store
+   * @throws ValidationException if the numberOfGenerations is invalid (therefore below 1)
+   */
+  String getGenerationsAsTreeVersion(long id, int numberOfGenerations) throws NotFoundException, ValidationException;
+
+  /**
+   * Gets the descendants of the given {@code id} down to the specified {@code numberOfGenerations},
+   * generation by generation, children first.
+   * The descendants are read lazily while the stream is consumed, and cut off after the configured maximum number.
+   * If further descendants are cut off, {@code onTruncated} is called with this maximum, after the last descendant has been consumed.
+   *
+   * @param id                  the ID of the horse to get the descendants of
+   * @param numberOfGenerations the number of generations which should be returned, 1 for the children only
+   * @param onTruncated         called with the maximum number of descendants, if the stream has been cut off
+   * @return a lazy stream of the descendants, each horse contained once
+   * @throws NotFoundException   if the horse with the given ID does not exist in the persistent data store
+   * @throws ValidationException if the numberOfGenerations is below 1 or above the configured maximum
+   */
+  Stream<HorseDescendantDto> streamDescendants(long id, int numberOfGenerations, IntConsumer onTruncated) throws NotFoundException, ValidationException;
+
+  /**
+   * Removes the cached details and family-trees, that depend on the given horses,
+   * after the horses were changed without this service, e.g. by an import.
+   *
+   * @param ids the IDs of the changed horses
+   */
+  void evictCached(Collection<Long> ids);
 }
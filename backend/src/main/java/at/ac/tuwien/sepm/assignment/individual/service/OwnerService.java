@@ -39,6 +39,8 @@ public interface OwnerService {
    * A owner is considered matched, if its name contains {@code searchParameters.name} as a substring.
    * The returned stream of owners never contains more than {@code searchParameters.maxAmount} elements,
    * even if there would be more matches in the persistent data store.
+   * Owners are sorted by last name, first name and ID. If {@code searchParameters.after} is given,
+   * only owners sorted after this position are returned.
    * </p>
    *
    * @param searchParameters object containing the search parameters to match
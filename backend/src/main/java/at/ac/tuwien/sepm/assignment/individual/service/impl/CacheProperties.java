@@ -0,0 +1,39 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the in-process caches of the services.
+ * All properties are bound from the {@code caches} prefix.
+ *
+ * @param owners  the cache of owners by their ID, see {@link OwnerServiceImpl}
+ * @param details the cache of horse details by their ID, see {@link HorseServiceImpl}
+ * @param trees   the cache of family-trees by the ID of the horse and the number of generations, see {@link HorseServiceImpl}
+ */
+@ConfigurationProperties("caches")
+public record CacheProperties(
+    @DefaultValue Spec owners,
+    @DefaultValue Spec details,
+    @DefaultValue Spec trees
+) {
+  /**
+   * Configuration of a single cache.
+   *
+   * @param maximumSize the maximum number of entries, before the least valuable ones are evicted
+   */
+  public record Spec(
+      @DefaultValue("10000") long maximumSize
+  ) {
+    /**
+     * Validates the configured values.
+     *
+     * @throws IllegalArgumentException if any of the values is out of range
+     */
+    public Spec {
+      if (maximumSize < 0) {
+        throw new IllegalArgumentException("Invalid cache configuration: maximum size must not be negative");
+      }
+    }
+  }
+}
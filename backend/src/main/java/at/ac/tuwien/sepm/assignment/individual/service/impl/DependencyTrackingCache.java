@@ -0,0 +1,216 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of values, that are assembled from several horses, e.g. a detail DTO with its parents.
+ * <p>
+ * Every cached value records the IDs of the horses it was built from. When a horse changes,
+ * {@link #invalidate(Collection)} removes exactly the values that depend on it, using a reverse map from
+ * horse IDs to cache entries. Values that are loaded while an invalidation happens are not cached,
+ * as they may have been built from the old data.
+ * </p>
+ * <p>
+ * Concurrent misses of the same key share one load, by a {@link SingleFlight} of the same name,
+ * unless an invalidation happened in between, so no value is shared across an invalidation.
+ * </p>
+ * <p>
+ * Hits, misses and evictions are published as {@code cache.*} metrics, the removals caused by changed horses
+ * as {@code cache.invalidations}, all tagged with the cache name.
+ * </p>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the cached values
+ */
+public class DependencyTrackingCache<K, V> {
+  private final Cache<K, Entry<K, V>> cache;
+  private final ConcurrentHashMap<Long, Set<Entry<K, V>>> dependents = new ConcurrentHashMap<>();
+  private final AtomicLong invalidations = new AtomicLong();
+  private final Counter invalidatedEntries;
+  private final SingleFlight<LoadKey<K>, Loaded<V>> loads;
+
+  /**
+   * Creates a cache and registers its metrics.
+   *
+   * @param name          name of the cache, used as tag of the metrics
+   * @param maximumSize   maximum number of entries
+   * @param meterRegistry registry to publish the metrics to
+   */
+  public DependencyTrackingCache(String name, long maximumSize, MeterRegistry meterRegistry) {
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .removalListener((K key, Entry<K, V> entry, RemovalCause cause) -> {
+          if (entry != null) {
+            unregister(entry);
+          }
+        })
+        .executor(Runnable::run)
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+    this.invalidatedEntries = Counter.builder("cache.invalidations")
+        .description("The number of entries removed, because a horse they depend on has changed")
+        .tag("cache", name)
+        .register(meterRegistry);
+    this.loads = new SingleFlight<>(name, meterRegistry);
+  }
+
+  /**
+   * Returns the cached value for {@code key}, loading and caching it if it is not present.
+   *
+   * @param <E>    the exception thrown, if the value cannot be loaded
+   * @param key    the key of the value
+   * @param loader loads the value and the IDs of the horses it depends on
+   * @return the cached or loaded value
+   * @throws E if the loader fails, nothing is cached in this case
+   */
+  public <E extends Exception> V get(K key, Loader<V, E> loader) throws E {
+    var cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return cached.value;
+    }
+
+    long invalidationsBeforeLoad = invalidations.get();
+    var loaded = loads.run(new LoadKey<>(key, invalidationsBeforeLoad), loader::load);
+    put(key, loaded, invalidationsBeforeLoad);
+    return loaded.value();
+  }
+
+  /**
+   * Returns the cached value for {@code key}, without loading it and without counting a hit or miss.
+   * Meant for looking for a value, that the requested one can be derived from.
+   *
+   * @param key the key of the value
+   * @return the cached value, or null if there is none
+   */
+  public V peek(K key) {
+    var cached = cache.asMap().get(key);
+    return cached == null ? null : cached.value;
+  }
+
+  /**
+   * Caches a value, that was loaded without {@link #get(Object, Loader)}.
+   *
+   * @param key                     the key of the value
+   * @param loaded                  the value and the IDs of the horses it depends on
+   * @param invalidationsBeforeLoad the result of {@link #invalidationCount()} before the value was loaded
+   */
+  public void put(K key, Loaded<V> loaded, long invalidationsBeforeLoad) {
+    var entry = new Entry<>(key, loaded.value(), Set.copyOf(loaded.dependencies()));
+    for (Long dependency : entry.dependencies) {
+      dependents.computeIfAbsent(dependency, id -> ConcurrentHashMap.newKeySet()).add(entry);
+    }
+    cache.put(key, entry);
+
+    // an invalidation, that started after the load, may have missed this entry, so it must not stay
+    if (invalidations.get() != invalidationsBeforeLoad) {
+      cache.asMap().remove(key, entry);
+    }
+  }
+
+  /**
+   * Returns the number of invalidations so far, to detect values, that were loaded while the data changed.
+   *
+   * @return the number of calls of {@link #invalidate(Collection)}
+   */
+  public long invalidationCount() {
+    return invalidations.get();
+  }
+
+  /**
+   * Removes all values, that depend on any of the given horses.
+   * If a transaction is active, the values are removed again after it completes,
+   * so values loaded from its uncommitted data do not stay in the cache.
+   *
+   * @param horseIds the IDs of the changed horses
+   */
+  public void invalidate(Collection<Long> horseIds) {
+    invalidateNow(horseIds);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          invalidateNow(horseIds);
+        }
+      });
+    }
+  }
+
+  private void invalidateNow(Collection<Long> horseIds) {
+    invalidations.incrementAndGet();
+    for (Long horseId : horseIds) {
+      var entries = dependents.remove(horseId);
+      if (entries != null) {
+        for (var entry : entries) {
+          if (cache.asMap().remove(entry.key, entry)) {
+            invalidatedEntries.increment();
+          }
+        }
+      }
+    }
+  }
+
+  private void unregister(Entry<K, V> entry) {
+    for (Long dependency : entry.dependencies) {
+      dependents.computeIfPresent(dependency, (id, entries) -> {
+        entries.remove(entry);
+        return entries.isEmpty() ? null : entries;
+      });
+    }
+  }
+
+  /**
+   * A loaded value together with the IDs of the horses it was built from.
+   *
+   * @param <V>          the type of the value
+   * @param value        the value
+   * @param dependencies the IDs of the horses, whose change makes {@code value} stale
+   */
+  public record Loaded<V>(V value, Collection<Long> dependencies) {
+  }
+
+  /**
+   * Loads a value, that is not cached yet.
+   *
+   * @param <V> the type of the value
+   * @param <E> the exception thrown, if the value cannot be loaded
+   */
+  @FunctionalInterface
+  public interface Loader<V, E extends Exception> {
+    /**
+     * Loads the value.
+     *
+     * @return the value and the IDs of the horses it depends on
+     * @throws E if the value cannot be loaded
+     */
+    Loaded<V> load() throws E;
+  }
+
+  private record LoadKey<K>(K key, long invalidationsBeforeLoad) {
+  }
+
+  // compared by identity, so a removed entry never affects a newer entry for the same key
+  private static final class Entry<K, V> {
+    private final K key;
+    private final V value;
+    private final Set<Long> dependencies;
+
+    private Entry(K key, V value, Set<Long> dependencies) {
+      this.key = key;
+      this.value = value;
+      this.dependencies = dependencies;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Walks the descendants of a horse generation by generation, and reads them only while they are consumed.
+ * <p>
+ * The children of a generation are read by one query per {@link DescendantsProperties#batchSize()} parents,
+ * which finds them on the mother and father indexes. Only one such chunk of children is held at a time,
+ * besides the IDs of the horses already seen, so the walk stops after {@link DescendantsProperties#maxDescendants()}.
+ * Horses reachable on several paths, as in inbred pedigrees, are returned once, in the first generation they are found in.
+ * If there are further descendants at that point, the walk reads on until it finds one and then reports the cut off to its listener,
+ * so clients can tell a cut off list from a complete one of exactly the maximum size.
+ * </p>
+ */
+final class DescendantWalk extends Spliterators.AbstractSpliterator<HorseDescendantDto> {
+  private final HorseDao dao;
+  private final int generations;
+  private final int maxDescendants;
+  private final int batchSize;
+  private final IntConsumer onTruncated;
+  private final Set<Long> seen = new HashSet<>();
+  private List<Long> parents;
+  private List<Long> children = new ArrayList<>();
+  private int parentIndex;
+  private int generation = 1;
+  private Iterator<Horse> chunk = Collections.emptyIterator();
+  private boolean limitChecked;
+
+  DescendantWalk(HorseDao dao, long id, int generations, DescendantsProperties properties, IntConsumer onTruncated) {
+    super(properties.maxDescendants(), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    this.dao = dao;
+    this.generations = generations;
+    this.maxDescendants = properties.maxDescendants();
+    this.batchSize = properties.batchSize();
+    this.onTruncated = onTruncated;
+    this.parents = List.of(id);
+    seen.add(id);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super HorseDescendantDto> action) {
+    // the horse itself is counted as seen
+    if (seen.size() > maxDescendants) {
+      if (!limitChecked) {
+        limitChecked = true;
+        if (hasMore()) {
+          onTruncated.accept(maxDescendants);
+        }
+      }
+      return false;
+    }
+    while (true) {
+      while (chunk.hasNext()) {
+        Horse horse = chunk.next();
+        if (seen.add(horse.getId())) {
+          children.add(horse.getId());
+          action.accept(new HorseDescendantDto(horse.getId(), horse.getName(), horse.getDateOfBirth(), horse.getSex(),
+              horse.getMotherId(), horse.getFatherId(), generation));
+          return true;
+        }
+      }
+      if (!nextChunk()) {
+        return false;
+      }
+    }
+  }
+
+  private boolean hasMore() {
+    while (true) {
+      while (chunk.hasNext()) {
+        if (!seen.contains(chunk.next().getId())) {
+          return true;
+        }
+      }
+      if (!nextChunk()) {
+        return false;
+      }
+    }
+  }
+
+  private boolean nextChunk() {
+    if (parentIndex == parents.size()) {
+      if (generation == generations || children.isEmpty()) {
+        return false;
+      }
+      parents = children;
+      children = new ArrayList<>();
+      parentIndex = 0;
+      generation++;
+    }
+    int end = Math.min(parentIndex + batchSize, parents.size());
+    chunk = dao.getChildren(parents.subList(parentIndex, end)).iterator();
+    parentIndex = end;
+    return true;
+  }
+}
@@ -0,0 +1,30 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the walk over the descendants of a horse, see {@link DescendantWalk}.
+ * All properties are bound from the {@code descendants} prefix.
+ *
+ * @param maxGenerations the most generations, that can be requested
+ * @param maxDescendants the most descendants returned for one request, further ones are cut off
+ * @param batchSize      number of parents, whose children are read by one query
+ */
+@ConfigurationProperties("descendants")
+public record DescendantsProperties(
+    @DefaultValue("20") int maxGenerations,
+    @DefaultValue("100000") int maxDescendants,
+    @DefaultValue("1000") int batchSize
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if any of the values is not positive
+   */
+  public DescendantsProperties {
+    if (maxGenerations < 1 || maxDescendants < 1 || batchSize < 1) {
+      throw new IllegalArgumentException("Invalid descendants configuration: all values must be positive");
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of horses to create, with the references between them resolved.
+ * <p>
+ * Horses can only be inserted after their parents, so the batch is split into levels:
+ * horses without parents in the batch are on level 0, every other horse is one level above its highest parent.
+ * Horses, that are their own ancestor within the batch, get no level.
+ * </p>
+ */
+final class HorseBatch {
+  static final int CYCLIC = -1;
+
+  private final List<HorseBatchItemDto> items;
+  private final Map<String, Integer> indexByRef = new HashMap<>();
+  private final int[] levels;
+  private final int levelCount;
+
+  HorseBatch(List<HorseBatchItemDto> items) {
+    this.items = items;
+    for (int i = 0; i < items.size(); i++) {
+      var item = items.get(i);
+      if (item != null && item.ref() != null) {
+        indexByRef.putIfAbsent(item.ref(), i);
+      }
+    }
+    this.levels = computeLevels();
+    this.levelCount = Arrays.stream(levels).max().orElse(CYCLIC) + 1;
+  }
+
+  int size() {
+    return items.size();
+  }
+
+  HorseBatchItemDto item(int index) {
+    return items.get(index);
+  }
+
+  /**
+   * Looks up a horse of the batch by its reference.
+   *
+   * @param ref the reference, may be null
+   * @return the index of the horse, or null if no horse of the batch has this reference
+   */
+  Integer indexOf(String ref) {
+    return ref == null ? null : indexByRef.get(ref);
+  }
+
+  /**
+   * Checks, whether the reference of the horse at {@code index} was already used by an earlier horse of the batch.
+   *
+   * @param index the index of the horse
+   * @return true if the reference is a duplicate
+   */
+  boolean hasDuplicateRef(int index) {
+    var ref = items.get(index).ref();
+    return ref != null && indexByRef.get(ref) != index;
+  }
+
+  int level(int index) {
+    return levels[index];
+  }
+
+  int levelCount() {
+    return levelCount;
+  }
+
+  List<Integer> indicesAt(int level) {
+    List<Integer> indices = new ArrayList<>();
+    for (int i = 0; i < levels.length; i++) {
+      if (levels[i] == level) {
+        indices.add(i);
+      }
+    }
+    return indices;
+  }
+
+  // one pass per level, a pass without progress leaves exactly the horses on or behind a cycle
+  private int[] computeLevels() {
+    int[] result = new int[items.size()];
+    Arrays.fill(result, CYCLIC);
+    boolean progress = true;
+    while (progress) {
+      progress = false;
+      for (int i = 0; i < result.length; i++) {
+        if (result[i] != CYCLIC) {
+          continue;
+        }
+        var item = items.get(i);
+        int motherLevel = item == null ? CYCLIC : parentLevel(result, indexOf(item.motherRef()));
+        int fatherLevel = item == null ? CYCLIC : parentLevel(result, indexOf(item.fatherRef()));
+        if (motherLevel != Integer.MAX_VALUE && fatherLevel != Integer.MAX_VALUE) {
+          result[i] = Math.max(motherLevel, fatherLevel) + 1;
+          progress = true;
+        }
+      }
+    }
+    return result;
+  }
+
+  // CYCLIC if there is no parent in the batch, MAX_VALUE if the level of the parent is not known yet
+  private static int parentLevel(int[] levels, Integer parentIndex) {
+    if (parentIndex == null) {
+      return CYCLIC;
+    }
+    return levels[parentIndex] == CYCLIC ? Integer.MAX_VALUE : levels[parentIndex];
+  }
+}
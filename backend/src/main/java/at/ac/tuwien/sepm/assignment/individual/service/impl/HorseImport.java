@@ -0,0 +1,91 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto.State;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a running import, updated by the threads of the import and read by requests for its state.
+ * Only the first {@code maxErrors} errors are kept, so it stays small no matter how many lines are invalid.
+ */
+final class HorseImport {
+  private final long id;
+  private final int maxErrors;
+  private final Instant startedAt = Instant.now();
+  private final List<String> errors = new ArrayList<>();
+  private State state = State.LOADING;
+  private Instant finishedAt;
+  private long linesRead;
+  private long horsesImported;
+  private long linesRejected;
+  private long linksRejected;
+  private long errorCount;
+
+  HorseImport(long id, int maxErrors) {
+    this.id = id;
+    this.maxErrors = maxErrors;
+  }
+
+  long id() {
+    return id;
+  }
+
+  synchronized boolean isFinished() {
+    return finishedAt != null;
+  }
+
+  synchronized void lineRead() {
+    linesRead++;
+  }
+
+  synchronized void imported(int horses) {
+    horsesImported += horses;
+  }
+
+  synchronized void rejectLine(long line, List<String> lineErrors) {
+    linesRejected++;
+    addErrors(line, lineErrors);
+  }
+
+  synchronized void rejectLinks(long line, List<String> linkErrors) {
+    linksRejected++;
+    addErrors(line, linkErrors);
+  }
+
+  synchronized void warn(long line, String warning) {
+    addErrors(line, List.of(warning));
+  }
+
+  synchronized void linking() {
+    state = State.LINKING;
+  }
+
+  synchronized void complete() {
+    state = State.COMPLETED;
+    finishedAt = Instant.now();
+  }
+
+  synchronized void fail(String reason) {
+    state = State.FAILED;
+    finishedAt = Instant.now();
+    errorCount++;
+    errors.add("Import aborted: " + reason);
+  }
+
+  synchronized HorseImportDto toDto() {
+    return new HorseImportDto(id, state, startedAt, finishedAt, linesRead, horsesImported, linesRejected, linksRejected,
+        errorCount, List.copyOf(errors));
+  }
+
+  private void addErrors(long line, List<String> lineErrors) {
+    for (String error : lineErrors) {
+      errorCount++;
+      if (errors.size() < maxErrors) {
+        errors.add("line %d: %s".formatted(line, error));
+      }
+    }
+  }
+}
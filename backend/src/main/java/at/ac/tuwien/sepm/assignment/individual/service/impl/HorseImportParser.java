@@ -0,0 +1,247 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.type.ImportFormat;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the horses of an import file one at a time, without holding more than the current line in memory.
+ * <p>
+ * NDJSON files contain one {@link HorseBatchItemDto} per line.
+ * CSV files start with a header of the columns, {@code name}, {@code date_of_birth} and {@code sex} are required,
+ * the others ({@code ref}, {@code description}, {@code owner_id}, {@code mother_id}, {@code father_id},
+ * {@code mother_ref} and {@code father_ref}) optional. Fields can be quoted, empty fields are null.
+ * </p>
+ */
+final class HorseImportParser {
+  static final List<String> CSV_COLUMNS = List.of("ref", "name", "description", "date_of_birth", "sex",
+      "owner_id", "mother_id", "father_id", "mother_ref", "father_ref");
+  private static final List<String> CSV_REQUIRED_COLUMNS = List.of("name", "date_of_birth", "sex");
+  // longer lines are rejected instead of read into memory
+  static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private final BufferedReader reader;
+  private final ImportFormat format;
+  private final ObjectReader jsonReader;
+  private final Map<String, Integer> columns = new HashMap<>();
+  private long lineNumber = 1;
+  private boolean lineTooLong;
+
+  /**
+   * Creates a parser and, for CSV files, reads the header.
+   *
+   * @param file       the file to read
+   * @param format     the format of the file
+   * @param jsonReader reads {@link HorseBatchItemDto} from NDJSON lines
+   * @throws ValidationException if the CSV header is missing, or has unknown or missing columns
+   * @throws IOException         if reading the file fails
+   */
+  HorseImportParser(Reader file, ImportFormat format, ObjectReader jsonReader) throws ValidationException, IOException {
+    this.reader = new BufferedReader(file);
+    this.format = format;
+    this.jsonReader = jsonReader;
+    if (format == ImportFormat.CSV) {
+      readHeader();
+    }
+  }
+
+  /**
+   * Reads the next horse.
+   *
+   * @return the next horse or the reason it could not be read, null at the end of the file
+   * @throws IOException if reading the file fails
+   */
+  ParsedLine next() throws IOException {
+    while (true) {
+      long line = lineNumber;
+      List<String> fields = format == ImportFormat.CSV ? readCsvRecord() : readNdjsonLine();
+      if (fields == null) {
+        return null;
+      }
+      if (lineTooLong) {
+        return ParsedLine.error(line, "Line too long: longer than %d characters".formatted(MAX_LINE_LENGTH));
+      }
+      if (fields.size() == 1 && fields.get(0).isBlank()) {
+        continue;
+      }
+      return format == ImportFormat.CSV ? csvItem(line, fields) : ndjsonItem(line, fields.get(0));
+    }
+  }
+
+  private void readHeader() throws ValidationException, IOException {
+    List<String> header = readCsvRecord();
+    if (header == null || lineTooLong) {
+      throw new ValidationException("Import of horses failed", List.of("CSV file needs a header line"));
+    }
+
+    List<String> errors = new ArrayList<>();
+    for (int i = 0; i < header.size(); i++) {
+      String column = header.get(i).trim().toLowerCase(Locale.ENGLISH);
+      if (!CSV_COLUMNS.contains(column)) {
+        errors.add("Unknown CSV column '%s', expected any of %s".formatted(column, CSV_COLUMNS));
+      } else if (columns.putIfAbsent(column, i) != null) {
+        errors.add("CSV column '%s' is given more than once".formatted(column));
+      }
+    }
+    for (String column : CSV_REQUIRED_COLUMNS) {
+      if (!columns.containsKey(column)) {
+        errors.add("CSV column '%s' is missing".formatted(column));
+      }
+    }
+    if (!errors.isEmpty()) {
+      throw new ValidationException("Import of horses failed", errors);
+    }
+  }
+
+  private ParsedLine csvItem(long line, List<String> fields) {
+    if (fields.size() != columns.size()) {
+      return ParsedLine.error(line, "Expected %d fields, but found %d".formatted(columns.size(), fields.size()));
+    }
+
+    try {
+      Long ownerId = longField(fields, "owner_id");
+      Long motherId = longField(fields, "mother_id");
+      Long fatherId = longField(fields, "father_id");
+      String dateOfBirth = field(fields, "date_of_birth");
+      String sex = field(fields, "sex");
+      var horse = new HorseCreateDto(
+          field(fields, "name"),
+          field(fields, "description"),
+          dateOfBirth == null ? null : LocalDate.parse(dateOfBirth),
+          sex == null ? null : Sex.valueOf(sex.toUpperCase(Locale.ENGLISH)),
+          ownerId == null ? null : new OwnerDto(ownerId, null, null, null),
+          motherId == null ? null : new HorseDetailDto(motherId, null, null, null, null, null, null, null),
+          fatherId == null ? null : new HorseDetailDto(fatherId, null, null, null, null, null, null, null));
+      return new ParsedLine(line, new HorseBatchItemDto(field(fields, "ref"), horse, field(fields, "mother_ref"), field(fields, "father_ref")),
+          null);
+    } catch (DateTimeParseException e) {
+      return ParsedLine.error(line, "Date of birth is not a date like 2020-12-31");
+    } catch (IllegalArgumentException e) {
+      // also NumberFormatException
+      return ParsedLine.error(line, "Invalid field: " + e.getMessage());
+    }
+  }
+
+  private ParsedLine ndjsonItem(long line, String json) {
+    try {
+      HorseBatchItemDto item = jsonReader.readValue(json);
+      return new ParsedLine(line, item, null);
+    } catch (JsonProcessingException e) {
+      return ParsedLine.error(line, "Invalid JSON: " + e.getOriginalMessage());
+    }
+  }
+
+  private String field(List<String> fields, String column) {
+    Integer index = columns.get(column);
+    String value = index == null ? "" : fields.get(index);
+    return value.isEmpty() ? null : value;
+  }
+
+  private Long longField(List<String> fields, String column) {
+    String value = field(fields, column);
+    return value == null ? null : Long.valueOf(value.trim());
+  }
+
+  // RFC 4180 record, may span several lines if a quoted field contains line breaks
+  private List<String> readCsvRecord() throws IOException {
+    lineTooLong = false;
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    int length = 0;
+    boolean quoted = false;
+    boolean empty = true;
+    while (true) {
+      int c = reader.read();
+      if (c == -1) {
+        if (empty) {
+          return null;
+        }
+        break;
+      }
+      empty = false;
+
+      if (quoted) {
+        if (c == '"') {
+          reader.mark(1);
+          if (reader.read() == '"') {
+            c = '"';
+          } else {
+            reader.reset();
+            quoted = false;
+            continue;
+          }
+        } else if (c == '\n') {
+          lineNumber++;
+        }
+      } else if (c == '"' && field.isEmpty()) {
+        quoted = true;
+        continue;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+        continue;
+      } else if (c == '\r') {
+        continue;
+      } else if (c == '\n') {
+        lineNumber++;
+        break;
+      }
+
+      if (++length > MAX_LINE_LENGTH) {
+        lineTooLong = true;
+      } else {
+        field.append((char) c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private List<String> readNdjsonLine() throws IOException {
+    lineTooLong = false;
+    StringBuilder line = new StringBuilder();
+    int c = reader.read();
+    if (c == -1) {
+      return null;
+    }
+    for (; c != -1 && c != '\n'; c = reader.read()) {
+      if (line.length() >= MAX_LINE_LENGTH) {
+        lineTooLong = true;
+      } else if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    lineNumber++;
+    return List.of(line.toString());
+  }
+
+  /**
+   * A horse read from the file, or the reason it could not be read.
+   *
+   * @param line  the line the horse starts at
+   * @param item  the horse, null if it could not be read
+   * @param error the reason the horse could not be read, null if it was read
+   */
+  record ParsedLine(long line, HorseBatchItemDto item, String error) {
+    static ParsedLine error(long line, String error) {
+      return new ParsedLine(line, null, error);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the imports of horses, see {@link HorseImportServiceImpl}.
+ * All properties are bound from the {@code horse-import} prefix.
+ *
+ * @param batchSize       number of horses validated and created together, in one query and one JDBC batch
+ * @param queueCapacity   number of parsed batches, that may wait for being created, before reading the file pauses
+ * @param maxErrors       number of errors kept per import, further errors are only counted
+ * @param maxConcurrent   number of imports, that create horses at the same time, further imports wait
+ * @param retainedImports number of finished imports, whose state can still be queried
+ */
+@ConfigurationProperties("horse-import")
+public record HorseImportProperties(
+    @DefaultValue("1000") int batchSize,
+    @DefaultValue("4") int queueCapacity,
+    @DefaultValue("100") int maxErrors,
+    @DefaultValue("2") int maxConcurrent,
+    @DefaultValue("20") int retainedImports
+) {
+  /**
+   * Validates the configured values.
+   *
+   * @throws IllegalArgumentException if any of the values is out of range
+   */
+  public HorseImportProperties {
+    if (batchSize < 1 || queueCapacity < 1 || maxConcurrent < 1) {
+      throw new IllegalArgumentException("Invalid import configuration: batch size, queue capacity and concurrency must be positive");
+    }
+    if (maxErrors < 0 || retainedImports < 0) {
+      throw new IllegalArgumentException("Invalid import configuration: max errors and retained imports must not be negative");
+    }
+  }
+}
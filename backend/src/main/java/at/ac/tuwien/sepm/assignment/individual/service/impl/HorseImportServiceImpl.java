@@ -0,0 +1,328 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao.ParentClaim;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.ImportRow;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.ParentLink;
+import at.ac.tuwien.sepm.assignment.individual.service.HorseImportService;
+import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.HorseImportParser.ParsedLine;
+import at.ac.tuwien.sepm.assignment.individual.type.ImportFormat;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports files of horses in a bounded pipeline.
+ * <p>
+ * The thread of the request reads and parses the file and hands batches of horses over to a writer thread
+ * through a queue of {@link HorseImportProperties#queueCapacity()} batches. The writer validates each batch
+ * against the stored data in one query and creates the valid horses in one JDBC batch and transaction.
+ * If the writer falls behind, the queue fills up and reading the file pauses, so memory does not grow with the file.
+ * </p>
+ * <p>
+ * Parents given by reference may appear anywhere in the file, so the references are kept in a staging table.
+ * When the whole file is created, the parents are resolved by the database and set in batches as well.
+ * </p>
+ */
+@Service
+public class HorseImportServiceImpl implements HorseImportService {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // marks the end of the file in the queue, compared by identity
+  private static final List<ParsedLine> END_OF_FILE = new ArrayList<>();
+  private static final long HAND_OVER_TIMEOUT_MILLIS = 100;
+  // how often a batch is validated and written again, after the stored parents changed in between
+  private static final int WRITE_ATTEMPTS = 3;
+  private static final String CONCURRENT_CHANGE = "The parents of the horse were changed concurrently, please import it again";
+
+  private final HorseDao horseDao;
+  private final HorseImportDao importDao;
+  private final HorseValidator validator;
+  private final HorseService horseService;
+  private final PedigreeIndex pedigreeIndex;
+  private final TransactionTemplate transactionTemplate;
+  private final HorseImportProperties properties;
+  private final ObjectReader itemReader;
+  private final ExecutorService writers;
+  private final Map<Long, HorseImport> imports;
+
+  public HorseImportServiceImpl(HorseDao horseDao, HorseImportDao importDao, HorseValidator validator, HorseService horseService,
+                                PedigreeIndex pedigreeIndex, TransactionTemplate transactionTemplate, HorseImportProperties properties,
+                                ObjectMapper objectMapper) {
+    this.horseDao = horseDao;
+    this.importDao = importDao;
+    this.validator = validator;
+    this.horseService = horseService;
+    this.pedigreeIndex = pedigreeIndex;
+    this.transactionTemplate = transactionTemplate;
+    this.properties = properties;
+    this.itemReader = objectMapper.readerFor(HorseBatchItemDto.class);
+    AtomicInteger threads = new AtomicInteger();
+    this.writers = Executors.newFixedThreadPool(properties.maxConcurrent(), runnable -> {
+      Thread thread = new Thread(runnable, "horse-import-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // running imports are never dropped, only the oldest finished ones
+    this.imports = new LinkedHashMap<>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, HorseImport> eldest) {
+        return eldest.getValue().isFinished() && size() > properties.retainedImports();
+      }
+    };
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    writers.shutdownNow();
+  }
+
+  @Override
+  public HorseImportDto importHorses(Reader file, ImportFormat format) throws ValidationException, IOException {
+    LOG.trace("importHorses({})", format);
+
+    var parser = new HorseImportParser(file, format, itemReader);
+    var horseImport = new HorseImport(importDao.nextImportId(), properties.maxErrors());
+    synchronized (imports) {
+      imports.put(horseImport.id(), horseImport);
+    }
+    LOG.info("Started import {} of {} file", horseImport.id(), format);
+
+    try {
+      load(parser, horseImport);
+      horseImport.linking();
+      reportDuplicateRefs(horseImport);
+      linkParents(horseImport);
+      horseImport.complete();
+    } catch (IOException | RuntimeException e) {
+      horseImport.fail(e.getMessage());
+      throw e;
+    } finally {
+      importDao.deleteRows(horseImport.id());
+      synchronized (imports) {
+        // re-inserting the finished import lets the map drop the oldest finished imports beyond the retained ones
+        imports.put(horseImport.id(), imports.remove(horseImport.id()));
+      }
+    }
+
+    var result = horseImport.toDto();
+    LOG.info("Finished import {}: {} horses imported, {} lines rejected, {} parent links rejected",
+        result.id(), result.horsesImported(), result.linesRejected(), result.linksRejected());
+    return result;
+  }
+
+  @Override
+  public List<HorseImportDto> getAll() {
+    LOG.trace("getAll()");
+
+    List<HorseImportDto> result = new ArrayList<>();
+    synchronized (imports) {
+      imports.values().forEach(horseImport -> result.add(0, horseImport.toDto()));
+    }
+    return result;
+  }
+
+  @Override
+  public HorseImportDto getById(long id) throws NotFoundException {
+    LOG.trace("getById({})", id);
+
+    HorseImport horseImport;
+    synchronized (imports) {
+      horseImport = imports.get(id);
+    }
+    if (horseImport == null) {
+      throw new NotFoundException("No import with ID %d found".formatted(id));
+    }
+    return horseImport.toDto();
+  }
+
+  private void load(HorseImportParser parser, HorseImport horseImport) throws IOException {
+    BlockingQueue<List<ParsedLine>> queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+    Future<?> writer = writers.submit(() -> {
+      for (var batch = queue.take(); batch != END_OF_FILE; batch = queue.take()) {
+        write(batch, horseImport);
+      }
+      return null;
+    });
+
+    try {
+      List<ParsedLine> batch = new ArrayList<>(properties.batchSize());
+      for (var line = parser.next(); line != null; line = parser.next()) {
+        horseImport.lineRead();
+        if (line.error() != null) {
+          horseImport.rejectLine(line.line(), List.of(line.error()));
+          continue;
+        }
+        batch.add(line);
+        if (batch.size() == properties.batchSize()) {
+          handOver(queue, batch, writer);
+          batch = new ArrayList<>(properties.batchSize());
+        }
+      }
+      if (!batch.isEmpty()) {
+        handOver(queue, batch, writer);
+      }
+      handOver(queue, END_OF_FILE, writer);
+      writer.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new FatalException("Interrupted while importing horses", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof RuntimeException cause ? cause : new FatalException("Writing imported horses failed", e.getCause());
+    } finally {
+      // stops the writer, if reading the file failed
+      writer.cancel(true);
+    }
+  }
+
+  // waits for space in the queue, but not for a writer that has already stopped
+  private void handOver(BlockingQueue<List<ParsedLine>> queue, List<ParsedLine> batch, Future<?> writer)
+      throws InterruptedException, ExecutionException {
+    while (!queue.offer(batch, HAND_OVER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (writer.isDone()) {
+        writer.get();
+        throw new FatalException("Writer of imported horses stopped early");
+      }
+    }
+  }
+
+  private void write(List<ParsedLine> batch, HorseImport horseImport) {
+    // nothing is locked between validation and write, the write checks the stored parents against the horses instead
+    for (int attempt = 1; ; attempt++) {
+      var errors = validator.validateForImport(batch.stream().map(ParsedLine::item).toList());
+      List<ParsedLine> valid = new ArrayList<>(batch.size());
+      Map<Long, List<String>> rejected = new LinkedHashMap<>();
+      for (int i = 0; i < batch.size(); i++) {
+        if (errors.get(i).isEmpty()) {
+          valid.add(batch.get(i));
+        } else {
+          rejected.put(batch.get(i).line(), errors.get(i));
+        }
+      }
+      try {
+        if (!valid.isEmpty()) {
+          create(valid, horseImport);
+        }
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt < WRITE_ATTEMPTS) {
+          LOG.debug("Parents of imported horses changed since they were validated, validating them again");
+          continue;
+        }
+        valid.forEach(line -> rejected.put(line.line(), List.of(CONCURRENT_CHANGE)));
+        valid.clear();
+      }
+      rejected.forEach(horseImport::rejectLine);
+      horseImport.imported(valid.size());
+      return;
+    }
+  }
+
+  private void create(List<ParsedLine> valid, HorseImport horseImport) {
+    transactionTemplate.executeWithoutResult(status -> {
+      List<HorseCreateDto> newHorses = valid.stream().map(line -> line.item().horse()).toList();
+      List<Horse> created = horseDao.createAll(newHorses);
+      List<ImportRow> rows = new ArrayList<>();
+      for (int i = 0; i < valid.size(); i++) {
+        var item = valid.get(i).item();
+        var horse = created.get(i);
+        // only horses, that can be referred to or refer to others, need to be staged
+        if (item.ref() != null || item.motherRef() != null || item.fatherRef() != null) {
+          rows.add(new ImportRow(valid.get(i).line(), item.ref(), horse.getId(), item.motherRef(), item.fatherRef()));
+        }
+        pedigreeIndex.put(horse.getId(), horse.getMotherId(), horse.getFatherId(), horse.getVersion());
+      }
+      if (!rows.isEmpty()) {
+        importDao.insertRows(horseImport.id(), rows);
+      }
+    });
+  }
+
+  private void reportDuplicateRefs(HorseImport horseImport) {
+    for (ImportRow row : importDao.getDuplicateRefs(horseImport.id(), properties.maxErrors())) {
+      horseImport.warn(row.line(), "Reference '%s' is already used by an earlier horse, which is the one referred to".formatted(row.ref()));
+    }
+  }
+
+  private void linkParents(HorseImport horseImport) {
+    long afterLine = 0;
+    int attempt = 1;
+    while (true) {
+      var links = importDao.getParentLinks(horseImport.id(), afterLine, properties.batchSize());
+      if (links.isEmpty()) {
+        return;
+      }
+
+      List<ParentLink> valid = new ArrayList<>(links.size());
+      Map<Long, List<String>> rejected = new LinkedHashMap<>();
+      // the parents given by ID were already claimed, when the horses were created
+      List<ParentClaim> claims = new ArrayList<>();
+      for (ParentLink link : links) {
+        var errors = validator.validateImportedParents(link);
+        if (errors.isEmpty()) {
+          valid.add(link);
+          if (link.mother().ref() != null) {
+            claims.add(new ParentClaim(link.mother().id(), Sex.FEMALE, link.dateOfBirth()));
+          }
+          if (link.father().ref() != null) {
+            claims.add(new ParentClaim(link.father().id(), Sex.MALE, link.dateOfBirth()));
+          }
+        } else {
+          rejected.put(link.line(), errors);
+        }
+      }
+      if (!valid.isEmpty()) {
+        try {
+          transactionTemplate.executeWithoutResult(status -> {
+            horseDao.claimParents(claims);
+            Map<Long, Long> versions = importDao.setParents(valid);
+            for (ParentLink link : valid) {
+              pedigreeIndex.put(link.horseId(), link.mother().id(), link.father().id(), versions.get(link.horseId()));
+            }
+          });
+        } catch (OptimisticLockingFailureException e) {
+          if (attempt++ < WRITE_ATTEMPTS) {
+            LOG.debug("Parents of imported horses changed since they were read, linking them again");
+            continue;
+          }
+          valid.forEach(link -> rejected.put(link.line(), List.of(CONCURRENT_CHANGE)));
+          valid.clear();
+        }
+        // the horses may have been read while their parents were not set yet
+        horseService.evictCached(valid.stream().map(ParentLink::horseId).toList());
+      }
+      rejected.forEach(horseImport::rejectLinks);
+      afterLine = links.get(links.size() - 1).line();
+      attempt = 1;
+    }
+  }
+}
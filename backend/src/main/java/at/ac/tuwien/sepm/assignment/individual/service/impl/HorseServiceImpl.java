@@ -1,7 +1,11 @@
 package at.ac.tuwien.sepm.assignment.individual.service.impl;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchResultDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
@@ -13,41 +17,82 @@ import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.mapper.HorseMapper;
 import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao.BatchReferences;
+import at.ac.tuwien.sepm.assignment.individual.persistence.StreamingProperties;
 import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
 import at.ac.tuwien.sepm.assignment.individual.service.OwnerService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class HorseServiceImpl implements HorseService {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // how many deeper family-trees are looked up in the cache, to derive a requested one from
+  private static final int DEEPER_TREE_LOOKUPS = 4;
+  // how often a write is validated and written again, after the horse, its parents or its children changed in between
+  private static final int WRITE_ATTEMPTS = 3;
   private final HorseDao dao;
   private final HorseMapper mapper;
   private final HorseValidator validator;
   private final OwnerService ownerService;
+  private final StreamingProperties streamingProperties;
+  private final PedigreeIndex pedigreeIndex;
+  private final DescendantsProperties descendantsProperties;
+  private final TransactionTemplate transactionTemplate;
+  // a detail embeds summaries of the parents, so it depends on the horse and both of its parents
+  private final DependencyTrackingCache<Long, HorseDetailDto> details;
+  // a family-tree depends on every horse in it
+  private final DependencyTrackingCache<TreeKey, HorseTreeDto> trees;
+  // identical searches, e.g. of an autocomplete, running at the same time share one query
+  private final SingleFlight<HorseSearchDto, List<HorseListDto>> searches;
 
-  public HorseServiceImpl(HorseDao dao, HorseMapper mapper, HorseValidator validator, OwnerService ownerService) {
+  public HorseServiceImpl(HorseDao dao, HorseMapper mapper, HorseValidator validator, OwnerService ownerService,
+                          StreamingProperties streamingProperties, PedigreeIndex pedigreeIndex, DescendantsProperties descendantsProperties,
+                          CacheProperties cacheProperties, MeterRegistry meterRegistry, TransactionTemplate transactionTemplate) {
     this.dao = dao;
     this.mapper = mapper;
     this.validator = validator;
     this.ownerService = ownerService;
+    this.streamingProperties = streamingProperties;
+    this.pedigreeIndex = pedigreeIndex;
+    this.descendantsProperties = descendantsProperties;
+    this.transactionTemplate = transactionTemplate;
+    this.details = new DependencyTrackingCache<>("horseDetails", cacheProperties.details().maximumSize(), meterRegistry);
+    this.trees = new DependencyTrackingCache<>("horseTrees", cacheProperties.trees().maximumSize(), meterRegistry);
+    this.searches = new SingleFlight<>("horseSearches", meterRegistry);
   }
 
   @Override
   public Stream<HorseListDto> search(HorseSearchDto searchParameters) {
     LOG.trace("allHorses({})", searchParameters);
 
+    return searches.run(searchParameters, () -> searchNow(searchParameters)).stream();
+  }
+
+  private List<HorseListDto> searchNow(HorseSearchDto searchParameters) {
     var horses = dao.search(searchParameters);
     var ownerIds = horses
         .stream()
@@ -63,7 +108,59 @@ public class HorseServiceImpl implements HorseService {
       throw new FatalException("Horse, that is already persisted, refers to non-existing owner", e);
     }
 
-    return horses.stream().map(horse -> mapper.entityToListDto(horse, ownerMap));
+    return horses.stream().map(horse -> mapper.entityToListDto(horse, ownerMap)).toList();
+  }
+
+  @Override
+  public Stream<HorseListDto> streamSearch(HorseSearchDto searchParameters) {
+    LOG.trace("streamSearch({})", searchParameters);
+
+    // the owners are looked up for a chunk of horses at a time, so only one chunk is held in memory
+    Stream<Horse> horses = dao.streamSearch(searchParameters);
+    Iterator<Horse> iterator = horses.iterator();
+    int chunkSize = streamingProperties.fetchSize();
+    var chunks = new Spliterators.AbstractSpliterator<List<Horse>>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      @Override
+      public boolean tryAdvance(Consumer<? super List<Horse>> action) {
+        if (!iterator.hasNext()) {
+          return false;
+        }
+        List<Horse> chunk = new ArrayList<>(chunkSize);
+        while (chunk.size() < chunkSize && iterator.hasNext()) {
+          chunk.add(iterator.next());
+        }
+        action.accept(chunk);
+        return true;
+      }
+    };
+
+    return StreamSupport.stream(chunks, false)
+        .onClose(horses::close)
+        .flatMap(this::chunkToListDtos);
+  }
+
+  @Override
+  public Stream<HorseExportDto> streamExport() {
+    LOG.trace("streamExport()");
+
+    return dao.streamExport();
+  }
+
+  private Stream<HorseListDto> chunkToListDtos(List<Horse> chunk) {
+    var ownerIds = chunk
+        .stream()
+        .map(Horse::getOwnerId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
+
+    Map<Long, OwnerDto> ownerMap;
+    try {
+      ownerMap = ownerService.getAllById(ownerIds);
+    } catch (NotFoundException e) {
+      throw new FatalException("Horse, that is already persisted, refers to non-existing owner", e);
+    }
+
+    return chunk.stream().map(horse -> mapper.entityToListDto(horse, ownerMap));
   }
 
 
@@ -71,8 +168,24 @@ public class HorseServiceImpl implements HorseService {
   public HorseDetailDto update(HorseDetailDto horse) throws NotFoundException, ValidationException, ConflictException {
     LOG.trace("update({})", horse);
 
-    validator.validateForUpdate(horse);
-    var updatedHorse = dao.update(horse);
+    // nothing is locked between validation and write, the write checks the versions the horse was validated against instead
+    Horse updatedHorse = null;
+    for (int attempt = 1; updatedHorse == null; attempt++) {
+      var snapshot = validator.validateForUpdate(horse);
+      try {
+        updatedHorse = dao.update(horse, snapshot);
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt == WRITE_ATTEMPTS) {
+          throw new ConflictException("Conflicts occurred when trying to update the horse ",
+              List.of("The horse, its parents or its children were changed concurrently, please try again"));
+        }
+        LOG.debug("Horse {} changed since it was validated, validating it again", horse.id());
+      }
+    }
+    // also the details of its children, that embed it as parent, and all family-trees containing it
+    details.invalidate(List.of(updatedHorse.getId()));
+    trees.invalidate(List.of(updatedHorse.getId()));
+    pedigreeIndex.put(updatedHorse.getId(), updatedHorse.getMotherId(), updatedHorse.getFatherId(), updatedHorse.getVersion());
     return mapper.entityToDetailDto(updatedHorse,
         ownerMapForSingleId(updatedHorse.getOwnerId()),
         horseMapForIds(Arrays.asList(updatedHorse.getMotherId(), updatedHorse.getFatherId())));
@@ -83,41 +196,226 @@ public class HorseServiceImpl implements HorseService {
   public HorseDetailDto getById(long id) throws NotFoundException {
     LOG.trace("details({})", id);
 
-    Horse horse = dao.getById(id);
-    return mapper.entityToDetailDto(horse,
-        ownerMapForSingleId(horse.getOwnerId()),
-        horseMapForIds(Arrays.asList(horse.getMotherId(), horse.getFatherId())));
+    return details.get(id, () -> {
+      Map<Long, Horse> horses = dao.getByIdWithParents(id);
+      Horse horse = horses.get(id);
+      var detail = mapper.entityToDetailDto(horse,
+          ownerMapForSingleId(horse.getOwnerId()),
+          parentMap(horse, horses));
+      return new DependencyTrackingCache.Loaded<>(detail, horses.keySet());
+    });
+  }
+
+  @Override
+  public String getVersion(long id) throws NotFoundException {
+    LOG.trace("getVersion({})", id);
+
+    return dao.getVersionStamp(id);
   }
 
   @Override
   public HorseDetailDto create(HorseCreateDto newHorse) throws ValidationException, ConflictException {
     LOG.trace("create({})", newHorse);
 
-    validator.validateForCreate(newHorse);
-    return mapper.entityToDetailDto(dao.create(newHorse),
+    // nothing is locked between validation and write, the write checks the parents against the horse instead
+    Horse createdHorse = null;
+    for (int attempt = 1; createdHorse == null; attempt++) {
+      validator.validateForCreate(newHorse);
+      try {
+        createdHorse = dao.create(newHorse);
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt == WRITE_ATTEMPTS) {
+          throw new ConflictException("Conflicts occurred when trying to create the horse ",
+              List.of("The parents of the horse were changed concurrently, please try again"));
+        }
+        LOG.debug("Parents of new horse changed since it was validated, validating it again");
+      }
+    }
+    pedigreeIndex.put(createdHorse.getId(), createdHorse.getMotherId(), createdHorse.getFatherId(), createdHorse.getVersion());
+    return mapper.entityToDetailDto(createdHorse,
         ownerMapForSingleId(newHorse.ownerId()),
         horseMapForIds(Arrays.asList(newHorse.motherId(), newHorse.fatherId())));
   }
 
+  @Override
+  public List<HorseBatchResultDto> createBatch(List<HorseBatchItemDto> items) throws ValidationException, ConflictException {
+    LOG.trace("createBatch({} horses)", items.size());
+
+    var batch = new HorseBatch(items);
+    // nothing is locked between validation and write, the write checks the stored parents against the horses instead
+    BatchReferences references = null;
+    Horse[] created = null;
+    for (int attempt = 1; created == null; attempt++) {
+      references = validator.validateForBatchCreate(batch);
+      try {
+        created = transactionTemplate.execute(status -> createAll(batch));
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt == WRITE_ATTEMPTS) {
+          throw new ConflictException("Conflicts occurred when trying to create the horses",
+              List.of("The parents of the horses were changed concurrently, please try again"));
+        }
+        LOG.debug("Parents of new horses changed since they were validated, validating them again");
+      }
+    }
+    for (Horse horse : created) {
+      pedigreeIndex.put(horse.getId(), horse.getMotherId(), horse.getFatherId(), horse.getVersion());
+    }
+
+    Map<Long, HorseDetailDto> parents = new HashMap<>();
+    Stream.concat(references.horses().values().stream(), Arrays.stream(created))
+        .forEach(horse -> parents.put(horse.getId(), parentToDetailDto(horse)));
+    Map<Long, OwnerDto> owners;
+    try {
+      owners = ownerService.getAllById(references.ownerIds());
+    } catch (NotFoundException e) {
+      throw new FatalException("Owners validated for the batch not found", e);
+    }
+
+    List<HorseBatchResultDto> results = new ArrayList<>(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      results.add(new HorseBatchResultDto(batch.item(i).ref(), mapper.entityToDetailDto(created[i], owners, parents)));
+    }
+    return results;
+  }
+
+  private Horse[] createAll(HorseBatch batch) {
+    // parents in the batch need their ID before their children are inserted, so there is one JDBC batch per level
+    Horse[] created = new Horse[batch.size()];
+    for (int level = 0; level < batch.levelCount(); level++) {
+      List<Integer> indices = batch.indicesAt(level);
+      List<HorseCreateDto> newHorses = new ArrayList<>(indices.size());
+      for (int index : indices) {
+        var item = batch.item(index);
+        newHorses.add(withParents(item.horse(),
+            parentId(batch, created, item.motherRef(), item.horse().motherId()),
+            parentId(batch, created, item.fatherRef(), item.horse().fatherId())));
+      }
+      var horses = dao.createAll(newHorses);
+      for (int i = 0; i < indices.size(); i++) {
+        created[indices.get(i)] = horses.get(i);
+      }
+    }
+    return created;
+  }
+
+  private static Long parentId(HorseBatch batch, Horse[] created, String parentRef, Long parentId) {
+    return parentRef == null ? parentId : created[batch.indexOf(parentRef)].getId();
+  }
+
+  private static HorseCreateDto withParents(HorseCreateDto horse, Long motherId, Long fatherId) {
+    return new HorseCreateDto(horse.name(), horse.description(), horse.dateOfBirth(), horse.sex(), horse.owner(),
+        motherId == null ? null : new HorseDetailDto(motherId, null, null, null, null, null, null, null),
+        fatherId == null ? null : new HorseDetailDto(fatherId, null, null, null, null, null, null, null));
+  }
+
   @Override
   public void delete(long id) throws NotFoundException {
     LOG.trace("delete({})", id);
 
     dao.delete(id);
+    // the children lose it as parent by ON DELETE SET NULL
+    details.invalidate(List.of(id));
+    trees.invalidate(List.of(id));
+    pedigreeIndex.remove(id);
+  }
+
+  @Override
+  public void evictCached(Collection<Long> ids) {
+    LOG.trace("evictCached({} horses)", ids.size());
+
+    details.invalidate(ids);
+    trees.invalidate(ids);
   }
 
   @Override
   public HorseTreeDto getGenerationsAsTree(long id, int numberOfGenerations) throws NotFoundException, ValidationException {
     LOG.trace("getGenerationsAsTree({}{})", id, numberOfGenerations);
 
+    validateNumberOfGenerations(id, numberOfGenerations);
+
+    var key = new TreeKey(id, numberOfGenerations);
+    return trees.get(key, () -> {
+      var deeper = fromDeeperCachedTree(key);
+      if (deeper != null) {
+        return deeper;
+      }
+
+      var horses = generationsFromIndex(id, numberOfGenerations);
+      if (horses == null) {
+        var horse = dao.getById(id);  // to check if horse even existing
+        horses = dao.getGenerationsAsTree(horse.getId(), numberOfGenerations);
+      }
+      var tree = mapper.entityToTreeDto(horses.get(id), horses, 1, numberOfGenerations);
+      return new DependencyTrackingCache.Loaded<>(tree, horses.keySet());
+    });
+  }
+
+  @Override
+  public String getGenerationsAsTreeVersion(long id, int numberOfGenerations) throws NotFoundException, ValidationException {
+    LOG.trace("getGenerationsAsTreeVersion({}, {})", id, numberOfGenerations);
+
+    validateNumberOfGenerations(id, numberOfGenerations);
+    return dao.getGenerationsVersionStamp(id, numberOfGenerations);
+  }
+
+  private static void validateNumberOfGenerations(long id, int numberOfGenerations) throws ValidationException {
     if (numberOfGenerations < 1) {
       throw new ValidationException("Cannot load family-tree for %d".formatted(id),
           Collections.singletonList("Number of generation for family tree is not valid"));
     }
+  }
+
+  @Override
+  public Stream<HorseDescendantDto> streamDescendants(long id, int numberOfGenerations, IntConsumer onTruncated)
+      throws NotFoundException, ValidationException {
+    LOG.trace("streamDescendants({}, {})", id, numberOfGenerations);
 
-    var horse = dao.getById(id);  // to check if horse even existing
-    var horses = dao.getGenerationsAsTree(horse.getId(), numberOfGenerations);
-    return mapper.entityToTreeDto(horses.get(horse.getId()), horses, 1, numberOfGenerations);
+    if (numberOfGenerations < 1 || numberOfGenerations > descendantsProperties.maxGenerations()) {
+      throw new ValidationException("Cannot load descendants for %d".formatted(id),
+          Collections.singletonList("Number of generations must be between 1 and %d".formatted(descendantsProperties.maxGenerations())));
+    }
+    dao.getById(id);  // to check if horse even existing
+
+    return StreamSupport.stream(new DescendantWalk(dao, id, numberOfGenerations, descendantsProperties, onTruncated), false);
+  }
+
+  /**
+   * Derives the requested tree from a cached tree of the same horse with a few more generations.
+   *
+   * @return the derived tree and the horses in it, or null if there is no such cached tree
+   */
+  private DependencyTrackingCache.Loaded<HorseTreeDto> fromDeeperCachedTree(TreeKey key) {
+    for (int generations = key.generations() + 1; generations <= key.generations() + DEEPER_TREE_LOOKUPS; generations++) {
+      var deeper = trees.peek(new TreeKey(key.id(), generations));
+      if (deeper != null) {
+        List<Long> ids = new ArrayList<>();
+        return new DependencyTrackingCache.Loaded<>(prune(deeper, key.generations(), ids), ids);
+      }
+    }
+    return null;
+  }
+
+  private static HorseTreeDto prune(HorseTreeDto tree, int generations, List<Long> ids) {
+    if (tree == null || generations < 1) {
+      return null;
+    }
+    ids.add(tree.id());
+    return new HorseTreeDto(tree.id(), tree.name(), tree.dateOfBirth(), tree.sex(),
+        prune(tree.mother(), generations - 1, ids),
+        prune(tree.father(), generations - 1, ids));
+  }
+
+  private Map<Long, Horse> generationsFromIndex(long id, int numberOfGenerations) {
+    long[] ancestors = pedigreeIndex.ancestors(id, numberOfGenerations);
+    if (ancestors == null) {
+      return null;
+    }
+
+    var horses = dao.getAllById(Arrays.stream(ancestors).boxed().toList())
+        .stream()
+        .collect(Collectors.toMap(Horse::getId, Function.identity()));
+    // the horse was deleted, but the index has not caught up yet
+    return horses.containsKey(id) ? horses : null;
   }
 
   private Map<Long, OwnerDto> ownerMapForSingleId(Long ownerId) {
@@ -133,18 +431,41 @@ public class HorseServiceImpl implements HorseService {
   private Map<Long, HorseDetailDto> horseMapForIds(Collection<Long> ids) {
     LOG.trace("horseMapForIds({})", ids);
 
-    try {
-      HashMap<Long, HorseDetailDto> result = new HashMap<>();
-      for (Long id : ids) {
-        if (id != null) {
-          // set owner, father and mother to null, because it should not be loaded
-          result.put(id, mapper.entityToDetailDto(dao.getById(id).setOwnerId(null).setFatherId(null).setMotherId(null), null, null));
+    var parentIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+    var horses = dao.getAllById(parentIds);
+    if (horses.size() != parentIds.size()) {
+      throw new FatalException("Horse-Parents %s referenced by horse not found".formatted(Arrays.toString(ids.toArray())));
+    }
+
+    HashMap<Long, HorseDetailDto> result = new HashMap<>();
+    for (Horse parent : horses) {
+      result.put(parent.getId(), parentToDetailDto(parent));
+    }
+    return result;
+  }
+
+  private Map<Long, HorseDetailDto> parentMap(Horse horse, Map<Long, Horse> horses) {
+    LOG.trace("parentMap({}, {})", horse, horses);
+
+    HashMap<Long, HorseDetailDto> result = new HashMap<>();
+    for (Long parentId : Arrays.asList(horse.getMotherId(), horse.getFatherId())) {
+      if (parentId != null) {
+        Horse parent = horses.get(parentId);
+        if (parent == null) {
+          throw new FatalException("Horse-Parent %d referenced by horse %d not found".formatted(parentId, horse.getId()));
         }
+        result.put(parentId, parentToDetailDto(parent));
       }
-
-      return result;
-    } catch (NotFoundException e) {
-      throw new FatalException("Horse-Parents %s referenced by horse not found".formatted(Arrays.toString(ids.toArray())));
     }
+    return result;
+  }
+
+  private record TreeKey(long id, int generations) {
+  }
+
+  private HorseDetailDto parentToDetailDto(Horse parent) {
+    // owner, father and mother of a parent are not loaded
+    return new HorseDetailDto(parent.getId(), parent.getName(), parent.getDescription(), parent.getDateOfBirth(), parent.getSex(),
+        null, null, null);
   }
 }
@@ -1,13 +1,16 @@
 package at.ac.tuwien.sepm.assignment.individual.service.impl;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
-import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
-import at.ac.tuwien.sepm.assignment.individual.persistence.OwnerDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao.BatchReferences;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao.ValidationSnapshot;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.Parent;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseImportDao.ParentLink;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,22 +19,32 @@ import org.springframework.stereotype.Component;
 import java.lang.invoke.MethodHandles;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Component
 public class HorseValidator {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private final HorseDao horseDao;
-  private final OwnerDao ownerDao;
 
-  public HorseValidator(HorseDao horseDao, OwnerDao ownerDao) {
+  public HorseValidator(HorseDao horseDao) {
     this.horseDao = horseDao;
-    this.ownerDao = ownerDao;
   }
 
-  public void validateForUpdate(HorseDetailDto horse) throws ValidationException, ConflictException, NotFoundException {
+  /**
+   * Validates a changed horse against itself and the data currently stored.
+   *
+   * @param horse the changed horse
+   * @return the stored data the horse was validated against, so the update can check, that it has not changed since
+   * @throws ValidationException if the horse is in itself incorrect
+   * @throws ConflictException   if the horse is in conflict with the stored data, or was changed since the version it carries
+   * @throws NotFoundException   if the horse does not exist
+   */
+  public ValidationSnapshot validateForUpdate(HorseDetailDto horse) throws ValidationException, ConflictException, NotFoundException {
     LOG.trace("validateForUpdate({})", horse);
 
     // validation errors
@@ -48,37 +61,41 @@ public class HorseValidator {
       throw new ValidationException("Validation of horse for update failed", validationErrors);
     }
 
+    // everything stored, that the horse is checked against, in one round-trip
+    ValidationSnapshot snapshot = horseDao.getValidationSnapshot(horse.id(), horse.ownerId(), horse.motherId(), horse.fatherId());
+    if (!snapshot.exists()) {
+      throw new NotFoundException("No horse with ID %d found".formatted(horse.id()));
+    }
+
     // conflict errors
     List<String> conflictErrors = new ArrayList<>();
-    validateOwner(conflictErrors, horse.ownerId());
+    if (horse.version() != null && !horse.version().equals(snapshot.version())) {
+      conflictErrors.add("The horse was changed in the meantime, it is at version %d instead of %d now"
+          .formatted(snapshot.version(), horse.version()));
+    }
+    validateOwner(conflictErrors, horse.ownerId(), snapshot);
     if (horse.id() != null && (horse.id().equals(horse.motherId()) || horse.id().equals(horse.fatherId()))) {
       conflictErrors.add("The horse cannot be its own parent");
     }
     validateDifferentParents(conflictErrors, horse.motherId(), horse.fatherId());
-    validateParent(conflictErrors, horse.motherId(), Sex.FEMALE, horse.dateOfBirth());
-    validateParent(conflictErrors, horse.fatherId(), Sex.MALE, horse.dateOfBirth());
-
-    Horse oldHorseData = horseDao.getById(horse.id());
-    Collection<Horse> children = horseDao.getChildren(horse.id());
+    validateParent(conflictErrors, horse.motherId(), snapshot.motherSex(), snapshot.motherDateOfBirth(), Sex.FEMALE, horse.dateOfBirth());
+    validateParent(conflictErrors, horse.fatherId(), snapshot.fatherSex(), snapshot.fatherDateOfBirth(), Sex.MALE, horse.dateOfBirth());
 
     // sex cannot change with children
-    if (oldHorseData.getSex() != horse.sex() && !children.isEmpty()) {
+    if (snapshot.sex() != horse.sex() && snapshot.hasChildren()) {
       conflictErrors.add("Cannot change sex of horse with children");
     }
 
-    // date of birth can change, but you cannot be younger than any of your children
-    if (oldHorseData.getDateOfBirth() != horse.dateOfBirth() && !children.isEmpty()) {
-      for (Horse child : children) {
-        if (horse.dateOfBirth().isAfter(child.getDateOfBirth())) {
-          conflictErrors.add("horse cannot be younger than any of his children (e.g.: %s born at %s)".formatted(child.getName(), child.getDateOfBirth()));
-          break;
-        }
-      }
+    // date of birth can change, but you cannot be younger than any of your children, i.e. the oldest one
+    if (snapshot.hasChildren() && horse.dateOfBirth().isAfter(snapshot.oldestChildDateOfBirth())) {
+      conflictErrors.add("horse cannot be younger than any of his children (e.g.: %s born at %s)"
+          .formatted(snapshot.oldestChildName(), snapshot.oldestChildDateOfBirth()));
     }
 
     if (!conflictErrors.isEmpty()) {
       throw new ConflictException("Conflicts occurred when trying to update the horse ", conflictErrors);
     }
+    return snapshot;
   }
 
   public void validateForCreate(HorseCreateDto newHorse) throws ValidationException, ConflictException {
@@ -95,17 +112,227 @@ public class HorseValidator {
     }
 
     // conflict errors
+    ValidationSnapshot snapshot = horseDao.getValidationSnapshot(null, newHorse.ownerId(), newHorse.motherId(), newHorse.fatherId());
     List<String> conflictErrors = new ArrayList<>();
-    validateOwner(conflictErrors, newHorse.ownerId());
+    validateOwner(conflictErrors, newHorse.ownerId(), snapshot);
     validateDifferentParents(conflictErrors, newHorse.motherId(), newHorse.fatherId());
-    validateParent(conflictErrors, newHorse.motherId(), Sex.FEMALE, newHorse.dateOfBirth());
-    validateParent(conflictErrors, newHorse.fatherId(), Sex.MALE, newHorse.dateOfBirth());
+    validateParent(conflictErrors, newHorse.motherId(), snapshot.motherSex(), snapshot.motherDateOfBirth(), Sex.FEMALE, newHorse.dateOfBirth());
+    validateParent(conflictErrors, newHorse.fatherId(), snapshot.fatherSex(), snapshot.fatherDateOfBirth(), Sex.MALE, newHorse.dateOfBirth());
 
     if (!conflictErrors.isEmpty()) {
       throw new ConflictException("Conflicts occurred when trying to update the horse ", conflictErrors);
     }
   }
 
+  /**
+   * Validates a batch of new horses as a whole, with all referenced owners and parents looked up in one query.
+   * The errors are prefixed by the index of the horse in the batch.
+   *
+   * @param batch the horses to create
+   * @return the stored data the horses refer to
+   * @throws ValidationException if any of the horses is in itself incorrect, or the references within the batch are
+   * @throws ConflictException   if any of the horses is in conflict with the stored data, or with its parents in the batch
+   */
+  public BatchReferences validateForBatchCreate(HorseBatch batch) throws ValidationException, ConflictException {
+    LOG.trace("validateForBatchCreate({} horses)", batch.size());
+
+    // validation errors
+    List<String> validationErrors = new ArrayList<>();
+    if (batch.size() == 0) {
+      validationErrors.add("Batch contains no horses");
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      List<String> itemErrors = new ArrayList<>();
+      var item = batch.item(i);
+      if (item == null || item.horse() == null) {
+        itemErrors.add("No horse given");
+      } else {
+        validateName(itemErrors, item.horse().name());
+        validateDescription(itemErrors, item.horse().description());
+        validateDateOfBirth(itemErrors, item.horse().dateOfBirth());
+        validateSex(itemErrors, item.horse().sex());
+        if (batch.hasDuplicateRef(i)) {
+          itemErrors.add("Reference '%s' is used by more than one horse".formatted(item.ref()));
+        }
+        validateParentRef(itemErrors, item.motherRef(), item.horse().motherId(), "mother", batch);
+        validateParentRef(itemErrors, item.fatherRef(), item.horse().fatherId(), "father", batch);
+        if (batch.level(i) == HorseBatch.CYCLIC) {
+          itemErrors.add("The horse cannot be its own ancestor");
+        }
+      }
+      addItemErrors(validationErrors, i, itemErrors);
+    }
+    if (!validationErrors.isEmpty()) {
+      throw new ValidationException("Validation of horses for batch create failed", validationErrors);
+    }
+
+    // everything stored, that the horses refer to, in one round-trip
+    Set<Long> ownerIds = new HashSet<>();
+    Set<Long> horseIds = new HashSet<>();
+    for (int i = 0; i < batch.size(); i++) {
+      var horse = batch.item(i).horse();
+      Stream.of(horse.ownerId()).filter(Objects::nonNull).forEach(ownerIds::add);
+      Stream.of(horse.motherId(), horse.fatherId()).filter(Objects::nonNull).forEach(horseIds::add);
+    }
+    BatchReferences references = horseDao.getBatchReferences(ownerIds, horseIds);
+
+    // conflict errors
+    List<String> conflictErrors = new ArrayList<>();
+    for (int i = 0; i < batch.size(); i++) {
+      List<String> itemErrors = new ArrayList<>();
+      var item = batch.item(i);
+      var horse = item.horse();
+      if (horse.ownerId() != null && !references.ownerIds().contains(horse.ownerId())) {
+        itemErrors.add("The owner of a horse must exist");
+      }
+      validateDifferentParents(itemErrors, horse.motherId(), horse.fatherId());
+      if (item.motherRef() != null && item.motherRef().equals(item.fatherRef())) {
+        itemErrors.add("Mother and father cannot be the same horse");
+      }
+      validateBatchParent(itemErrors, item.motherRef(), horse.motherId(), Sex.FEMALE, horse.dateOfBirth(), batch, references);
+      validateBatchParent(itemErrors, item.fatherRef(), horse.fatherId(), Sex.MALE, horse.dateOfBirth(), batch, references);
+      addItemErrors(conflictErrors, i, itemErrors);
+    }
+    if (!conflictErrors.isEmpty()) {
+      throw new ConflictException("Conflicts occurred when trying to create the horses", conflictErrors);
+    }
+    return references;
+  }
+
+  /**
+   * Validates a batch of horses of an import, with all referenced owners and stored parents looked up in one query.
+   * Parents given by reference are only checked for their format, they are validated by
+   * {@link #validateImportedParents(ParentLink)} once the whole import is read.
+   *
+   * @param items the horses to import
+   * @return the errors of each horse, in the same order as {@code items}, empty for valid horses
+   */
+  public List<List<String>> validateForImport(List<HorseBatchItemDto> items) {
+    LOG.trace("validateForImport({} horses)", items.size());
+
+    // validation errors
+    List<List<String>> errors = new ArrayList<>(items.size());
+    Set<Long> ownerIds = new HashSet<>();
+    Set<Long> horseIds = new HashSet<>();
+    for (HorseBatchItemDto item : items) {
+      List<String> itemErrors = new ArrayList<>();
+      if (item == null || item.horse() == null) {
+        itemErrors.add("No horse given");
+      } else {
+        var horse = item.horse();
+        validateName(itemErrors, horse.name());
+        validateDescription(itemErrors, horse.description());
+        validateDateOfBirth(itemErrors, horse.dateOfBirth());
+        validateSex(itemErrors, horse.sex());
+        validateRef(itemErrors, item.ref(), "Reference");
+        validateRef(itemErrors, item.motherRef(), "Mother reference");
+        validateRef(itemErrors, item.fatherRef(), "Father reference");
+        if (item.motherRef() != null && horse.motherId() != null) {
+          itemErrors.add("The mother is given both by ID and by reference");
+        }
+        if (item.fatherRef() != null && horse.fatherId() != null) {
+          itemErrors.add("The father is given both by ID and by reference");
+        }
+        validateDifferentParents(itemErrors, horse.motherId(), horse.fatherId());
+        if (item.motherRef() != null && item.motherRef().equals(item.fatherRef())) {
+          itemErrors.add("Mother and father cannot be the same horse");
+        }
+        Stream.of(horse.ownerId()).filter(Objects::nonNull).forEach(ownerIds::add);
+        Stream.of(horse.motherId(), horse.fatherId()).filter(Objects::nonNull).forEach(horseIds::add);
+      }
+      errors.add(itemErrors);
+    }
+
+    // conflict errors, of the otherwise valid horses
+    BatchReferences references = horseDao.getBatchReferences(ownerIds, horseIds);
+    for (int i = 0; i < items.size(); i++) {
+      List<String> itemErrors = errors.get(i);
+      if (itemErrors.isEmpty()) {
+        var horse = items.get(i).horse();
+        if (horse.ownerId() != null && !references.ownerIds().contains(horse.ownerId())) {
+          itemErrors.add("The owner of a horse must exist");
+        }
+        validateBatchParent(itemErrors, null, horse.motherId(), Sex.FEMALE, horse.dateOfBirth(), null, references);
+        validateBatchParent(itemErrors, null, horse.fatherId(), Sex.MALE, horse.dateOfBirth(), null, references);
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * Validates the parents of an imported horse, that are given by reference, once all horses of the import are created.
+   *
+   * @param link the horse and its parents
+   * @return the errors, empty if the parents can be set
+   */
+  public List<String> validateImportedParents(ParentLink link) {
+    LOG.trace("validateImportedParents({})", link);
+
+    List<String> errors = new ArrayList<>();
+    validateImportedParent(errors, link.horseId(), link.mother(), Sex.FEMALE, link.dateOfBirth());
+    validateImportedParent(errors, link.horseId(), link.father(), Sex.MALE, link.dateOfBirth());
+    validateDifferentParents(errors, link.mother().id(), link.father().id());
+    return errors;
+  }
+
+  private void validateImportedParent(List<String> errors, long horseId, Parent parent, Sex sexToCheck, LocalDate birthdayToCheck) {
+    LOG.trace("validateImportedParent({}, {}, {}, {}, {})", errors, horseId, parent, sexToCheck, birthdayToCheck);
+
+    String parentIdentifier = (sexToCheck == Sex.MALE) ? "father" : "mother";
+    if (parent.ref() == null) {
+      return;
+    }
+    if (parent.id() == null) {
+      errors.add("The %s reference '%s' does not refer to a horse of the import".formatted(parentIdentifier, parent.ref()));
+    } else if (parent.id() == horseId) {
+      errors.add("The horse cannot be its own parent");
+    } else {
+      validateParent(errors, parent.id(), parent.sex(), parent.dateOfBirth(), sexToCheck, birthdayToCheck);
+    }
+  }
+
+  private void validateRef(List<String> errors, String ref, String refIdentifier) {
+    LOG.trace("validateRef({}, {}, {})", errors, ref, refIdentifier);
+
+    if (ref != null && ref.length() > 255) {
+      errors.add(refIdentifier + " too long: longer than 255 characters");
+    }
+  }
+
+  private void validateParentRef(List<String> errors, String parentRef, Long parentId, String parentIdentifier, HorseBatch batch) {
+    LOG.trace("validateParentRef({}, {}, {}, {})", errors, parentRef, parentId, parentIdentifier);
+
+    if (parentRef != null) {
+      if (parentId != null) {
+        errors.add("The " + parentIdentifier + " is given both by ID and by reference");
+      }
+      if (batch.indexOf(parentRef) == null) {
+        errors.add("The %s reference '%s' does not refer to a horse of the batch".formatted(parentIdentifier, parentRef));
+      }
+    }
+  }
+
+  private void validateBatchParent(List<String> errors, String parentRef, Long parentId, Sex sexToCheck, LocalDate birthdayToCheck,
+                                   HorseBatch batch, BatchReferences references) {
+    LOG.trace("validateBatchParent({}, {}, {}, {}, {})", errors, parentRef, parentId, sexToCheck, birthdayToCheck);
+
+    if (parentRef != null) {
+      var parent = batch.item(batch.indexOf(parentRef)).horse();
+      // the parent has no ID yet, any non-null value marks it as given
+      validateParent(errors, (long) batch.indexOf(parentRef), parent.sex(), parent.dateOfBirth(), sexToCheck, birthdayToCheck);
+    } else {
+      var parent = parentId == null ? null : references.horses().get(parentId);
+      validateParent(errors, parentId, parent == null ? null : parent.getSex(), parent == null ? null : parent.getDateOfBirth(),
+          sexToCheck, birthdayToCheck);
+    }
+  }
+
+  private void addItemErrors(List<String> errors, int index, List<String> itemErrors) {
+    for (String error : itemErrors) {
+      errors.add("horses[%d]: %s".formatted(index, error));
+    }
+  }
+
   private void validateName(List<String> errors, String name) {
     LOG.trace("validateName({}, {})", errors, name);
 
@@ -154,15 +381,11 @@ public class HorseValidator {
     }
   }
 
-  private void validateOwner(List<String> errors, Long ownerId) {
+  private void validateOwner(List<String> errors, Long ownerId, ValidationSnapshot snapshot) {
     LOG.trace("validateOwner({}, {})", errors, ownerId);
 
-    if (ownerId != null) {
-      try {
-        ownerDao.getById(ownerId);
-      } catch (NotFoundException e) {
-        errors.add("The owner of a horse must exist");
-      }
+    if (ownerId != null && !snapshot.ownerExists()) {
+      errors.add("The owner of a horse must exist");
     }
   }
 
@@ -174,24 +397,22 @@ public class HorseValidator {
     }
   }
 
-  private void validateParent(List<String> errors, Long parentId, Sex sexToCheck, LocalDate birthdayToCheck) {
+  private void validateParent(List<String> errors, Long parentId, Sex parentSex, LocalDate parentDateOfBirth, Sex sexToCheck, LocalDate birthdayToCheck) {
     LOG.trace("validateParent({}, {}, {}, {})", errors, parentId, sexToCheck, birthdayToCheck);
 
     String parentIdentifier = (sexToCheck == Sex.MALE) ? "father" : "mother";
 
-    try {
-      if (parentId != null) {
-        Horse parent = horseDao.getById(parentId);
-
-        if (parent.getSex() != sexToCheck) {
+    if (parentId != null) {
+      if (parentSex == null) {
+        errors.add("The " + parentIdentifier + " of a horse must exist");
+      } else {
+        if (parentSex != sexToCheck) {
           errors.add("The " + parentIdentifier + " horse must be " + sexToCheck.toString().toLowerCase());
         }
-        if (parent.getDateOfBirth().isAfter(birthdayToCheck)) {
+        if (parentDateOfBirth.isAfter(birthdayToCheck)) {
           errors.add("The horse cannot be older than it's " + parentIdentifier);
         }
       }
-    } catch (NotFoundException e) {
-      errors.add("The " + parentIdentifier + " of a horse must exist");
     }
   }
 }
@@ -9,6 +9,10 @@ import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.mapper.OwnerMapper;
 import at.ac.tuwien.sepm.assignment.individual.persistence.OwnerDao;
 import at.ac.tuwien.sepm.assignment.individual.service.OwnerService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -17,8 +21,9 @@ import org.springframework.web.bind.annotation.ResponseStatus;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,35 +34,52 @@ public class OwnerServiceImpl implements OwnerService {
   private final OwnerDao dao;
   private final OwnerMapper mapper;
   private final OwnerValidator validator;
+  // owners are read on nearly every horse request, but hardly ever change
+  private final Cache<Long, OwnerDto> cache;
 
-  public OwnerServiceImpl(OwnerDao dao, OwnerMapper mapper, OwnerValidator validator) {
+  public OwnerServiceImpl(OwnerDao dao, OwnerMapper mapper, OwnerValidator validator, CacheProperties cacheProperties, MeterRegistry meterRegistry) {
     this.dao = dao;
     this.mapper = mapper;
     this.validator = validator;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(cacheProperties.owners().maximumSize())
+        .recordStats()
+        .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache, "owners");
   }
 
   @Override
   public OwnerDto getById(long id) throws NotFoundException {
     LOG.trace("getById({})", id);
 
-    return mapper.entityToDto(dao.getById(id));
+    OwnerDto owner = cache.getIfPresent(id);
+    if (owner == null) {
+      owner = mapper.entityToDto(dao.getById(id));
+      cache.put(id, owner);
+    }
+    return owner;
   }
 
   @Override
   public Map<Long, OwnerDto> getAllById(Collection<Long> ids) throws NotFoundException {
     LOG.trace("getAllById({})", ids);
 
-    Map<Long, OwnerDto> owners = dao.getAllById(ids)
-        .stream()
-        .map(mapper::entityToDto)
-        .collect(Collectors.toUnmodifiableMap(OwnerDto::id, Function.identity()));
+    Map<Long, OwnerDto> owners = new HashMap<>(cache.getAllPresent(ids));
+    if (owners.size() < ids.size()) {
+      var misses = ids.stream().filter(id -> !owners.containsKey(id)).collect(Collectors.toUnmodifiableSet());
+      for (var owner : dao.getAllById(misses)) {
+        var dto = mapper.entityToDto(owner);
+        cache.put(dto.id(), dto);
+        owners.put(dto.id(), dto);
+      }
+    }
 
     for (final var id : ids) {
       if (!owners.containsKey(id)) {
         throw new NotFoundException("Owner with ID %d not found".formatted(id));
       }
     }
-    return owners;
+    return Collections.unmodifiableMap(owners);
   }
 
   @Override
@@ -73,6 +95,8 @@ public class OwnerServiceImpl implements OwnerService {
     LOG.trace("create({})", newOwner);
 
     validator.validateForCreate(newOwner);
-    return mapper.entityToDto(dao.create(newOwner));
+    var created = mapper.entityToDto(dao.create(newOwner));
+    cache.invalidate(created.id());
+    return created;
   }
 }
@@ -0,0 +1,255 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the parent relation of all horses, used to walk family-trees without querying the database.
+ * <p>
+ * The parents are kept in an open addressing hash table of primitive {@code long} arrays, so a horse takes
+ * 32 bytes and a walk does not allocate per visited horse. The index is built when the application is ready
+ * and kept up to date by {@link HorseServiceImpl}, changes are applied after their transaction commits.
+ * Every entry carries the version of the horse it was read from. Changes, that reach the index after a newer one of the same horse
+ * (e.g. of two concurrent updates, that commit in one order and are applied in the other), are ignored.
+ * Removed horses are kept as tombstones, so a late change can't bring them back.
+ * While it is not built, or if it does not know a horse, it answers {@code null}, and callers fall back to the database.
+ * It is only active if {@link PedigreeIndexProperties#enabled()} is set.
+ * </p>
+ */
+@Component
+public class PedigreeIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  // never a valid ID, marks empty slots and unknown parents
+  private static final long NONE = Long.MIN_VALUE;
+  // version of removed horses, newer than any version they had
+  private static final long REMOVED = Long.MAX_VALUE;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final HorseDao horseDao;
+  private final boolean enabled;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private long[] ids;
+  private long[] mothers;
+  private long[] fathers;
+  private long[] versions;
+  private int size;
+  private boolean ready;
+
+  public PedigreeIndex(HorseDao horseDao, PedigreeIndexProperties properties) {
+    this.horseDao = horseDao;
+    this.enabled = properties.enabled();
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Loads the parents of all horses from the persistent data store, replacing the current content.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void rebuild() {
+    LOG.trace("rebuild()");
+    if (!enabled) {
+      return;
+    }
+
+    long start = System.nanoTime();
+    lock.writeLock().lock();
+    try {
+      ready = false;
+      allocate(INITIAL_CAPACITY);
+      horseDao.forEachParentage(this::store);
+      ready = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    LOG.info("Built pedigree index of {} horses in {} ms", size, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Collects the IDs of the horse {@code id} and its ancestors up to {@code generations} generations
+   * (the horse itself is the first generation).
+   * Parents, that are not stored anymore, are skipped.
+   *
+   * @param id          the ID of the horse
+   * @param generations the number of generations to collect, at least 1
+   * @return the distinct IDs in ascending order, or null if the index is not available or does not know the horse
+   */
+  public long[] ancestors(long id, int generations) {
+    lock.readLock().lock();
+    try {
+      if (!ready || !known(slot(id))) {
+        return null;
+      }
+
+      long[] result = {id};
+      long[] generation = {id};
+      for (int i = 1; i < generations && generation.length > 0; i++) {
+        long[] parents = new long[generation.length * 2];
+        int count = 0;
+        for (long child : generation) {
+          int slot = slot(child);
+          if (known(slot)) {
+            count = addKnown(parents, count, mothers[slot]);
+            count = addKnown(parents, count, fathers[slot]);
+          }
+        }
+        generation = distinct(parents, count);
+
+        long[] merged = Arrays.copyOf(result, result.length + generation.length);
+        System.arraycopy(generation, 0, merged, result.length, generation.length);
+        result = merged;
+      }
+      // with inbreeding, a horse can appear in several generations
+      return distinct(result, result.length);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Stores (or replaces) the parents of a horse, once the current transaction commits.
+   * If the index already knows a newer version of the horse, the parents are ignored.
+   *
+   * @param id       the ID of the horse
+   * @param motherId the ID of its mother, may be null
+   * @param fatherId the ID of its father, may be null
+   * @param version  the version of the horse, that has these parents
+   */
+  public void put(long id, Long motherId, Long fatherId, long version) {
+    LOG.trace("put({}, {}, {}, {})", id, motherId, fatherId, version);
+    afterCommit(() -> {
+      lock.writeLock().lock();
+      try {
+        store(id, motherId, fatherId, version);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  /**
+   * Removes a horse, once the current transaction commits.
+   * References of its children are not touched, as removed horses are skipped during walks anyway.
+   * The horse is kept as a tombstone, so changes of it, that are applied later, are ignored.
+   *
+   * @param id the ID of the horse
+   */
+  public void remove(long id) {
+    LOG.trace("remove({})", id);
+    afterCommit(() -> {
+      lock.writeLock().lock();
+      try {
+        store(id, null, null, REMOVED);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    });
+  }
+
+  private void afterCommit(Runnable change) {
+    if (!enabled) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          change.run();
+        }
+      });
+    } else {
+      change.run();
+    }
+  }
+
+  private int addKnown(long[] parents, int count, long parent) {
+    if (parent != NONE && known(slot(parent))) {
+      parents[count++] = parent;
+    }
+    return count;
+  }
+
+  private static long[] distinct(long[] values, int count) {
+    Arrays.sort(values, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (distinct == 0 || values[distinct - 1] != values[i]) {
+        values[distinct++] = values[i];
+      }
+    }
+    return Arrays.copyOf(values, distinct);
+  }
+
+  private boolean known(int slot) {
+    return ids[slot] != NONE && versions[slot] != REMOVED;
+  }
+
+  // must be called with the write lock held
+  private void store(long id, Long motherId, Long fatherId, long version) {
+    if ((size + 1) * 2L > ids.length) {
+      resize(ids.length * 2);
+    }
+    int slot = slot(id);
+    if (ids[slot] == NONE) {
+      ids[slot] = id;
+      size++;
+    } else if (versions[slot] >= version) {
+      return;
+    }
+    mothers[slot] = motherId == null ? NONE : motherId;
+    fathers[slot] = fatherId == null ? NONE : fatherId;
+    versions[slot] = version;
+  }
+
+  private int slot(long id) {
+    int mask = ids.length - 1;
+    int slot = hash(id) & mask;
+    while (ids[slot] != NONE && ids[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(long id) {
+    long mixed = id * 0x9e3779b97f4a7c15L;
+    return (int) (mixed ^ (mixed >>> 32));
+  }
+
+  private void resize(int capacity) {
+    long[] oldIds = ids;
+    long[] oldMothers = mothers;
+    long[] oldFathers = fathers;
+    long[] oldVersions = versions;
+    allocate(capacity);
+    for (int i = 0; i < oldIds.length; i++) {
+      if (oldIds[i] != NONE) {
+        int slot = slot(oldIds[i]);
+        ids[slot] = oldIds[i];
+        mothers[slot] = oldMothers[i];
+        fathers[slot] = oldFathers[i];
+        versions[slot] = oldVersions[i];
+        size++;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    ids = new long[capacity];
+    mothers = new long[capacity];
+    fathers = new long[capacity];
+    versions = new long[capacity];
+    Arrays.fill(ids, NONE);
+    size = 0;
+  }
+}
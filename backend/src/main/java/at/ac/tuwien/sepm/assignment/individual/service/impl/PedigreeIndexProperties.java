@@ -0,0 +1,16 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration of the {@link PedigreeIndex}.
+ * All properties are bound from the {@code pedigree-index} prefix.
+ *
+ * @param enabled whether family-trees are walked in memory instead of by a recursive query
+ */
+@ConfigurationProperties("pedigree-index")
+public record PedigreeIndexProperties(
+    @DefaultValue("false") boolean enabled
+) {
+}
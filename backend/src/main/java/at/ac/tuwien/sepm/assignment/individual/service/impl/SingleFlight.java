@@ -0,0 +1,117 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets concurrent calls with the same key share one execution, instead of running e.g. the same query side by side.
+ * <p>
+ * The first call of a key runs, the calls that come while it is running wait for it and get its result,
+ * or the exception it threw. Results are not kept beyond that, so this is no cache:
+ * a call, that joins a running one, gets a result at most as old as the running call.
+ * Calls within a transaction always run on their own, as they may have to see its uncommitted changes.
+ * </p>
+ * <p>
+ * Calls are counted as {@code singleflight.calls}, tagged with the name of the flight
+ * and whether they were {@code executed} or {@code coalesced} into a running call.
+ * The number of running calls is published as {@code singleflight.in.flight}.
+ * </p>
+ *
+ * @param <K> type of the keys, identical calls must have equal keys
+ * @param <V> type of the results
+ */
+public class SingleFlight<K, V> {
+  private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+  private final Counter executed;
+  private final Counter coalesced;
+
+  /**
+   * Creates a single flight and registers its metrics.
+   *
+   * @param name          name of the flight, used as tag of the metrics
+   * @param meterRegistry registry to publish the metrics to
+   */
+  public SingleFlight(String name, MeterRegistry meterRegistry) {
+    this.executed = callCounter(name, "executed", meterRegistry);
+    this.coalesced = callCounter(name, "coalesced", meterRegistry);
+    Gauge.builder("singleflight.in.flight", flights, Map::size)
+        .description("The number of calls running, that identical calls can join")
+        .tag("flight", name)
+        .register(meterRegistry);
+  }
+
+  private static Counter callCounter(String name, String outcome, MeterRegistry meterRegistry) {
+    return Counter.builder("singleflight.calls")
+        .description("The number of calls, by whether they ran or shared the result of an identical running call")
+        .tag("flight", name)
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Runs {@code call}, unless a call with the same key is already running, whose result is returned instead.
+   *
+   * @param key  the key of the call
+   * @param call the call to run
+   * @return the result of {@code call} or of the running call with the same key
+   * @throws E if the call that ran failed
+   */
+  public <E extends Exception> V run(K key, Call<V, E> call) throws E {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      return call.call();
+    }
+
+    var flight = new CompletableFuture<V>();
+    var running = flights.putIfAbsent(key, flight);
+    if (running != null) {
+      coalesced.increment();
+      return await(running);
+    }
+
+    executed.increment();
+    try {
+      V result = call.call();
+      flight.complete(result);
+      return result;
+    } catch (Exception | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      flights.remove(key, flight);
+    }
+  }
+
+  // the running call has the same key, so it was made by the same code and can only have thrown an E or an unchecked exception
+  @SuppressWarnings("unchecked")
+  private static <V, E extends Exception> V await(CompletableFuture<V> running) throws E {
+    try {
+      return running.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw (E) e.getCause();
+    }
+  }
+
+  /**
+   * A call, whose result can be shared.
+   *
+   * @param <V> the type of the result
+   * @param <E> the exception thrown, if the call fails
+   */
+  @FunctionalInterface
+  public interface Call<V, E extends Exception> {
+    V call() throws E;
+  }
+}
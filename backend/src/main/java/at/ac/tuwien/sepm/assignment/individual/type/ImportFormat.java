@@ -0,0 +1,6 @@
+package at.ac.tuwien.sepm.assignment.individual.type;
+
+public enum ImportFormat {
+  CSV,
+  NDJSON
+}
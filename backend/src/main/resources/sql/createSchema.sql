@@ -3,7 +3,8 @@ CREATE TABLE IF NOT EXISTS owner
   id BIGINT AUTO_INCREMENT PRIMARY KEY,
   first_name VARCHAR(255) NOT NULL,
   last_name VARCHAR(255) NOT NULL,
-  email VARCHAR(255) UNIQUE
+  email VARCHAR(255) UNIQUE,
+  version BIGINT NOT NULL DEFAULT 1
 );
 
 CREATE TABLE IF NOT EXISTS horse
@@ -16,8 +17,58 @@ CREATE TABLE IF NOT EXISTS horse
   owner_id BIGINT REFERENCES owner(id),
   mother_id BIGINT REFERENCES horse(id) ON DELETE SET NULL,
   father_id BIGINT REFERENCES horse(id) ON DELETE SET NULL,
+  version BIGINT NOT NULL DEFAULT 1,
+  children_version BIGINT NOT NULL DEFAULT 1,
   CHECK (mother_id <> father_id),
   CHECK (id <> father_id),
   CHECK (id <> mother_id),
   CHECK (date_of_birth <= NOW())
 );
+
+-- the version is increased by every update of a row, the ETags of the REST API are derived from it,
+-- databases created before it existed get it added here
+ALTER TABLE owner ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+ALTER TABLE horse ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+-- the children version is increased by every child linked to the horse, without changing the horse for its readers,
+-- a new sex or date of birth is only written, if the horse still has the children it was validated with
+ALTER TABLE horse ADD COLUMN IF NOT EXISTS children_version BIGINT NOT NULL DEFAULT 1;
+
+-- owner_id, mother_id and father_id need no explicit index,
+-- H2 backs every foreign key column with an index of its own
+-- the oldest child of a horse is the first entry of these, no matter how many children it has
+CREATE INDEX IF NOT EXISTS horse_mother_id_date_of_birth_idx ON horse (mother_id, date_of_birth);
+CREATE INDEX IF NOT EXISTS horse_father_id_date_of_birth_idx ON horse (father_id, date_of_birth);
+CREATE INDEX IF NOT EXISTS horse_date_of_birth_idx ON horse (date_of_birth);
+CREATE INDEX IF NOT EXISTS horse_sex_date_of_birth_idx ON horse (sex, date_of_birth);
+
+-- sort orders of the paged searches, a page continues on the index right after the last row of the previous one
+CREATE INDEX IF NOT EXISTS horse_name_id_idx ON horse (name, id);
+CREATE INDEX IF NOT EXISTS owner_last_name_first_name_id_idx ON owner (last_name, first_name, id);
+
+-- trigram index for the substring search on horse names (field 0) and descriptions (field 1),
+-- maintained by HorseTrigramTrigger
+CREATE TABLE IF NOT EXISTS horse_trigram
+(
+  field TINYINT NOT NULL,
+  trigram VARCHAR(3) NOT NULL,
+  horse_id BIGINT NOT NULL REFERENCES horse(id) ON DELETE CASCADE,
+  PRIMARY KEY (field, trigram, horse_id)
+);
+CREATE TRIGGER IF NOT EXISTS horse_trigram_trigger AFTER INSERT, UPDATE ON horse FOR EACH ROW
+  CALL 'at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseTrigramTrigger';
+
+-- horses of running imports, that refer to other horses of the same file or can be referred to,
+-- kept until the whole file is read and the parents can be linked, see HorseImportJdbcDao
+CREATE TABLE IF NOT EXISTS horse_import_row
+(
+  import_id BIGINT NOT NULL,
+  line BIGINT NOT NULL,
+  ref VARCHAR(255),
+  horse_id BIGINT NOT NULL REFERENCES horse(id) ON DELETE CASCADE,
+  mother_ref VARCHAR(255),
+  father_ref VARCHAR(255),
+  PRIMARY KEY (import_id, line)
+);
+-- a reference resolves to the first horse of the import with it
+CREATE INDEX IF NOT EXISTS horse_import_row_ref_line_idx ON horse_import_row (import_id, ref, line);
+CREATE SEQUENCE IF NOT EXISTS horse_import_seq;
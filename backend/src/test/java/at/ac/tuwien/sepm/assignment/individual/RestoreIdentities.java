@@ -0,0 +1,48 @@
+package at.ac.tuwien.sepm.assignment.individual;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.List;
+
+/**
+ * Resets the identities of the horse and owner tables after a test to the values they had before it.
+ * <p>
+ * H2 does not hand out identity values again, after the transaction, that used them, was rolled back,
+ * and the test classes share one in-memory database. Tests, that create horses or owners, are extended with this,
+ * so the following tests still get the IDs they would get on a fresh database.
+ * Rows, that such a test commits, have to be deleted by the test itself.
+ * </p>
+ */
+public class RestoreIdentities implements BeforeEachCallback, AfterEachCallback {
+  private static final List<String> TABLES = List.of("HORSE", "OWNER");
+  private static final String SQL_NEXT_ID = "SELECT IDENTITY_BASE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = ? AND IS_IDENTITY = 'YES'";
+  private static final String SQL_RESTART = "ALTER TABLE %s ALTER COLUMN id RESTART WITH %d";
+
+  @Override
+  public void beforeEach(ExtensionContext context) {
+    var jdbcTemplate = jdbcTemplate(context);
+    for (String table : TABLES) {
+      store(context).put(table, jdbcTemplate.queryForObject(SQL_NEXT_ID, Long.class, table));
+    }
+  }
+
+  @Override
+  public void afterEach(ExtensionContext context) {
+    var jdbcTemplate = jdbcTemplate(context);
+    for (String table : TABLES) {
+      jdbcTemplate.execute(SQL_RESTART.formatted(table, store(context).get(table, Long.class)));
+    }
+  }
+
+  private static JdbcTemplate jdbcTemplate(ExtensionContext context) {
+    return SpringExtension.getApplicationContext(context).getBean(JdbcTemplate.class);
+  }
+
+  private static ExtensionContext.Store store(ExtensionContext context) {
+    return context.getStore(ExtensionContext.Namespace.create(RestoreIdentities.class, context.getRequiredTestMethod()));
+  }
+}
@@ -0,0 +1,33 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the {@code benchmark} maven profile.
+ * Accepts the usual JMH command line (e.g. a benchmark regex or {@code -p horses=10000})
+ * and always attaches the GC profiler, so the allocation rate per operation
+ * ({@code gc.alloc.rate.norm}) is reported next to throughput and the sampled latency percentiles.
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {
+  }
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    var commandLine = new CommandLineOptions(args);
+    var options = new OptionsBuilder()
+        .parent(commandLine)
+        .addProfiler(GCProfiler.class)
+        .resultFormat(ResultFormatType.JSON)
+        .result("target/jmh-result.json")
+        .build();
+
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,59 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for the hot paths of {@link at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseJdbcDao}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HorseDaoBenchmark {
+
+  @Benchmark
+  public Collection<Horse> searchByName(SeededDatabase db) {
+    return db.horseDao.search(new HorseSearchDto("thun", null, null, null, null, 10, null));
+  }
+
+  @Benchmark
+  public Collection<Horse> searchBySexAndBirthday(SeededDatabase db) {
+    return db.horseDao.search(new HorseSearchDto(null, null, LocalDate.of(1995, 1, 1), Sex.FEMALE, null, 10, null));
+  }
+
+  @Benchmark
+  public Collection<Horse> searchByOwnerName(SeededDatabase db) {
+    return db.horseDao.search(new HorseSearchDto(null, null, null, null, "Huber", 10, null));
+  }
+
+  @Benchmark
+  public Map<Long, Horse> getGenerationsAsTree(SeededDatabase db, SampleCursor cursor) throws NotFoundException {
+    return db.horseDao.getGenerationsAsTree(cursor.next(db.sampleHorseIds), 5);
+  }
+
+  // the time until an export can send its first horse, which does not grow with the registry, if the query is executed lazily
+  @Benchmark
+  public HorseExportDto exportFirstHorse(SeededDatabase db) {
+    try (Stream<HorseExportDto> horses = db.horseDao.streamExport()) {
+      return horses.findFirst().orElseThrow();
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link at.ac.tuwien.sepm.assignment.individual.mapper.HorseMapper#entityToTreeDto}
+ * on family-trees loaded from the seeded database.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HorseMapperBenchmark {
+
+  @Param({"5", "10"})
+  public int generations;
+
+  private long rootId;
+  private Map<Long, Horse> tree;
+
+  @Setup(Level.Trial)
+  public void loadTree(SeededDatabase db) throws NotFoundException {
+    rootId = db.sampleHorseIds[0];
+    tree = db.horseDao.getGenerationsAsTree(rootId, generations);
+  }
+
+  @Benchmark
+  public HorseTreeDto entityToTreeDto(SeededDatabase db) {
+    return db.horseMapper.entityToTreeDto(tree.get(rootId), tree, 1, generations);
+  }
+}
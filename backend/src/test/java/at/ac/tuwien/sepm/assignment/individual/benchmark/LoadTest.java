@@ -0,0 +1,119 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Closed-loop load test of a running backend: every client sends its next request as soon as the previous one is answered.
+ * Each client runs on a virtual thread of its own, so the test itself is not limited by a thread pool.
+ * <p>
+ * Usage: {@code java -cp target/test-classes at.ac.tuwien.sepm.assignment.individual.benchmark.LoadTest <url> <clients,...> <seconds>},
+ * e.g. {@code LoadTest "http://localhost:8080/horses/-1/familytree?numberOfGenerations=5" 1000,5000,10000 60}.
+ * One line is printed per number of clients, with the throughput, the failed requests and the latency percentiles.
+ * Only responses with status 200 count as successful; errors include timeouts and refused connections.
+ * </p>
+ */
+public final class LoadTest {
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+  private LoadTest() {
+  }
+
+  public static void main(String[] args) throws InterruptedException, ExecutionException {
+    if (args.length != 3) {
+      System.err.println("Usage: LoadTest <url> <clients,...> <seconds>");
+      System.exit(2);
+    }
+    URI uri = URI.create(args[0]);
+    Duration duration = Duration.ofSeconds(Long.parseLong(args[2]));
+
+    System.out.printf("%8s %10s %8s %10s %9s %9s %9s %9s%n", "clients", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+    for (String clients : args[1].split(",")) {
+      print(Integer.parseInt(clients.strip()), run(uri, Integer.parseInt(clients.strip()), duration), duration);
+    }
+  }
+
+  private static Result run(URI uri, int clients, Duration duration) throws InterruptedException, ExecutionException {
+    HttpRequest request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+    try (var client = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+         var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      long deadline = System.nanoTime() + duration.toNanos();
+      List<Future<Result>> results = new ArrayList<>(clients);
+      for (int i = 0; i < clients; i++) {
+        results.add(executor.submit(() -> runClient(client, request, deadline)));
+      }
+      Result total = new Result();
+      for (Future<Result> result : results) {
+        total.add(result.get());
+      }
+      return total;
+    }
+  }
+
+  private static Result runClient(HttpClient client, HttpRequest request, long deadline) throws InterruptedException {
+    Result result = new Result();
+    while (System.nanoTime() < deadline) {
+      long start = System.nanoTime();
+      try {
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 200) {
+          result.record(System.nanoTime() - start);
+        } else {
+          result.errors++;
+        }
+      } catch (IOException e) {
+        result.errors++;
+      }
+    }
+    return result;
+  }
+
+  private static void print(int clients, Result result, Duration duration) {
+    long[] latencies = Arrays.copyOf(result.latencies, result.count);
+    Arrays.sort(latencies);
+    System.out.printf("%8d %10d %8d %10.0f %9.1f %9.1f %9.1f %9.1f%n",
+        clients, result.count, result.errors, result.count / (double) duration.toSeconds(),
+        percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999), percentile(latencies, 1));
+  }
+
+  private static double percentile(long[] sortedNanos, double quantile) {
+    if (sortedNanos.length == 0) {
+      return Double.NaN;
+    }
+    int index = (int) Math.ceil(quantile * sortedNanos.length) - 1;
+    return sortedNanos[Math.max(index, 0)] / 1e6;
+  }
+
+  /**
+   * Latencies in nanoseconds and errors of the requests of one or more clients.
+   */
+  private static final class Result {
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+
+    void record(long nanos) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = nanos;
+    }
+
+    void add(Result other) {
+      for (int i = 0; i < other.count; i++) {
+        record(other.latencies[i]);
+      }
+      errors += other.errors;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the hot paths of {@link at.ac.tuwien.sepm.assignment.individual.persistence.impl.OwnerJdbcDao}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class OwnerDaoBenchmark {
+  private static final int IDS_PER_LOOKUP = 25;
+
+  @Benchmark
+  public Collection<Owner> getAllById(SeededDatabase db, SampleCursor cursor) {
+    // same shape as a search page: a handful of distinct owners
+    List<Long> ids = new ArrayList<>(IDS_PER_LOOKUP);
+    for (int i = 0; i < IDS_PER_LOOKUP; i++) {
+      ids.add(cursor.next(db.sampleOwnerIds));
+    }
+    return db.ownerDao.getAllById(ids);
+  }
+}
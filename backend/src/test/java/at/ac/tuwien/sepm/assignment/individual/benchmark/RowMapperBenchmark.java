@@ -0,0 +1,70 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseRowMapper;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares mapping every row of a full scan of the horse table by column name,
+ * as {@link at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseJdbcDao} used to,
+ * with the {@link HorseRowMapper}, that resolves the column indexes once per result set.
+ * One operation is one scan of all {@code horses} rows, so the cost per row is the score divided by {@code horses};
+ * run with {@code -p horses=1000000} for the 1M row scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class RowMapperBenchmark {
+  private static final String SQL_SCAN = "SELECT * FROM horse";
+  private static final int FETCH_SIZE = 500;
+
+  @Benchmark
+  public void scanByColumnName(SeededDatabase db, Blackhole blackhole) {
+    scan(db, RowMapperBenchmark::mapByColumnName, blackhole);
+  }
+
+  @Benchmark
+  public void scanByColumnIndex(SeededDatabase db, Blackhole blackhole) {
+    scan(db, new HorseRowMapper(), blackhole);
+  }
+
+  private static void scan(SeededDatabase db, RowMapper<Horse> mapper, Blackhole blackhole) {
+    db.jdbcTemplate.query(con -> {
+      PreparedStatement stmt = con.prepareStatement(SQL_SCAN, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(FETCH_SIZE);
+      return stmt;
+    }, (RowCallbackHandler) result -> blackhole.consume(mapper.mapRow(result, result.getRow())));
+  }
+
+  /**
+   * The row mapper of the horse DAO before it was replaced by {@link HorseRowMapper}, without its trace logging.
+   */
+  private static Horse mapByColumnName(ResultSet result, int rownum) throws SQLException {
+    return new Horse()
+        .setId(result.getLong("id"))
+        .setName(result.getString("name"))
+        .setDescription(result.getString("description"))
+        .setDateOfBirth(result.getDate("date_of_birth").toLocalDate())
+        .setSex(Sex.valueOf(result.getString("sex")))
+        .setOwnerId(result.getObject("owner_id", Long.class))
+        .setMotherId(result.getObject("mother_id", Long.class))
+        .setFatherId(result.getObject("father_id", Long.class));
+  }
+}
@@ -0,0 +1,18 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread cursor cycling through the sample ids of a {@link SeededDatabase},
+ * so consecutive invocations do not hit the same (cached) row over and over.
+ */
+@State(Scope.Thread)
+public class SampleCursor {
+  private int position;
+
+  long next(long[] samples) {
+    position = (position + 1) % samples.length;
+    return samples[position];
+  }
+}
@@ -0,0 +1,93 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.mapper.HorseMapper;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorProperties;
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeGenerator;
+import at.ac.tuwien.sepm.assignment.individual.persistence.StreamingProperties;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseJdbcDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.OwnerJdbcDao;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * JMH state holding a file based H2 database seeded with {@code horses} horses.
+ * The pedigree is generated by {@link PedigreeGenerator} with a fixed seed.
+ * The database files are kept in {@code target/benchmark-db}, so the (slow) seeding
+ * only happens on the first run for each size.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+  private static final long SEED = 42L;
+  private static final int SAMPLE_SIZE = 1_024;
+
+  @Param({"10000", "1000000", "10000000"})
+  public int horses;
+
+  HikariDataSource dataSource;
+  JdbcTemplate jdbcTemplate;
+  HorseJdbcDao horseDao;
+  OwnerJdbcDao ownerDao;
+  HorseMapper horseMapper;
+
+  long[] sampleHorseIds;
+  long[] sampleOwnerIds;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl("jdbc:h2:./target/benchmark-db/horses-%d;LAZY_QUERY_EXECUTION=TRUE;INIT=RUNSCRIPT FROM 'classpath:sql/createSchema.sql'"
+        .formatted(horses));
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    var jdbcNamed = new NamedParameterJdbcTemplate(jdbcTemplate);
+    var transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    horseDao = new HorseJdbcDao(jdbcTemplate, jdbcNamed, transactionTemplate, new StreamingProperties(500));
+    ownerDao = new OwnerJdbcDao(jdbcTemplate, jdbcNamed);
+    horseMapper = new HorseMapper();
+
+    Long stored = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM horse WHERE id <= ?", Long.class, PedigreeGenerator.idOf(0));
+    if (stored == null || stored != horses) {
+      seed();
+    }
+
+    var random = new SplittableRandom(SEED);
+    sampleHorseIds = new long[SAMPLE_SIZE];
+    sampleOwnerIds = new long[SAMPLE_SIZE];
+    for (int i = 0; i < SAMPLE_SIZE; i++) {
+      // the youngest half of the registry has the deepest pedigrees
+      sampleHorseIds[i] = PedigreeGenerator.idOf(random.nextLong(horses / 2, horses));
+      sampleOwnerIds[i] = PedigreeGenerator.idOf(random.nextLong(owners()));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    dataSource.close();
+  }
+
+  private int owners() {
+    return Math.max(10, horses / 10);
+  }
+
+  private void seed() {
+    jdbcTemplate.update("DELETE FROM horse");
+    jdbcTemplate.update("DELETE FROM owner");
+
+    var properties = new DataGeneratorProperties(horses, owners(), SEED, 12, 1.3, 0.05, 1.5, 0.1, 64, 10_000,
+        Runtime.getRuntime().availableProcessors(), LocalDate.of(2023, 1, 1));
+    new PedigreeGenerator(jdbcTemplate, properties).generate();
+  }
+}
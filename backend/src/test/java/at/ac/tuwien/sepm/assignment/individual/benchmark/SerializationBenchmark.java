@@ -0,0 +1,107 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares writing and reading a family-tree as JSON, CBOR and Smile, the formats offered by the REST API.
+ * The tree is complete, so it has {@code 2^generations - 1} horses, the worst case for a family-tree request.
+ * The wire size of each format, plain and gzipped as the server compresses it, is printed once per trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+  @Param({"json", "cbor", "smile"})
+  public String format;
+
+  @Param({"8", "10"})
+  public int generations;
+
+  private ObjectWriter writer;
+  private ObjectReader reader;
+  private HorseTreeDto tree;
+  private byte[] serialized;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    JsonFactory factory = switch (format) {
+      case "json" -> new JsonFactory();
+      case "cbor" -> new CBORFactory();
+      case "smile" -> new SmileFactory();
+      default -> throw new IllegalArgumentException("Unknown format " + format);
+    };
+    // configured like the mappers of the REST API, which Spring Boot builds with dates as ISO strings
+    ObjectMapper mapper = Jackson2ObjectMapperBuilder.json()
+        .factory(factory)
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+    writer = mapper.writerFor(HorseTreeDto.class);
+    reader = mapper.readerFor(HorseTreeDto.class);
+    tree = tree(1, generations);
+    serialized = writer.writeValueAsBytes(tree);
+
+    System.out.printf("%n%s, %d generations: %d bytes, %d bytes gzipped%n", format, generations, serialized.length, gzipped(serialized));
+  }
+
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return writer.writeValueAsBytes(tree);
+  }
+
+  @Benchmark
+  public HorseTreeDto deserialize() throws IOException {
+    return reader.readValue(serialized);
+  }
+
+  /**
+   * Builds a complete family-tree, with the IDs numbered like a binary heap.
+   */
+  private static HorseTreeDto tree(long id, int generations) {
+    if (generations == 0) {
+      return null;
+    }
+    return new HorseTreeDto(id, "Horse number " + id, LocalDate.of(2020, 1, 1).minusDays(id),
+        id % 2 == 0 ? Sex.FEMALE : Sex.MALE,
+        tree(2 * id, generations - 1),
+        tree(2 * id + 1, generations - 1));
+  }
+
+  private static int gzipped(byte[] data) throws IOException {
+    var out = new ByteArrayOutputStream();
+    try (var gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.size();
+  }
+}
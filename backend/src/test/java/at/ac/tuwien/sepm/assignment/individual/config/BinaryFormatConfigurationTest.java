@@ -0,0 +1,101 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs against the embedded Tomcat, as the compression happens in its connector.
+ * Every response is compressed here, however small it is.
+ */
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"server.compression.min-response-size=1B", "management.server.port=0"})
+public class BinaryFormatConfigurationTest {
+
+  @LocalServerPort
+  int port;
+  @Autowired
+  ObjectMapper objectMapper;
+  private HttpClient client;
+
+  @BeforeEach
+  public void setup() {
+    client = HttpClient.newHttpClient();
+  }
+
+  @Test
+  @DisplayName("Owners are sent as CBOR or Smile, if the client asks for it, and as JSON otherwise")
+  public void binaryFormatsAreNegotiated() throws Exception {
+    var cbor = get("/owners", "application/cbor", null);
+    assertThat(cbor.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue("application/cbor");
+    OwnerDto[] owners = objectMapper.copyWith(new CBORFactory()).readValue(cbor.body(), OwnerDto[].class);
+    assertThat(owners).contains(new OwnerDto(-4L, "Maggie", "Nguyen", "maggie.nguyen@example.com"));
+
+    var smile = get("/owners", "application/x-jackson-smile", null);
+    assertThat(smile.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue("application/x-jackson-smile");
+    assertThat(objectMapper.copyWith(new SmileFactory()).readValue(smile.body(), OwnerDto[].class)).containsExactly(owners);
+
+    var json = get("/owners", null, null);
+    assertThat(json.headers().firstValue(HttpHeaders.CONTENT_TYPE)).hasValue(MediaType.APPLICATION_JSON_VALUE);
+    assertThat(objectMapper.readValue(json.body(), OwnerDto[].class)).containsExactly(owners);
+  }
+
+  @Test
+  @DisplayName("Family-trees are compressed for clients accepting gzip, with a weak ETag answered by 304")
+  public void familyTreesAreCompressed() throws Exception {
+    var response = get("/horses/-6/familytree", MediaType.APPLICATION_JSON_VALUE, "gzip");
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).hasValue("gzip");
+    String etag = response.headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+    assertThat(etag).startsWith("W/\"");
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+      assertThat(objectMapper.readValue(in, HorseTreeDto.class).id()).isEqualTo(-6L);
+    }
+
+    var notModified = client.send(request("/horses/-6/familytree", MediaType.APPLICATION_JSON_VALUE, "gzip")
+        .header(HttpHeaders.IF_NONE_MATCH, etag).build(), HttpResponse.BodyHandlers.ofByteArray());
+    assertThat(notModified.statusCode()).isEqualTo(304);
+
+    var identity = get("/horses/-6/familytree", MediaType.APPLICATION_JSON_VALUE, null);
+    assertThat(identity.headers().firstValue(HttpHeaders.CONTENT_ENCODING)).isEmpty();
+    assertThat(identity.headers().firstValue(HttpHeaders.ETAG)).hasValue(etag.substring(2));
+  }
+
+  private HttpResponse<byte[]> get(String path, String accept, String acceptEncoding) throws IOException, InterruptedException {
+    return client.send(request(path, accept, acceptEncoding).build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  private HttpRequest.Builder request(String path, String accept, String acceptEncoding) {
+    var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path));
+    if (accept != null) {
+      request.header(HttpHeaders.ACCEPT, accept);
+    }
+    if (acceptEncoding != null) {
+      request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+    return request;
+  }
+}
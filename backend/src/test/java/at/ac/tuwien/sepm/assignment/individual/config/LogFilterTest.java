@@ -0,0 +1,99 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LogFilterTest {
+
+  private final Logger logger = (Logger) LoggerFactory.getLogger(LogFilter.class);
+  private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+  private final LogFilter filter = new LogFilter(new RequestLogProperties(0.0, Map.of("/horses/{id}", 1.0), List.of("/swagger-ui/")));
+
+  @BeforeEach
+  public void attachAppender() {
+    appender.start();
+    logger.addAppender(appender);
+  }
+
+  @AfterEach
+  public void detachAppender() {
+    logger.detachAppender(appender);
+  }
+
+  @Test
+  @DisplayName("Successful requests are sampled by route, failed requests are always logged")
+  public void sampledByRouteAndStatus() throws Exception {
+    filter.doFilter(request("/horses", "/horses"), new MockHttpServletResponse(), new MockFilterChain());
+    assertThat(appender.list).isEmpty();
+
+    filter.doFilter(request("/horses/-1", "/horses/{id}"), new MockHttpServletResponse(), new MockFilterChain());
+    assertThat(appender.list).singleElement()
+        .extracting(ILoggingEvent::getFormattedMessage).asString()
+        .matches("<<< GET /horses/-1 status=200 time=\\d+\\.\\d{3}ms");
+
+    var notFound = new MockHttpServletResponse();
+    notFound.setStatus(404);
+    filter.doFilter(request("/horses", "/horses"), notFound, new MockFilterChain());
+    assertThat(appender.list).hasSize(2);
+
+    assertThrows(RuntimeException.class, () -> filter.doFilter(request("/horses", "/horses"), new MockHttpServletResponse(),
+        (req, res) -> {
+          throw new ServletException("failed");
+        }));
+    assertThat(appender.list).hasSize(3);
+    assertThat(appender.list.get(2).getFormattedMessage()).contains("status=500");
+  }
+
+  @Test
+  @DisplayName("Asynchronous requests are logged when they are complete, with their final status")
+  public void asyncRequestsLoggedOnCompletion() throws Exception {
+    var request = request("/horses/-1", "/horses/{id}");
+    request.setAsyncSupported(true);
+    var response = new MockHttpServletResponse();
+    filter.doFilter(request, response, (req, res) -> req.startAsync());
+    assertThat(appender.list).isEmpty();
+
+    response.setStatus(404);
+    ((MockAsyncContext) request.getAsyncContext()).complete();
+    assertThat(appender.list).singleElement()
+        .extracting(ILoggingEvent::getFormattedMessage).asString()
+        .matches("<<< GET /horses/-1 status=404 time=\\d+\\.\\d{3}ms");
+
+    var failing = request("/horses", "/horses");
+    failing.setAsyncSupported(true);
+    filter.doFilter(failing, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+    var context = (MockAsyncContext) failing.getAsyncContext();
+    for (AsyncListener listener : context.getListeners()) {
+      listener.onError(new AsyncEvent(context, new IllegalStateException("failed")));
+    }
+    context.complete();
+    assertThat(appender.list).hasSize(2);
+    assertThat(appender.list.get(1).getFormattedMessage()).contains("status=500");
+  }
+
+  private static MockHttpServletRequest request(String uri, String route) {
+    var request = new MockHttpServletRequest("GET", uri);
+    request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, route);
+    return request;
+  }
+}
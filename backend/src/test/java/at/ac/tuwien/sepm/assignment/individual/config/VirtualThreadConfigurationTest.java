@@ -0,0 +1,43 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles("test") // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"virtual-threads.enabled=true", "management.server.port=0"})
+public class VirtualThreadConfigurationTest {
+
+  @Autowired
+  ServletWebServerApplicationContext context;
+  @Autowired
+  @Qualifier("applicationTaskExecutor")
+  AsyncTaskExecutor applicationTaskExecutor;
+  @Autowired
+  TestRestTemplate restTemplate;
+
+  @Test
+  @DisplayName("Requests are served on virtual threads")
+  public void requestsAreServedOnVirtualThreads() throws Exception {
+    Executor executor = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector().getProtocolHandler().getExecutor();
+
+    assertThat(CompletableFuture.supplyAsync(() -> Thread.currentThread().isVirtual(), executor).get()).isTrue();
+    assertThat(applicationTaskExecutor.submit(() -> Thread.currentThread().isVirtual()).get()).isTrue();
+    assertThat(restTemplate.getForEntity("/horses", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+  }
+}
@@ -1,23 +1,33 @@
 package at.ac.tuwien.sepm.assignment.individual.persistence;
 
+import at.ac.tuwien.sepm.assignment.individual.RestoreIdentities;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.HorseTrigramBackfill;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.DefaultTransactionDefinition;
 
+import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -35,6 +45,12 @@ public class HorseDaoTest {
   HorseDao horseDao;
   @Autowired
   PlatformTransactionManager txm;
+  @Autowired
+  MeterRegistry meterRegistry;
+  @Autowired
+  HorseTrigramBackfill trigramBackfill;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
   TransactionStatus txstatus;
 
   @BeforeEach
@@ -90,12 +106,172 @@ public class HorseDaoTest {
     });
   }
 
+  @Test
+  @DisplayName("Look up the owners and horses referenced by a batch via DAO")
+  public void getBatchReferences() {
+    var references = horseDao.getBatchReferences(List.of(-1L, -4711L), List.of(-3L, -6L, -4711L));
+    assertThat(references.ownerIds()).containsExactly(-1L);
+    assertThat(references.horses()).containsOnlyKeys(-3L, -6L);
+    assertThat(references.horses().get(-6L).getSex()).isEqualTo(Sex.FEMALE);
+
+    assertThat(horseDao.getBatchReferences(List.of(), List.of()).horses()).isEmpty();
+  }
+
   @Test
   @DisplayName("Get an non-existing horse via DAO")
   public void getById() {
     assertThrows(NotFoundException.class, () -> horseDao.getById(-11L));
   }
 
+  @Test
+  @DisplayName("Calls of DAO methods are timed by outcome")
+  public void daoCallsAreTimed() throws Exception {
+    final long successes = daoCalls("getById", "SUCCESS");
+    final long errors = daoCalls("getById", "ERROR");
+
+    horseDao.getById(-1L);
+    assertThrows(NotFoundException.class, () -> horseDao.getById(-11L));
+
+    assertThat(daoCalls("getById", "SUCCESS")).isEqualTo(successes + 1);
+    assertThat(daoCalls("getById", "ERROR")).isEqualTo(errors + 1);
+  }
+
+  // the timers of a method are only registered on its first call
+  private long daoCalls(String method, String outcome) {
+    Timer timer = meterRegistry.find("dao.calls").tags("dao", "HorseDao", "method", method, "outcome", outcome).timer();
+    return timer == null ? 0 : timer.count();
+  }
+
+  @Test
+  @DisplayName("Get a horse with its parents via DAO")
+  public void getByIdWithParents() throws Exception {
+    assertThat(horseDao.getByIdWithParents(-6L)).containsOnlyKeys(-6L, -4L, -1L);
+    assertThat(horseDao.getByIdWithParents(-1L)).containsOnlyKeys(-1L);
+    assertThrows(NotFoundException.class, () -> horseDao.getByIdWithParents(-11L));
+  }
+
+  @Test
+  @DisplayName("Updates are only applied to the version of a horse, and the parents, they were made for, via DAO")
+  public void updateChecksVersions() throws Exception {
+    Horse bella = horseDao.getById(-6L);
+    var snapshot = horseDao.getValidationSnapshot(-6L, -4L, -4L, -1L);
+    assertThat(snapshot.version()).isEqualTo(bella.getVersion());
+    HorseDetailDto update = new HorseDetailDto(-6L, bella.getName(), "Updated Description", bella.getDateOfBirth(), bella.getSex(),
+        new OwnerDto(-4L, null, null, null), new HorseDetailDto(-4L, null, null, null, null, null, null, null),
+        new HorseDetailDto(-1L, null, null, null, null, null, null, null), bella.getVersion());
+
+    Horse updated = horseDao.update(update);
+    assertThat(updated.getVersion()).isEqualTo(bella.getVersion() + 1);
+    assertThat(horseDao.getById(-6L).getVersion()).isEqualTo(updated.getVersion());
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(update));
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(update, snapshot));
+
+    // the mother is born later than the new date of birth of the horse, after the horse was validated against her
+    final var current = horseDao.getValidationSnapshot(-6L, -4L, -4L, -1L);
+    Horse daisy = horseDao.getById(-4L);
+    horseDao.update(new HorseDetailDto(-4L, daisy.getName(), daisy.getDescription(), LocalDate.of(2019, 6, 1), daisy.getSex(), null, null, null));
+    HorseDetailDto bornLater = new HorseDetailDto(-6L, bella.getName(), "Updated Description", LocalDate.of(2019, 3, 1), bella.getSex(),
+        new OwnerDto(-4L, null, null, null), new HorseDetailDto(-4L, null, null, null, null, null, null, null),
+        new HorseDetailDto(-1L, null, null, null, null, null, null, null), bella.getVersion());
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(bornLater, current));
+    // the horse, that keeps its date of birth and parents, does not depend on them
+    assertThat(horseDao.update(update, current).getVersion()).isEqualTo(updated.getVersion() + 1);
+
+    assertThrows(NotFoundException.class, () -> horseDao.update(update.withId(-11L)));
+  }
+
+  @Test
+  @ExtendWith(RestoreIdentities.class)
+  @DisplayName("Linking a child to a horse conflicts with a concurrent change of the sex or date of birth of the horse via DAO")
+  public void linkingChildrenClaimsParents() throws Exception {
+    // Thunder is validated without children, when two colts of his are created concurrently
+    Horse thunder = horseDao.getById(-1L);
+    final var parentSnapshot = horseDao.getValidationSnapshot(-1L, null, null, null);
+    HorseCreateDto colt = new HorseCreateDto("Colt", null, LocalDate.of(2022, 4, 1), Sex.MALE, null, null,
+        new HorseDetailDto(-1L, null, null, null, null, null, null, null));
+    horseDao.create(colt);
+    horseDao.createAll(List.of(colt));
+    assertThat(horseDao.getById(-1L).getVersion()).isEqualTo(thunder.getVersion());
+    HorseDetailDto mare = new HorseDetailDto(-1L, thunder.getName(), thunder.getDescription(), thunder.getDateOfBirth(), Sex.FEMALE,
+        null, null, null, thunder.getVersion());
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(mare, parentSnapshot));
+    HorseDetailDto bornLater = new HorseDetailDto(-1L, thunder.getName(), thunder.getDescription(), LocalDate.of(2022, 6, 1), Sex.MALE,
+        null, null, null, thunder.getVersion());
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(bornLater, parentSnapshot));
+    // any other change does not depend on the children
+    HorseDetailDto renamed = new HorseDetailDto(-1L, "Thunderbolt", thunder.getDescription(), thunder.getDateOfBirth(), Sex.MALE,
+        null, null, null, thunder.getVersion());
+    assertThat(horseDao.update(renamed, parentSnapshot).getVersion()).isEqualTo(thunder.getVersion() + 1);
+
+    // the other way round, a colt is validated against Apollo, before Apollo becomes a mare
+    Horse apollo = horseDao.getById(-9L);
+    horseDao.update(new HorseDetailDto(-9L, apollo.getName(), apollo.getDescription(), apollo.getDateOfBirth(), Sex.FEMALE,
+        null, null, null, apollo.getVersion()), horseDao.getValidationSnapshot(-9L, null, null, null));
+    HorseCreateDto apollosColt = new HorseCreateDto("Colt", null, LocalDate.of(2022, 4, 1), Sex.MALE, null, null,
+        new HorseDetailDto(-9L, null, null, null, null, null, null, null));
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.create(apollosColt));
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.createAll(List.of(apollosColt)));
+    assertThat(horseDao.getAll()).hasSize(12);
+
+    // a horse claims a new parent, but not the parents it keeps
+    Horse bella = horseDao.getById(-6L);
+    Horse spirit = horseDao.getById(-5L);
+    final var spiritSnapshot = horseDao.getValidationSnapshot(-5L, null, null, null);
+    final var daisySnapshot = horseDao.getValidationSnapshot(-4L, null, null, null);
+    horseDao.update(new HorseDetailDto(-6L, bella.getName(), bella.getDescription(), bella.getDateOfBirth(), bella.getSex(),
+        new OwnerDto(-4L, null, null, null), new HorseDetailDto(-4L, null, null, null, null, null, null, null),
+        new HorseDetailDto(-5L, null, null, null, null, null, null, null), bella.getVersion()), horseDao.getValidationSnapshot(-6L, -4L, -4L, -5L));
+    assertThat(horseDao.getById(-5L).getVersion()).isEqualTo(spirit.getVersion());
+    assertThrows(OptimisticLockingFailureException.class, () -> horseDao.update(new HorseDetailDto(-5L, spirit.getName(),
+        spirit.getDescription(), spirit.getDateOfBirth(), Sex.FEMALE, null, null, null, spirit.getVersion()), spiritSnapshot));
+    Horse daisy = horseDao.getById(-4L);
+    assertDoesNotThrow(() -> horseDao.update(new HorseDetailDto(-4L, daisy.getName(), daisy.getDescription(), LocalDate.of(2017, 1, 1),
+        daisy.getSex(), null, new HorseDetailDto(-3L, null, null, null, null, null, null, null),
+        new HorseDetailDto(-2L, null, null, null, null, null, null, null), daisy.getVersion()), daisySnapshot));
+  }
+
+  @Test
+  @DisplayName("Updating a horse changes the version stamps of its details and the family-trees it is part of via DAO")
+  public void updateChangesVersionStamps() throws Exception {
+    final String detail = horseDao.getVersionStamp(-6L);
+    final String parentDetail = horseDao.getVersionStamp(-4L);
+    final String tree = horseDao.getGenerationsVersionStamp(-6L, 3);
+    final String shallowTree = horseDao.getGenerationsVersionStamp(-6L, 2);
+
+    // Romeo is the father of Daisy, the mother of Bella
+    horseDao.update(new HorseDetailDto(-2L, "Romeo", "Updated Description", LocalDate.of(2016, 8, 11), Sex.MALE, null, null, null));
+
+    assertThat(horseDao.getVersionStamp(-6L)).isEqualTo(detail);
+    assertThat(horseDao.getVersionStamp(-4L)).isNotEqualTo(parentDetail);
+    assertThat(horseDao.getGenerationsVersionStamp(-6L, 3)).isNotEqualTo(tree);
+    assertThat(horseDao.getGenerationsVersionStamp(-6L, 2)).isEqualTo(shallowTree);
+    assertThrows(NotFoundException.class, () -> horseDao.getVersionStamp(-11L));
+    assertThrows(NotFoundException.class, () -> horseDao.getGenerationsVersionStamp(-11L, 3));
+  }
+
+  @Test
+  @DisplayName("Get the validation snapshot of a horse via DAO")
+  public void getValidationSnapshot() {
+    // Spirit is the father of Max (2020-09-05) and Luna (2021-02-18)
+    var snapshot = horseDao.getValidationSnapshot(-5L, -1L, -3L, -2L);
+    assertThat(snapshot.exists()).isTrue();
+    assertThat(snapshot.ownerExists()).isTrue();
+    assertThat(snapshot.motherSex()).isEqualTo(Sex.FEMALE);
+    assertThat(snapshot.motherDateOfBirth()).isEqualTo(LocalDate.of(2014, 6, 2));
+    assertThat(snapshot.fatherSex()).isEqualTo(Sex.MALE);
+    assertThat(snapshot.fatherDateOfBirth()).isEqualTo(LocalDate.of(2016, 8, 11));
+    assertThat(snapshot.sex()).isEqualTo(Sex.MALE);
+    assertThat(snapshot.dateOfBirth()).isEqualTo(LocalDate.of(2015, 11, 22));
+    assertThat(snapshot.oldestChildName()).isEqualTo("Max");
+    assertThat(snapshot.oldestChildDateOfBirth()).isEqualTo(LocalDate.of(2020, 9, 5));
+
+    var empty = horseDao.getValidationSnapshot(null, -11L, null, null);
+    assertThat(empty.exists()).isFalse();
+    assertThat(empty.ownerExists()).isFalse();
+    assertThat(empty.motherSex()).isNull();
+    assertThat(empty.hasChildren()).isFalse();
+  }
+
   @Test
   @DisplayName("Create a new Horse via DAO")
   public void createAValidHorse() {
@@ -147,4 +323,76 @@ public class HorseDaoTest {
           .contains(-2L, -3L, -4L, -5L, -6L, -7L, -8L, -9L, -10L);
     });
   }
+
+  @Test
+  @DisplayName("Search horses by owner name and birthday via DAO")
+  public void searchByOwnerNameAndBirthday() {
+    assertThat(horseDao.search(new HorseSearchDto(null, null, null, null, "lee", null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-9L);
+    assertThat(horseDao.search(new HorseSearchDto("e", null, LocalDate.of(2017, 1, 1), Sex.MALE, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-2L);
+  }
+
+  @Test
+  @DisplayName("Search horses by name and description substrings via DAO")
+  public void searchByNameAndDescription() {
+    assertThat(horseDao.search(new HorseSearchDto("UND", null, null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-1L);
+    assertThat(horseDao.search(new HorseSearchDto(null, "wHite BLAZ", null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactlyInAnyOrder(-1L, -2L, -3L);
+  }
+
+  @Test
+  @DisplayName("Updating a horse updates its trigram index")
+  public void searchFindsUpdatedName() throws Exception {
+    horseDao.update(new HorseDetailDto(-2L, "Daisy", "Updated Description", LocalDate.of(2017, 3, 10), Sex.FEMALE, null, null, null));
+
+    assertThat(horseDao.search(new HorseSearchDto("updated desc", null, null, null, null, null, null))).isEmpty();
+    assertThat(horseDao.search(new HorseSearchDto(null, "updated desc", null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-2L);
+    assertThat(horseDao.search(new HorseSearchDto(null, "bay coat", null, null, null, null, null))).isEmpty();
+  }
+
+  @Test
+  @DisplayName("Backfill indexes the horses, that a stopped backfill left without trigrams")
+  public void backfillCompletesPartialIndex() {
+    // as if a backfill stopped after Thunder's row, but before Romeo's description
+    jdbcTemplate.update("DELETE FROM horse_trigram WHERE horse_id = -1");
+    jdbcTemplate.update("DELETE FROM horse_trigram WHERE horse_id = -2 AND field = 1");
+    assertThat(horseDao.search(new HorseSearchDto("UND", null, null, null, null, null, null))).isEmpty();
+
+    trigramBackfill.backfill();
+
+    assertThat(horseDao.search(new HorseSearchDto("UND", null, null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-1L);
+    assertThat(horseDao.search(new HorseSearchDto(null, "wHite BLAZ", null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactlyInAnyOrder(-1L, -2L, -3L);
+    assertThat(horseDao.search(new HorseSearchDto("Romeo", null, null, null, null, null, null)))
+        .extracting(Horse::getId)
+        .containsExactly(-2L);
+  }
+
+  @Test
+  @DisplayName("Streamed results are handed out before the rest of them is computed")
+  public void streamedResultsAreLazy() {
+    // the third row fails, a result, that is built completely before the first row is returned, fails right away
+    var query = "SELECT CASE WHEN x < 3 THEN x ELSE x / (x - x) END FROM SYSTEM_RANGE(1, 1000)";
+    try (var rows = jdbcTemplate.queryForStream(con -> {
+      var stmt = con.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stmt.setFetchSize(1);
+      return stmt;
+    }, (rs, rowNum) -> rs.getLong(1))) {
+      var iterator = rows.iterator();
+      assertThat(iterator.next()).isEqualTo(1L);
+      assertThat(iterator.next()).isEqualTo(2L);
+      assertThrows(DataAccessException.class, iterator::next);
+    }
+  }
 }
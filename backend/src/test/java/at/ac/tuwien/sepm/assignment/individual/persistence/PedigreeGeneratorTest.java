@@ -0,0 +1,83 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeGenerator.GeneratedHorse;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PedigreeGeneratorTest {
+  private static final LocalDate TODAY = LocalDate.of(2023, 3, 1);
+  private static final int HORSES = 5_000;
+
+  private static DataGeneratorProperties properties(long seed) {
+    return properties(seed, TODAY);
+  }
+
+  private static DataGeneratorProperties properties(long seed, LocalDate referenceDate) {
+    return new DataGeneratorProperties(HORSES, 100, seed, 10, 1.4, 0.2, 2.0, 0.1, 128, 1000, 4, referenceDate);
+  }
+
+  @Test
+  @DisplayName("Same seed generates the same pedigree")
+  public void sameSeedGeneratesSamePedigree() {
+    var first = new PedigreeGenerator(null, properties(7));
+    var second = new PedigreeGenerator(null, properties(7));
+    var other = new PedigreeGenerator(null, properties(8));
+
+    int differences = 0;
+    for (long index = 0; index < HORSES; index++) {
+      assertThat(second.horse(index)).isEqualTo(first.horse(index));
+      if (!other.horse(index).equals(first.horse(index))) {
+        differences++;
+      }
+    }
+    assertThat(differences).isGreaterThan(HORSES / 2);
+  }
+
+  @Test
+  @DisplayName("The pedigree only depends on the configured reference date, not on the day it is generated")
+  public void pedigreeDependsOnReferenceDateOnly() {
+    var generator = new PedigreeGenerator(null, properties(7));
+    // a whole leap year cycle later, so the days drawn for the birth dates fall on the same calendar days
+    var later = new PedigreeGenerator(null, properties(7, TODAY.plusYears(4)));
+
+    for (long index = 0; index < HORSES; index++) {
+      var horse = generator.horse(index);
+      assertThat(new PedigreeGenerator(null, properties(7)).horse(index)).isEqualTo(horse);
+      assertThat(later.horse(index).dateOfBirth()).isEqualTo(horse.dateOfBirth().plusYears(4));
+    }
+  }
+
+  @Test
+  @DisplayName("Generated parents have the right sex and are older than their foals")
+  public void generatedParentsAreValid() {
+    var generator = new PedigreeGenerator(null, properties(42));
+    Map<Long, GeneratedHorse> horses = new HashMap<>();
+    for (long index = 0; index < HORSES; index++) {
+      var horse = generator.horse(index);
+      horses.put(horse.id(), horse);
+    }
+
+    int withParents = 0;
+    for (var horse : horses.values()) {
+      assertThat(horse.dateOfBirth()).isBefore(TODAY);
+      assertThat(horse.description()).hasSize(128);
+      if (horse.motherId() != null) {
+        withParents++;
+        var mother = horses.get(horse.motherId());
+        var father = horses.get(horse.fatherId());
+        assertThat(mother.sex()).isEqualTo(Sex.FEMALE);
+        assertThat(father.sex()).isEqualTo(Sex.MALE);
+        assertThat(mother.dateOfBirth()).isBefore(horse.dateOfBirth());
+        assertThat(father.dateOfBirth()).isBefore(horse.dateOfBirth());
+      }
+    }
+    assertThat(withParents).isGreaterThan(HORSES / 2);
+  }
+}
@@ -0,0 +1,300 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.ContinuationToken;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Captures the H2 {@code EXPLAIN} output of the DAO queries and fails,
+ * if a query, that has a selective criterion, falls back to a scan of a whole table or index.
+ * Queries, that read a whole table by definition (e.g. {@code getAll}), or whose criterion no index can serve,
+ * are checked too, but are marked as scans explicitly with {@link #assertScan}.
+ */
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+public class QueryPlanTest {
+  private static final String TABLES = "(HORSE|OWNER|HORSE_TRIGRAM|HORSE_IMPORT_ROW)";
+  // the primary key indexes are named by H2, so a scan of one can't be told apart by its table
+  private static final Pattern PRIMARY_KEY_SCAN = Pattern.compile("/\\* PUBLIC\\.PRIMARY_KEY_[A-Z0-9_]+ \\*/");
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  NamedParameterJdbcTemplate jdbcNamed;
+
+  @Test
+  @DisplayName("Horse by ID uses the primary key")
+  public void horseByIdUsesIndex() {
+    assertNoTableScan(explain(HorseJdbcDao.SQL_SELECT_BY_ID, -1L));
+  }
+
+  @Test
+  @DisplayName("Horse with parents uses the primary key")
+  public void horseWithParentsUsesIndex() {
+    var plan = explain(HorseJdbcDao.SQL_SELECT_BY_ID_WITH_PARENTS, -6L);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("ID IN(H.ID, H.MOTHER_ID, H.FATHER_ID)");
+  }
+
+  @Test
+  @DisplayName("Horses by IDs use the primary key")
+  public void horsesByIdsUseIndex() {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + HorseJdbcDao.SQL_SELECT_ALL_BY_ID,
+        Map.of("ids", List.of(-1L, -2L, -3L)), String.class));
+    assertNoTableScan(plan);
+  }
+
+  @Test
+  @DisplayName("Validation snapshot uses primary keys and finds the oldest child on the parent indexes")
+  public void validationSnapshotUsesIndexes() {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + HorseJdbcDao.SQL_SELECT_VALIDATION_SNAPSHOT,
+        Map.of("id", -5L, "ownerId", -1L, "motherId", -3L, "fatherId", -2L), String.class));
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_MOTHER_ID_DATE_OF_BIRTH_IDX", "HORSE_FATHER_ID_DATE_OF_BIRTH_IDX");
+  }
+
+  @Test
+  @DisplayName("Children of a horse use the parent indexes")
+  public void childrenUseIndexes() {
+    assertNoTableScan(explain(HorseJdbcDao.SQL_SELECT_ALL_CHILDREN, -1L, -1L));
+  }
+
+  @Test
+  @DisplayName("Children of many horses use the parent indexes")
+  public void childrenOfManyUseIndexes() {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + HorseJdbcDao.SQL_SELECT_ALL_CHILDREN_OF,
+        Map.of("ids", List.of(-1L, -2L, -3L)), String.class));
+    assertNoTableScan(plan);
+    assertThat(plan).contains("MOTHER_ID IN(", "FATHER_ID IN(");
+  }
+
+  @Test
+  @DisplayName("Family-tree only accesses horses by their primary key")
+  public void familyTreeUsesIndex() {
+    var plan = explain(HorseJdbcDao.SQL_SELECT_GENERATION, -6L, 5L);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("ID IN(ANCESTOR.MOTHER_ID, ANCESTOR.FATHER_ID)");
+  }
+
+  @Test
+  @DisplayName("Search by birthday uses an index")
+  public void searchByBirthdayUsesIndex() {
+    assertNoTableScan(explainSearch(new HorseSearchDto(null, null, LocalDate.of(2018, 1, 1), null, null, 10, null)));
+  }
+
+  @Test
+  @DisplayName("Search by sex and birthday uses an index")
+  public void searchBySexAndBirthdayUsesIndex() {
+    assertNoTableScan(explainSearch(new HorseSearchDto(null, null, LocalDate.of(2018, 1, 1), Sex.FEMALE, null, 10, null)));
+  }
+
+  @Test
+  @DisplayName("Search by owner name looks up horses by owner")
+  public void searchByOwnerUsesIndex() {
+    var plan = explainSearch(new HorseSearchDto(null, null, null, null, "lee", 10, null));
+    // the owner names have to be scanned for the substring, but the far bigger horse table must not be
+    assertScan(plan, "OWNER");
+    assertThat(plan).doesNotContainPattern(scanOf("HORSE"));
+    assertThat(plan).contains("OWNER_ID IN(SELECT");
+  }
+
+  @Test
+  @DisplayName("Search by name alone uses the trigram index")
+  public void searchByNameUsesIndex() {
+    var plan = explainSearch(new HorseSearchDto("thun", null, null, null, null, 10, null));
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_TRIGRAM");
+  }
+
+  @Test
+  @DisplayName("First page of all horses reads the name index in order")
+  public void searchFirstPageReadsNameIndex() {
+    var plan = explainSearch(new HorseSearchDto(null, null, null, null, null, 10, null));
+    // without any criterion every horse matches, the index is read in the order of the result and stops after the page
+    assertScan(plan, "HORSE");
+    assertThat(plan).contains("HORSE_NAME_ID_IDX", "index sorted");
+  }
+
+  @Test
+  @DisplayName("Search by name and description uses the trigram index")
+  public void searchByNameAndDescriptionUsesIndex() {
+    var plan = explainSearch(new HorseSearchDto("thun", "white blaze", null, null, null, 10, null));
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_TRIGRAM");
+  }
+
+  @Test
+  @DisplayName("Search by a name shorter than a trigram falls back to the LIKE")
+  public void searchByShortNameFallsBackToLike() {
+    var params = new ArrayList<>();
+    assertThat(HorseJdbcDao.searchQuery(new HorseSearchDto("th", null, null, null, null, 10, null), params))
+        .doesNotContain("horse_trigram");
+    assertThat(params).containsExactly("th", 10);
+
+    // no index helps with a substring of less than three characters, the name index is scanned in the order of the result
+    var plan = explainSearch(new HorseSearchDto("th", null, null, null, null, 10, null));
+    assertScan(plan, "HORSE");
+    assertThat(plan).contains("HORSE_NAME_ID_IDX", "index sorted");
+  }
+
+  @Test
+  @DisplayName("Next page of all horses continues on the name index")
+  public void searchAfterUsesIndex() {
+    var plan = explainSearch(new HorseSearchDto(null, null, null, null, null, 10, ContinuationToken.after(-1L, "Luna")));
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_NAME_ID_IDX");
+  }
+
+  @Test
+  @DisplayName("Export reads horses in primary key order and joins owners by their primary key")
+  public void exportUsesIndexes() {
+    var plan = explain(HorseJdbcDao.SQL_SELECT_EXPORT);
+    // the whole horse table is read along its primary key by definition, but neither sorted in memory nor joined by scanning owners
+    assertThat(plan).containsPattern(PRIMARY_KEY_SCAN);
+    assertThat(plan).doesNotContainPattern(scanOf("OWNER"));
+    assertThat(plan).contains("index sorted");
+  }
+
+  @Test
+  @DisplayName("All horses and all parentages are read with a table scan")
+  public void getAllScansHorses() {
+    // both read every horse by definition
+    assertScan(explain(HorseJdbcDao.SQL_SELECT_ALL), "HORSE");
+    assertScan(explain(HorseJdbcDao.SQL_SELECT_ALL_PARENTAGES), "HORSE");
+  }
+
+  @Test
+  @DisplayName("Update checks the version and children version of the horse by its primary key")
+  public void updateUsesIndex() {
+    assertNoTableScan(explain(HorseJdbcDao.SQL_UPDATE + HorseJdbcDao.SQL_UPDATE_VERSION_CLAUSE + HorseJdbcDao.SQL_UPDATE_CHILDREN_VERSION_CLAUSE,
+        "Bella", null, LocalDate.of(2020, 1, 1), "FEMALE", null, -3L, -2L, -4L, 1L, 1L));
+  }
+
+  @Test
+  @DisplayName("Existence check, delete and claiming a parent use the primary key")
+  public void existsAndDeleteUseIndex() {
+    assertNoTableScan(explain(HorseJdbcDao.SQL_EXISTS, -1L));
+    assertNoTableScan(explain(HorseJdbcDao.SQL_DELETE, -1L));
+    var claim = explain(HorseJdbcDao.SQL_CLAIM_PARENT, -1L, "MALE", LocalDate.of(2020, 1, 1));
+    assertNoTableScan(claim);
+    assertThat(claim).containsPattern("PRIMARY_KEY_\\w+: ID = \\?1");
+  }
+
+  @Test
+  @DisplayName("Version stamps of details and family-trees use primary keys")
+  public void versionStampsUseIndexes() {
+    assertNoTableScan(explain(HorseJdbcDao.SQL_SELECT_DETAIL_VERSION, -6L));
+    var plan = explain(HorseJdbcDao.SQL_SELECT_GENERATION_VERSION, -6L, 5L);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("ID IN(ANCESTOR.MOTHER_ID, ANCESTOR.FATHER_ID)");
+  }
+
+  @Test
+  @DisplayName("References of a batch are looked up by primary keys")
+  public void batchReferencesUseIndexes() {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + HorseJdbcDao.SQL_SELECT_BATCH_REFERENCES,
+        Map.of("horseIds", List.of(-1L, -2L), "ownerIds", List.of(-1L, -2L)), String.class));
+    assertNoTableScan(plan);
+  }
+
+  @Test
+  @DisplayName("Parent links of an import resolve references on the reference index")
+  public void importParentLinksUseIndexes() {
+    var plan = explain(HorseImportJdbcDao.SQL_SELECT_PARENT_LINKS, 1L, 0L, 100);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_IMPORT_ROW_REF_LINE_IDX: IMPORT_ID = S.IMPORT_ID\n            AND REF = S.MOTHER_REF");
+    assertThat(plan).contains("HORSE_IMPORT_ROW_REF_LINE_IDX: IMPORT_ID = S.IMPORT_ID\n            AND REF = S.FATHER_REF");
+  }
+
+  @Test
+  @DisplayName("Duplicate references, parent updates and the cleanup of an import use indexes")
+  public void importStatementsUseIndexes() {
+    var plan = explain(HorseImportJdbcDao.SQL_SELECT_DUPLICATE_REFS, 1L, 100);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("HORSE_IMPORT_ROW_REF_LINE_IDX");
+    assertNoTableScan(explain(HorseImportJdbcDao.SQL_UPDATE_PARENTS, -1L, -2L, -4L));
+    assertNoTableScan(explain(HorseImportJdbcDao.SQL_DELETE_ROWS, 1L));
+  }
+
+  @Test
+  @DisplayName("First page of owners scans them for the name substring")
+  public void ownerSearchScansOwners() {
+    var plan = explain(OwnerJdbcDao.SQL_SELECT_SEARCH + OwnerJdbcDao.SQL_SELECT_SEARCH_ORDER_CLAUSE + OwnerJdbcDao.SQL_SELECT_SEARCH_LIMIT_CLAUSE,
+        "lee", 10);
+    // no index helps with a substring of the full name; the name index is read in the order of the result, so the scan
+    // stops after the first page of matches, and owners are few compared to horses
+    assertScan(plan, "OWNER");
+    assertThat(plan).contains("OWNER_LAST_NAME_FIRST_NAME_ID_IDX", "index sorted");
+  }
+
+  @Test
+  @DisplayName("Next page of all owners continues on the name index")
+  public void ownerSearchAfterUsesIndex() {
+    var plan = explain(OwnerJdbcDao.SQL_SELECT_SEARCH + OwnerJdbcDao.SQL_SELECT_SEARCH_AFTER_CLAUSE + OwnerJdbcDao.SQL_SELECT_SEARCH_ORDER_CLAUSE
+        + " LIMIT 10", null, "Lee", "Lee", "Alice", "Alice", -2L);
+    assertNoTableScan(plan);
+    assertThat(plan).contains("OWNER_LAST_NAME_FIRST_NAME_ID_IDX");
+  }
+
+  @Test
+  @DisplayName("Owner by ID uses the primary key")
+  public void ownerByIdUsesIndex() {
+    assertNoTableScan(explain(OwnerJdbcDao.SQL_SELECT_BY_ID, -1L));
+  }
+
+  @Test
+  @DisplayName("Owners by IDs use the primary key")
+  public void ownersByIdsUseIndex() {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + OwnerJdbcDao.SQL_SELECT_ALL,
+        Map.of("ids", List.of(-1L, -2L, -3L)), String.class));
+    assertNoTableScan(plan);
+  }
+
+  private String explainSearch(HorseSearchDto searchParameters) {
+    var params = new ArrayList<>();
+    var query = HorseJdbcDao.searchQuery(searchParameters, params);
+    return explain(query, params.toArray());
+  }
+
+  private String explain(String query, Object... params) {
+    return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + query, String.class, params));
+  }
+
+  private void assertNoTableScan(String plan) {
+    assertThat(plan)
+        .as("query plan must not scan a whole table or index")
+        .doesNotContainPattern(scanOf(TABLES))
+        .doesNotContainPattern(PRIMARY_KEY_SCAN);
+  }
+
+  /**
+   * Marks a scan of {@code table}, that is expected, as no index can narrow the query down.
+   */
+  private void assertScan(String plan, String table) {
+    assertThat(plan)
+        .as("query plan is expected to scan %s", table)
+        .containsPattern(scanOf(table));
+  }
+
+  /**
+   * Matches a table scan, or an index scan without any condition, i.e. a scan of the whole index.
+   */
+  private static Pattern scanOf(String table) {
+    return Pattern.compile("PUBLIC\\." + table + "\\.tableScan|/\\* PUBLIC\\." + table + "_[A-Z0-9_]*IDX \\*/");
+  }
+}
@@ -0,0 +1,87 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.HorseServiceImpl;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/**
+ * Runs against the embedded Tomcat, as only its asynchronous requests time out.
+ * The timeout of asynchronous requests is far shorter than the slow service here,
+ * which also takes longer than the second, in which Tomcat checks for timed out requests.
+ */
+@ActiveProfiles("test") // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {"spring.mvc.async.request-timeout=200ms", "bulkheads.export.stream-timeout=0", "management.server.port=0"})
+public class AsyncTimeoutTest {
+  private static final int HORSES = 5;
+  private static final long DELAY_MS = 500;
+
+  @LocalServerPort
+  int port;
+  @SpyBean
+  HorseServiceImpl service;
+  private HttpClient client;
+
+  @BeforeEach
+  public void setup() {
+    client = HttpClient.newHttpClient();
+  }
+
+  @Test
+  @DisplayName("Exports are streamed completely, even if they take longer than the timeout of asynchronous requests")
+  public void exportOutlivesRequestTimeout() throws Exception {
+    doAnswer(invocation -> LongStream.rangeClosed(1, HORSES).mapToObj(id -> {
+      sleep();
+      return new HorseExportDto(id, "Horse " + id, null, LocalDate.of(2020, 1, 1), Sex.FEMALE, null, null, null);
+    })).when(service).streamExport();
+
+    var response = get("/horses/export");
+    assertThat(response.statusCode()).isEqualTo(200);
+    // header and one line per horse
+    assertThat(response.body().lines()).hasSize(HORSES + 1).last().asString().startsWith(HORSES + ",");
+  }
+
+  @Test
+  @DisplayName("JSON responses computed in a bulkhead still fail with 503 after the timeout of asynchronous requests")
+  public void jsonResponsesTimeOut() throws Exception {
+    doAnswer(invocation -> LongStream.rangeClosed(1, HORSES).mapToObj(id -> {
+      sleep();
+      return null;
+    })).when(service).search(any());
+
+    assertThat(get("/horses").statusCode()).isEqualTo(503);
+  }
+
+  private HttpResponse<String> get(String path) throws Exception {
+    var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private static void sleep() {
+    try {
+      Thread.sleep(DELAY_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -1,6 +1,16 @@
 package at.ac.tuwien.sepm.assignment.individual.rest;
 
+import at.ac.tuwien.sepm.assignment.individual.RestoreIdentities;
+import at.ac.tuwien.sepm.assignment.individual.config.Bulkhead;
+import at.ac.tuwien.sepm.assignment.individual.config.BulkheadProperties;
+import at.ac.tuwien.sepm.assignment.individual.dto.ContinuationToken;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchItemDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseBatchResultDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantsTruncatedDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseExportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
@@ -10,7 +20,9 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
@@ -25,12 +37,23 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
@@ -46,6 +69,11 @@ public class HorseEndpointTest {
   ObjectMapper objectMapper;
   @Autowired
   PlatformTransactionManager txm;
+  @Autowired
+  @Qualifier("exportBulkhead")
+  Bulkhead exportBulkhead;
+  @Autowired
+  BulkheadProperties bulkheadProperties;
 
   TransactionStatus txstatus;
 
@@ -71,11 +99,15 @@ public class HorseEndpointTest {
   @Test
   @DisplayName("Get all horses via Endpoint")
   public void gettingAllHorses() throws Exception {
-    byte[] body = mockMvc
+    var result = mockMvc
         .perform(MockMvcRequestBuilders
             .get("/horses")
             .accept(MediaType.APPLICATION_JSON)
-        ).andExpect(status().isOk())
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    byte[] body = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
         .andReturn().getResponse().getContentAsByteArray();
 
     List<HorseListDto> horseResult = objectMapper.readerFor(HorseListDto.class).<HorseListDto>readValues(body).readAll();
@@ -96,6 +128,219 @@ public class HorseEndpointTest {
             tuple(-10L, "Misty"));
   }
 
+  @Test
+  @DisplayName("Page through all horses via Endpoint")
+  public void pagingThroughAllHorses() throws Exception {
+    List<String> names = new ArrayList<>();
+    String token = null;
+    int pages = 0;
+    do {
+      var request = MockMvcRequestBuilders
+          .get("/horses")
+          .param("limit", "4")
+          .accept(MediaType.APPLICATION_JSON);
+      if (token != null) {
+        request.param("after", token);
+      }
+      var result = mockMvc.perform(request).andExpect(request().asyncStarted()).andReturn();
+      var response = mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk()).andReturn().getResponse();
+
+      List<HorseListDto> page = objectMapper.readerFor(HorseListDto.class).<HorseListDto>readValues(response.getContentAsByteArray()).readAll();
+      assertThat(page.size()).isLessThanOrEqualTo(4);
+      page.forEach(horse -> names.add(horse.name()));
+      token = response.getHeader(Paging.CONTINUATION_TOKEN_HEADER);
+      pages++;
+    } while (token != null);
+
+    assertThat(pages).isEqualTo(3);
+    assertThat(names).containsExactly("Apollo", "Bella", "Daisy", "Luna", "Max", "Misty", "Romeo", "Sophie", "Spirit", "Thunder");
+  }
+
+  @Test
+  @DisplayName("Stream horses as newline delimited JSON via Endpoint")
+  public void streamingHorsesAsNdjson() throws Exception {
+    var result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses")
+            .param("sex", "FEMALE")
+            .accept(MediaType.APPLICATION_NDJSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    byte[] body = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsByteArray();
+
+    String[] lines = new String(body, StandardCharsets.UTF_8).split("\n");
+    List<HorseListDto> horses = new ArrayList<>();
+    for (String line : lines) {
+      horses.add(objectMapper.readValue(line, HorseListDto.class));
+    }
+    assertThat(horses)
+        .extracting(HorseListDto::name, HorseListDto::sex)
+        .containsExactly(tuple("Bella", Sex.FEMALE), tuple("Daisy", Sex.FEMALE), tuple("Luna", Sex.FEMALE),
+            tuple("Misty", Sex.FEMALE), tuple("Sophie", Sex.FEMALE));
+    assertThat(horses)
+        .filteredOn(horse -> horse.name().equals("Daisy"))
+        .extracting(HorseListDto::owner)
+        .containsOnlyNulls();
+  }
+
+  @Test
+  @DisplayName("Export all horses as gzip compressed CSV and as newline delimited JSON via Endpoint")
+  public void exportingHorses() throws Exception {
+    var result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/export")
+            .header("Accept-Encoding", "br;q=1.0, gzip;q=0.5")
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    var response = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("text/csv"))
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andReturn().getResponse();
+
+    String csv;
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+      csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    List<String> lines = csv.lines().toList();
+    assertThat(lines).hasSize(11);
+    assertThat(lines.get(0)).startsWith("id,name,description,date_of_birth,sex,owner_id");
+    assertThat(lines).contains("-10,Misty,Shy mare with a palomino coat and a long mane,2018-12-07,FEMALE,-10,Karen,Kim,karen.kim@example.com,-3,-2");
+
+    result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/export")
+            .accept(MediaType.APPLICATION_NDJSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    response = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(header().doesNotExist("Content-Encoding"))
+        .andReturn().getResponse();
+
+    List<HorseExportDto> horses = new ArrayList<>();
+    for (String line : response.getContentAsString(StandardCharsets.UTF_8).split("\n")) {
+      horses.add(objectMapper.readValue(line, HorseExportDto.class));
+    }
+    assertThat(horses)
+        .extracting(HorseExportDto::id)
+        .containsExactly(-10L, -9L, -8L, -7L, -6L, -5L, -4L, -3L, -2L, -1L);
+    assertThat(horses.get(4).owner()).isEqualTo(new OwnerDto(-4L, "Maggie", "Nguyen", "maggie.nguyen@example.com"));
+  }
+
+  @Test
+  @DisplayName("Stream the descendants of a horse generation by generation via Endpoint")
+  public void gettingDescendants() throws Exception {
+    var result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-2/descendants")
+            .param("generations", "2")
+            .accept(MediaType.APPLICATION_NDJSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    String body = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+    // exactly the maximum, but not cut off
+    assertThat(body).doesNotContain("truncated");
+    List<HorseDescendantDto> descendants = new ArrayList<>();
+    for (String line : body.split("\n")) {
+      descendants.add(objectMapper.readValue(line, HorseDescendantDto.class));
+    }
+    // Romeo is the father of Daisy and Misty, Daisy the mother of Bella, whose daughter Luna is one generation too far
+    assertThat(descendants)
+        .extracting(HorseDescendantDto::name, HorseDescendantDto::generation)
+        .containsExactlyInAnyOrder(tuple("Daisy", 1), tuple("Misty", 1), tuple("Bella", 2));
+    assertThat(descendants.get(2).motherId()).isEqualTo(-4L);
+
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses/-2/descendants")
+        .param("generations", "0")
+        .accept(MediaType.APPLICATION_NDJSON)
+    ).andExpect(status().isUnprocessableEntity());
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses/-11/descendants")
+        .accept(MediaType.APPLICATION_NDJSON)
+    ).andExpect(status().isNotFound());
+  }
+
+  @Test
+  @DisplayName("Descendants cut off after the maximum are followed by a marker line via Endpoint")
+  public void gettingTruncatedDescendants() throws Exception {
+    var result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-2/descendants")
+            .param("generations", "3")
+            .accept(MediaType.APPLICATION_NDJSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    String[] lines = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8).split("\n");
+
+    // Luna, in the third generation, is the fourth descendant with a maximum of three
+    assertThat(lines).hasSize(4);
+    assertThat(objectMapper.readValue(lines[3], HorseDescendantsTruncatedDto.class))
+        .isEqualTo(new HorseDescendantsTruncatedDto(true, 3));
+    for (int i = 0; i < 3; i++) {
+      assertThat(objectMapper.readTree(lines[i]).has("truncated")).isFalse();
+    }
+  }
+
+  @Test
+  @DisplayName("Requests to a full bulkhead are rejected with 503, while cheap requests are still served via Endpoint")
+  public void fullBulkheadRejectsRequests() throws Exception {
+    var release = new CountDownLatch(1);
+    List<Future<?>> blockers = new ArrayList<>();
+    try {
+      // take all threads and the whole queue of the export bulkhead
+      var pool = bulkheadProperties.export();
+      for (int i = 0; i < pool.threads() + pool.queueCapacity(); i++) {
+        blockers.add(exportBulkhead.submit(() -> {
+          release.await();
+          return null;
+        }));
+      }
+
+      mockMvc.perform(MockMvcRequestBuilders
+          .get("/horses/export")
+      ).andExpect(status().isServiceUnavailable())
+          .andExpect(header().string("Retry-After", "1"));
+      mockMvc.perform(MockMvcRequestBuilders
+          .get("/horses/-1")
+          .accept(MediaType.APPLICATION_JSON)
+      ).andExpect(status().isOk());
+    } finally {
+      release.countDown();
+      for (Future<?> blocker : blockers) {
+        blocker.get();
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Searching with a broken continuation token is a bad request")
+  public void searchingWithInvalidTokenReturns400() throws Exception {
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses")
+        .param("after", "not a token")
+    ).andExpect(status().isBadRequest());
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses")
+        .param("after", ContinuationToken.after(-1L, "Lee", "Alice").encode())
+    ).andExpect(status().isBadRequest());
+  }
+
   @Test
   @DisplayName("Trying to get a non existing url")
   public void gettingNonexistentUrlReturns404() throws Exception {
@@ -107,11 +352,15 @@ public class HorseEndpointTest {
   @Test
   @DisplayName("Get family tree with only 2 generations")
   public void gettingFamilyTreeWithLimit() throws Exception {
-    byte[] body = mockMvc
+    var result = mockMvc
         .perform(MockMvcRequestBuilders
             .get("/horses/-6/familytree?numberOfGenerations=2")
             .accept(MediaType.APPLICATION_JSON)
-        ).andExpect(status().isOk())
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    byte[] body = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
         .andReturn().getResponse().getContentAsByteArray();
 
     HorseTreeDto familyTree = objectMapper.readerFor(HorseTreeDto.class).readValue(body);
@@ -125,6 +374,90 @@ public class HorseEndpointTest {
     assertThat(familyTree.father().father()).isNull();
   }
 
+  @Test
+  @DisplayName("Details of a horse carry an ETag, that is answered with 304 until the horse changes via Endpoint")
+  public void gettingHorseConditionally() throws Exception {
+    var response = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andReturn().getResponse();
+    String etag = response.getHeader("ETag");
+    assertThat(etag).startsWith("\"").endsWith("\"");
+
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses/-6")
+        .header("If-None-Match", "\"other\", " + etag)
+        .accept(MediaType.APPLICATION_JSON)
+    ).andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", etag))
+        .andExpect(content().string(""));
+
+    // saving the horse unchanged is still an update, so the ETag changes
+    mockMvc.perform(MockMvcRequestBuilders
+        .put("/horses/-6")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(response.getContentAsByteArray())
+    ).andExpect(status().isOk());
+    String updatedEtag = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6")
+            .header("If-None-Match", etag)
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getHeader("ETag");
+    assertThat(updatedEtag).isNotEqualTo(etag);
+
+    mockMvc.perform(MockMvcRequestBuilders
+        .get("/horses/-11")
+        .header("If-None-Match", etag)
+        .accept(MediaType.APPLICATION_JSON)
+    ).andExpect(status().isNotFound());
+  }
+
+  @Test
+  @DisplayName("A family-tree carries an ETag, that is answered with 304 via Endpoint")
+  public void gettingFamilyTreeConditionally() throws Exception {
+    var result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6/familytree?numberOfGenerations=3")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    String etag = mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andReturn().getResponse().getHeader("ETag");
+
+    result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6/familytree?numberOfGenerations=3")
+            .header("If-None-Match", "W/" + etag)
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    // the grandparents of Bella are part of the deeper tree only
+    result = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6/familytree?numberOfGenerations=2")
+            .header("If-None-Match", etag)
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(etag)));
+  }
+
   @Test
   @DisplayName("Trying update an horse where conflicts would be")
   public void updateWithConflicts() throws Exception {
@@ -151,6 +484,96 @@ public class HorseEndpointTest {
             "Cannot change sex of horse with children");
   }
 
+  @Test
+  @DisplayName("Updating a horse, that was changed since it was read, fails with 409 via Endpoint")
+  public void updateStaleVersion() throws Exception {
+    byte[] read = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/-6")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    HorseDetailDto bella = objectMapper.readerFor(HorseDetailDto.class).readValue(read);
+    assertThat(bella.version()).isNotNull();
+
+    byte[] body = mockMvc
+        .perform(MockMvcRequestBuilders
+            .put("/horses/-6")
+            .accept(MediaType.APPLICATION_JSON)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(read)
+        ).andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    HorseDetailDto updated = objectMapper.readerFor(HorseDetailDto.class).readValue(body);
+    assertThat(updated.version()).isEqualTo(bella.version() + 1);
+
+    body = mockMvc
+        .perform(MockMvcRequestBuilders
+            .put("/horses/-6")
+            .accept(MediaType.APPLICATION_JSON)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(read)
+        ).andExpect(status().isConflict())
+        .andReturn().getResponse().getContentAsByteArray();
+    ValidationOrConflictErrorRestDto error = objectMapper.readerFor(ValidationOrConflictErrorRestDto.class).readValue(body);
+    assertThat(error.errors()).singleElement().asString().contains("changed in the meantime");
+  }
+
+  @Test
+  @ExtendWith(RestoreIdentities.class)
+  @DisplayName("Creating a batch of horses, with a parent defined in the same batch")
+  public void createBatch() throws Exception {
+    var mare = new HorseCreateDto("Batch Mare", null, LocalDate.of(2015, 4, 1), Sex.FEMALE, new OwnerDto(-2L, null, null, null),
+        null, null);
+    var foal = new HorseCreateDto("Batch Foal", "born to a batch mare", LocalDate.of(2022, 5, 3), Sex.MALE, null,
+        null, new HorseDetailDto(-1L, null, null, null, null, null, null, null));
+    // the foal comes first, so it must wait for the mare
+    var items = List.of(new HorseBatchItemDto("foal", foal, "mare", null), new HorseBatchItemDto("mare", mare, null, null));
+
+    byte[] body = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/batch")
+            .accept(MediaType.APPLICATION_JSON)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(items))
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsByteArray();
+
+    List<HorseBatchResultDto> results = objectMapper.readerFor(HorseBatchResultDto.class).<HorseBatchResultDto>readValues(body).readAll();
+    assertThat(results).extracting(HorseBatchResultDto::ref).containsExactly("foal", "mare");
+    var createdFoal = results.get(0).horse();
+    var createdMare = results.get(1).horse();
+    assertThat(createdMare.owner().lastName()).isEqualTo("Lee");
+    assertThat(createdFoal.mother().id()).isEqualTo(createdMare.id());
+    assertThat(createdFoal.mother().name()).isEqualTo("Batch Mare");
+    assertThat(createdFoal.father().name()).isEqualTo("Thunder");
+  }
+
+  @Test
+  @DisplayName("Trying to create a batch of horses with invalid references")
+  public void createBatchWithInvalidReferences() throws Exception {
+    var horse = new HorseCreateDto("Batch Horse", null, LocalDate.of(2015, 4, 1), Sex.FEMALE, null, null, null);
+    var items = List.of(new HorseBatchItemDto("a", horse, "a", null),
+        new HorseBatchItemDto("b", horse, null, "unknown"),
+        new HorseBatchItemDto("b", new HorseCreateDto(null, null, LocalDate.of(2015, 4, 1), Sex.MALE, null, null, null), null, null));
+
+    byte[] body = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/batch")
+            .accept(MediaType.APPLICATION_JSON)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsBytes(items))
+        ).andExpect(status().isUnprocessableEntity())
+        .andReturn().getResponse().getContentAsByteArray();
+
+    ValidationOrConflictErrorRestDto result = objectMapper.readerFor(ValidationOrConflictErrorRestDto.class).readValue(body);
+    assertThat(result.errors()).containsExactlyInAnyOrder(
+        "horses[0]: The horse cannot be its own ancestor",
+        "horses[1]: The father reference 'unknown' does not refer to a horse of the batch",
+        "horses[2]: Horse needs a name",
+        "horses[2]: Reference 'b' is used by more than one horse");
+  }
+
   @Test
   @DisplayName("Deleting a horse")
   public void deleteHorse() throws Exception {
@@ -0,0 +1,163 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.RestoreIdentities;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Imports commit their batches in transactions of their own, so the horses they create are deleted after each test
+ * instead of being rolled back.
+ */
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+@EnableWebMvc
+@WebAppConfiguration
+@ExtendWith(RestoreIdentities.class)
+public class HorseImportEndpointTest {
+
+  @Autowired
+  private WebApplicationContext webAppContext;
+  private MockMvc mockMvc;
+  @Autowired
+  ObjectMapper objectMapper;
+  @Autowired
+  HorseDao horseDao;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  public void setup() {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(webAppContext).build();
+  }
+
+  @AfterEach
+  public void deleteImportedHorses() {
+    // the test data only uses negative IDs
+    jdbcTemplate.update("DELETE FROM horse WHERE id > 0");
+  }
+
+  @Test
+  @DisplayName("Import a CSV file with parents after their children via Endpoint")
+  public void importCsv() throws Exception {
+    String csv = """
+        ref,name,description,date_of_birth,sex,owner_id,mother_id,father_id,mother_ref,father_ref
+        foal,Imported Foal,"born late, ""quoted"" twice",2022-04-01,female,-1,,,mare,
+        mare,Imported Mare,,2018-03-01,FEMALE,,,-2,,
+        ,Rejected,,2020-01-01,unicorn,,,,,
+        orphan,Imported Orphan,,2021-01-01,MALE,-4711,,,,
+        late,Imported Late,,2021-01-01,MALE,,,,,missing
+        """;
+
+    var response = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/imports")
+            .contentType("text/csv")
+            .content(csv)
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isCreated())
+        .andExpect(header().exists("Location"))
+        .andReturn().getResponse();
+    HorseImportDto result = objectMapper.readValue(response.getContentAsByteArray(), HorseImportDto.class);
+
+    assertThat(result.state()).isEqualTo(HorseImportDto.State.COMPLETED);
+    assertThat(result.linesRead()).isEqualTo(5);
+    assertThat(result.horsesImported()).isEqualTo(3);
+    assertThat(result.linesRejected()).isEqualTo(2);
+    assertThat(result.linksRejected()).isEqualTo(1);
+    assertThat(result.errors())
+        .hasSize(3)
+        .anyMatch(error -> error.startsWith("line 4: "))
+        .anyMatch(error -> error.startsWith("line 5: ") && error.contains("owner"))
+        .anyMatch(error -> error.startsWith("line 6: ") && error.contains("'missing'"));
+
+    Map<String, Horse> imported = horseDao.getAll().stream()
+        .filter(horse -> horse.getId() > 0)
+        .collect(Collectors.toMap(Horse::getName, Function.identity()));
+    assertThat(imported).containsOnlyKeys("Imported Foal", "Imported Mare", "Imported Late");
+    Horse foal = imported.get("Imported Foal");
+    assertThat(foal.getDescription()).isEqualTo("born late, \"quoted\" twice");
+    assertThat(foal.getMotherId()).isEqualTo(imported.get("Imported Mare").getId());
+    assertThat(imported.get("Imported Mare").getFatherId()).isEqualTo(-2L);
+    assertThat(imported.get("Imported Late").getFatherId()).isNull();
+
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(response.getHeader("Location"))
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk());
+  }
+
+  @Test
+  @DisplayName("Import a newline delimited JSON file via Endpoint")
+  public void importNdjson() throws Exception {
+    String ndjson = """
+        {"ref": "sire", "horse": {"name": "Imported Sire", "dateOfBirth": "2015-05-05", "sex": "MALE"}}
+        not json
+
+        {"horse": {"name": "Imported Colt", "dateOfBirth": "2020-05-05", "sex": "MALE"}, "fatherRef": "sire"}
+        """;
+
+    var response = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/imports")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .content(ndjson)
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isCreated())
+        .andReturn().getResponse();
+    HorseImportDto result = objectMapper.readValue(response.getContentAsByteArray(), HorseImportDto.class);
+
+    assertThat(result.horsesImported()).isEqualTo(2);
+    assertThat(result.linesRejected()).isEqualTo(1);
+    assertThat(result.errors()).singleElement().asString().startsWith("line 2: Invalid JSON");
+
+    Map<String, Horse> imported = horseDao.getAll().stream()
+        .filter(horse -> horse.getId() > 0)
+        .collect(Collectors.toMap(Horse::getName, Function.identity()));
+    assertThat(imported.get("Imported Colt").getFatherId()).isEqualTo(imported.get("Imported Sire").getId());
+  }
+
+  @Test
+  @DisplayName("Importing a CSV file without the required columns fails via Endpoint")
+  public void importCsvWithInvalidHeader() throws Exception {
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/imports")
+            .contentType("text/csv")
+            .content("name,colour\nStar,grey\n")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isUnprocessableEntity());
+
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses/imports/-1")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isNotFound());
+  }
+}
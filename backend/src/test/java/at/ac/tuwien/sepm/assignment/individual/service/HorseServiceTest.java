@@ -1,10 +1,13 @@
 package at.ac.tuwien.sepm.assignment.individual.service;
 
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseTreeDto;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -32,6 +35,8 @@ public class HorseServiceTest {
   HorseService horseService;
   @Autowired
   PlatformTransactionManager txm;
+  @Autowired
+  MeterRegistry meterRegistry;
 
   TransactionStatus txstatus;
 
@@ -52,7 +57,7 @@ public class HorseServiceTest {
   @Test
   @DisplayName("Get all horses via Service")
   public void getAllReturnsAllStoredHorses() {
-    List<HorseListDto> horses = horseService.search(new HorseSearchDto(null, null, null, null, null, null))
+    List<HorseListDto> horses = horseService.search(new HorseSearchDto(null, null, null, null, null, null, null))
         .toList();
 
     assertThat(horses.size()).isGreaterThanOrEqualTo(10);
@@ -73,7 +78,7 @@ public class HorseServiceTest {
   @Test
   @DisplayName("Get all female horses via Service")
   public void testSearchHorses() {
-    List<HorseListDto> horses = horseService.search(new HorseSearchDto(null, null, null, Sex.FEMALE, null, null))
+    List<HorseListDto> horses = horseService.search(new HorseSearchDto(null, null, null, Sex.FEMALE, null, null, null))
         .toList();
 
     assertThat(horses.size()).isEqualTo(5);
@@ -86,6 +91,63 @@ public class HorseServiceTest {
         .contains(tuple(-10L, Sex.FEMALE));
   }
 
+  @Test
+  @DisplayName("Streamed search returns the same horses as the normal search via Service")
+  public void streamSearchMatchesSearch() {
+    var searchParameters = new HorseSearchDto(null, null, null, null, null, null, null);
+    List<HorseListDto> expected = horseService.search(searchParameters).toList();
+
+    // the test configuration maps two rows at a time, so this spans several chunks of owner lookups
+    try (var horses = horseService.streamSearch(searchParameters)) {
+      assertThat(horses.toList()).containsExactlyElementsOf(expected);
+    }
+  }
+
+  @Test
+  @DisplayName("Cached details are invalidated, when their horse or one of its parents changes")
+  public void detailsCacheFollowsParentChanges() throws Exception {
+    HorseDetailDto daisy = horseService.getById(-4L);
+    assertThat(daisy.mother().name()).isEqualTo("Sophie");
+
+    double hits = detailCacheGets("hit");
+    assertThat(horseService.getById(-4L)).isSameAs(daisy);
+    assertThat(detailCacheGets("hit") - hits).isEqualTo(1);
+
+    double invalidations = meterRegistry.get("cache.invalidations").tag("cache", "horseDetails").counter().count();
+    HorseDetailDto sophie = horseService.getById(-3L);
+    horseService.update(new HorseDetailDto(sophie.id(), "Sophia", sophie.description(), sophie.dateOfBirth(), sophie.sex(),
+        sophie.owner(), sophie.mother(), sophie.father()));
+    assertThat(meterRegistry.get("cache.invalidations").tag("cache", "horseDetails").counter().count() - invalidations)
+        .isEqualTo(2);
+    assertThat(horseService.getById(-3L).name()).isEqualTo("Sophia");
+    assertThat(horseService.getById(-4L).mother().name()).isEqualTo("Sophia");
+
+    horseService.delete(-2L);
+    assertThat(horseService.getById(-4L).father()).isNull();
+  }
+
+  @Test
+  @DisplayName("Cached family-trees are derived from deeper ones and only evicted, when they contain a changed horse")
+  public void treeCacheEvictsOnlyAffectedTrees() throws Exception {
+    HorseTreeDto deep = horseService.getGenerationsAsTree(-8L, 3);
+    assertThat(deep.mother().father().name()).isEqualTo("Thunder");
+
+    HorseTreeDto shallow = horseService.getGenerationsAsTree(-8L, 2);
+    assertThat(shallow.mother().id()).isEqualTo(-6L);
+    assertThat(shallow.mother().mother()).isNull();
+    assertThat(shallow.father().id()).isEqualTo(-5L);
+
+    HorseDetailDto thunder = horseService.getById(-1L);
+    horseService.update(new HorseDetailDto(thunder.id(), "Thunderbolt", thunder.description(), thunder.dateOfBirth(), thunder.sex(),
+        thunder.owner(), thunder.mother(), thunder.father()));
+    assertThat(horseService.getGenerationsAsTree(-8L, 2)).isSameAs(shallow);
+    assertThat(horseService.getGenerationsAsTree(-8L, 3).mother().father().name()).isEqualTo("Thunderbolt");
+  }
+
+  private double detailCacheGets(String result) {
+    return meterRegistry.get("cache.gets").tags("cache", "horseDetails", "result", result).functionCounter().count();
+  }
+
   @Test
   @DisplayName("Test validation of horse-create via Service")
   public void createInvalidHorse() {
@@ -3,7 +3,9 @@ package at.ac.tuwien.sepm.assignment.individual.service;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -32,6 +34,8 @@ public class OwnerServiceTest {
   OwnerService ownerService;
   @Autowired
   PlatformTransactionManager txm;
+  @Autowired
+  MeterRegistry meterRegistry;
 
   TransactionStatus txstatus;
 
@@ -64,7 +68,7 @@ public class OwnerServiceTest {
       assertThat(owner.lastName()).isEqualTo(ownerToCreate.lastName());
       assertThat(owner.email()).isEqualTo(ownerToCreate.email());
 
-      List<OwnerDto> owners = ownerService.search(new OwnerSearchDto(null, null))
+      List<OwnerDto> owners = ownerService.search(new OwnerSearchDto(null, null, null))
           .toList();
       assertThat(owners).isNotNull();
       assertThat(owners.size()).isGreaterThanOrEqualTo(11);
@@ -84,6 +88,27 @@ public class OwnerServiceTest {
     });
   }
 
+  @Test
+  @DisplayName("Owners fetched once are served from the cache")
+  public void getAllByIdUsesCache() throws Exception {
+    var owners = ownerService.getAllById(List.of(-2L, -5L, -8L));
+    assertThat(owners).containsOnlyKeys(-2L, -5L, -8L);
+    assertThat(owners.get(-2L).lastName()).isEqualTo("Lee");
+
+    double hits = ownerCacheGets("hit");
+    double misses = ownerCacheGets("miss");
+    assertThat(ownerService.getAllById(List.of(-2L, -5L, -8L))).isEqualTo(owners);
+    assertThat(ownerService.getById(-5L)).isEqualTo(owners.get(-5L));
+    assertThat(ownerCacheGets("hit") - hits).isEqualTo(4);
+    assertThat(ownerCacheGets("miss") - misses).isZero();
+
+    assertThrows(NotFoundException.class, () -> ownerService.getAllById(List.of(-2L, -4711L)));
+  }
+
+  private double ownerCacheGets(String result) {
+    return meterRegistry.get("cache.gets").tags("cache", "owners", "result", result).functionCounter().count();
+  }
+
   @Test
   @DisplayName("Test validation of owner-create")
   public void createInvalidOwner() {
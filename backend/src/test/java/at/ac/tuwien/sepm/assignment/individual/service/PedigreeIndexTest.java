@@ -0,0 +1,119 @@
+package at.ac.tuwien.sepm.assignment.individual.service;
+
+import at.ac.tuwien.sepm.assignment.individual.RestoreIdentities;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.PedigreeIndex;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest(properties = "pedigree-index.enabled=true")
+public class PedigreeIndexTest {
+
+  @Autowired
+  PedigreeIndex pedigreeIndex;
+  @Autowired
+  HorseDao horseDao;
+  @Autowired
+  HorseService horseService;
+  @Autowired
+  PlatformTransactionManager txm;
+
+  @Test
+  @DisplayName("Ancestors from the index are the same as from the recursive query")
+  public void ancestorsMatchRecursiveQuery() throws Exception {
+    for (long id = -1; id >= -10; id--) {
+      for (int generations = 1; generations <= 5; generations++) {
+        assertThat(ancestors(id, generations))
+            .as("ancestors of %d over %d generations", id, generations)
+            .containsExactlyInAnyOrderElementsOf(horseDao.getGenerationsAsTree(id, generations).keySet());
+      }
+    }
+  }
+
+  @Test
+  @DisplayName("Unknown horses are not answered by the index")
+  public void unknownHorseIsNull() {
+    assertThat(pedigreeIndex.ancestors(-4711L, 3)).isNull();
+  }
+
+  @Test
+  @DisplayName("Removed parents are skipped, stored horses are found")
+  public void putAndRemove() {
+    pedigreeIndex.put(-4711L, -6L, -4712L, 1L);
+    try {
+      assertThat(ancestors(-4711L, 2)).containsExactly(-4711L, -6L);
+      pedigreeIndex.put(-4712L, null, null, 1L);
+      assertThat(ancestors(-4711L, 2)).containsExactly(-4712L, -4711L, -6L);
+      pedigreeIndex.remove(-4712L);
+      assertThat(ancestors(-4711L, 3)).containsExactly(-4711L, -6L, -4L, -1L);
+    } finally {
+      pedigreeIndex.remove(-4711L);
+      pedigreeIndex.remove(-4712L);
+    }
+    assertThat(pedigreeIndex.ancestors(-4711L, 1)).isNull();
+  }
+
+  @Test
+  @DisplayName("Changes, that reach the index after a newer one of the same horse, are ignored")
+  public void olderChangesAreIgnored() {
+    try {
+      // two updates, applied in the opposite order of their commits
+      pedigreeIndex.put(-4713L, -6L, null, 3L);
+      pedigreeIndex.put(-4713L, -8L, null, 2L);
+      assertThat(ancestors(-4713L, 2)).containsExactly(-4713L, -6L);
+
+      pedigreeIndex.put(-4713L, -8L, null, 4L);
+      assertThat(ancestors(-4713L, 2)).containsExactly(-4713L, -8L);
+
+      // an update, applied after the horse was deleted
+      pedigreeIndex.remove(-4713L);
+      pedigreeIndex.put(-4713L, -6L, null, 5L);
+      assertThat(pedigreeIndex.ancestors(-4713L, 1)).isNull();
+    } finally {
+      pedigreeIndex.remove(-4713L);
+    }
+  }
+
+  @Test
+  @ExtendWith(RestoreIdentities.class)
+  @DisplayName("Changes of a rolled back transaction do not reach the index")
+  public void rolledBackCreateIsNotIndexed() throws Exception {
+    DefaultTransactionDefinition def = new DefaultTransactionDefinition();
+    def.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    var txstatus = txm.getTransaction(def);
+    HorseDetailDto created;
+    try {
+      created = horseService.create(new HorseCreateDto("Foal", null, LocalDate.of(2022, 4, 1), Sex.MALE, null,
+          new HorseDetailDto(-8L, null, null, null, null, null, null, null),
+          new HorseDetailDto(-7L, null, null, null, null, null, null, null)));
+      assertThat(horseService.getGenerationsAsTree(created.id(), 2).mother().id()).isEqualTo(-8L);
+    } finally {
+      txm.rollback(txstatus);
+    }
+
+    assertThat(pedigreeIndex.ancestors(created.id(), 2)).isNull();
+    assertThat(ancestors(-8L, 1)).containsExactly(-8L);
+  }
+
+  private List<Long> ancestors(long id, int generations) {
+    long[] ancestors = pedigreeIndex.ancestors(id, generations);
+    return ancestors == null ? null : Arrays.stream(ancestors).boxed().toList();
+  }
+}
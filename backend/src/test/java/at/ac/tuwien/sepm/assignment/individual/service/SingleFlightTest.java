@@ -0,0 +1,111 @@
+package at.ac.tuwien.sepm.assignment.individual.service;
+
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.SingleFlight;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SingleFlightTest {
+  private static final int CALLERS = 8;
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SingleFlight<String, Integer> flight = new SingleFlight<>("test", meterRegistry);
+  private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+  @AfterEach
+  public void shutdownExecutor() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  @DisplayName("Concurrent identical calls share one execution")
+  public void concurrentCallsAreCoalesced() throws Exception {
+    var executions = new AtomicInteger();
+    var release = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(() -> flight.run("key", () -> {
+        executions.incrementAndGet();
+        release.await();
+        return 42;
+      })));
+    }
+    awaitCoalesced(CALLERS - 1);
+    release.countDown();
+
+    for (Future<Integer> result : results) {
+      assertThat(result.get()).isEqualTo(42);
+    }
+    assertThat(executions).hasValue(1);
+    assertThat(meterRegistry.get("singleflight.calls").tag("outcome", "executed").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("singleflight.in.flight").gauge().value()).isZero();
+
+    // the result is not kept after the call
+    assertThat(flight.run("key", executions::incrementAndGet)).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Callers, that joined a failing call, get its exception")
+  public void failuresAreShared() throws Exception {
+    var release = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < CALLERS; i++) {
+      results.add(executor.submit(() -> flight.run("missing", () -> {
+        release.await();
+        throw new NotFoundException("Horse not found");
+      })));
+    }
+    awaitCoalesced(CALLERS - 1);
+    release.countDown();
+
+    for (Future<Integer> result : results) {
+      var e = assertThrows(ExecutionException.class, result::get);
+      assertThat(e.getCause()).isInstanceOf(NotFoundException.class);
+    }
+  }
+
+  @Test
+  @DisplayName("Calls with different keys run on their own")
+  public void differentKeysAreNotCoalesced() throws Exception {
+    var release = new CountDownLatch(1);
+    var started = new CountDownLatch(2);
+    final var first = executor.submit(() -> flight.run("first", () -> {
+      started.countDown();
+      release.await();
+      return 1;
+    }));
+    final var second = executor.submit(() -> flight.run("second", () -> {
+      started.countDown();
+      release.await();
+      return 2;
+    }));
+
+    // both calls must be running at the same time for the latch to open
+    started.await();
+    release.countDown();
+    assertThat(first.get()).isEqualTo(1);
+    assertThat(second.get()).isEqualTo(2);
+    assertThat(meterRegistry.get("singleflight.calls").tag("outcome", "coalesced").counter().count()).isZero();
+  }
+
+  private void awaitCoalesced(int calls) throws InterruptedException {
+    var coalesced = meterRegistry.get("singleflight.calls").tag("outcome", "coalesced").counter();
+    while (coalesced.count() < calls) {
+      Thread.sleep(1);
+    }
+  }
+}